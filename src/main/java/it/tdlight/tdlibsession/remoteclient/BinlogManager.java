@@ -1,3 +1,390 @@
 package it.tdlight.tdlibsession.remoteclient;
 
-public class BinlogManager {}
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.file.FileSystem;
+import it.tdlight.utils.BinlogAsyncFile;
+import it.tdlight.utils.BinlogCompression;
+import it.tdlight.utils.BinlogDeltaUtils;
+import it.tdlight.utils.BinlogUtils;
+import it.tdlight.utils.MonoUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Archive of the binlogs of the bots.
+ * <p>
+ * Binlogs are stored as {@code <archive>/<shard>/<botId>.binlog}, where the shard is derived from a hash of the bot id,
+ * to keep the directories small. Binlogs found in the legacy flat layout are moved when they are first retrieved.
+ * <p>
+ * Size, date and hash of every binlog are kept in an in-memory index, persisted in a manifest file
+ * a few seconds after it changes, so that starting a bot doesn't need to hash its binlog.
+ * The manifest may be older than the binlogs, so an entry is used only if size and date of the binlog still match it.
+ * <p>
+ * The managers are shared by archive directory, {@link #closeAll()} saves their manifests and releases them.
+ * <p>
+ * When {@link BinlogCompression} is enabled the binlogs of the stopped bots are kept compressed.
+ */
+public class BinlogManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinlogManager.class);
+	private static final Map<Path, BinlogManager> MANAGERS = new ConcurrentHashMap<>();
+	private static final Duration MANIFEST_SAVE_INTERVAL = Duration.ofSeconds(10);
+	private static final Pattern BINLOG_FILE_NAME = Pattern.compile("^(-?\\d+)\\.binlog$");
+
+	private final FileSystem fileSystem;
+	private final Path archiveDirectory;
+	private final Map<Long, BinlogInfo> index = new ConcurrentHashMap<>();
+	private final AtomicBoolean manifestDirty = new AtomicBoolean();
+	private final Mono<Void> manifestLoad;
+
+	private volatile Disposable scheduledManifestSave;
+
+	private BinlogManager(FileSystem fileSystem, Path archiveDirectory) {
+		this.fileSystem = fileSystem;
+		this.archiveDirectory = archiveDirectory;
+		this.manifestLoad = MonoUtils
+				.fromBlockingEmpty(this::loadManifest)
+				.onErrorResume(ex -> {
+					logger.warn("Failed to load the binlogs manifest, the index will be rebuilt lazily", ex);
+					index.clear();
+					return Mono.empty();
+				})
+				.cache();
+	}
+
+	/**
+	 * @return the shared manager of the archive directory
+	 */
+	public static BinlogManager of(Vertx vertx, Path archiveDirectory) {
+		return MANAGERS.computeIfAbsent(archiveDirectory.toAbsolutePath().normalize(),
+				path -> new BinlogManager(vertx.fileSystem(), path)
+		);
+	}
+
+	/**
+	 * Save the manifest of every manager and release them
+	 */
+	public static Mono<Void> closeAll() {
+		return Flux.fromIterable(MANAGERS.values()).flatMap(BinlogManager::close).then();
+	}
+
+	/**
+	 * Save the manifest if it changed, and release this manager.
+	 * The next call of {@link #of(Vertx, Path)} returns a new manager
+	 */
+	public Mono<Void> close() {
+		return Mono.defer(() -> {
+			MANAGERS.remove(archiveDirectory, this);
+			var scheduledManifestSave = this.scheduledManifestSave;
+			if (scheduledManifestSave != null) {
+				scheduledManifestSave.dispose();
+			}
+			return manifestDirty.getAndSet(false) ? saveManifest() : Mono.empty();
+		});
+	}
+
+	public Path getBinlogPath(long botId) {
+		return archiveDirectory.resolve(getShard(botId)).resolve(botId + ".binlog");
+	}
+
+	private static String getShard(long botId) {
+		// Fibonacci hashing spreads sequential ids across the shards
+		return String.format("%02x", (botId * 0x9E3779B97F4A7C15L) >>> 56);
+	}
+
+	private Path getLegacyBinlogPath(long botId) {
+		return archiveDirectory.resolve(botId + ".binlog");
+	}
+
+	private Path getManifestPath() {
+		return archiveDirectory.resolve("manifest.json");
+	}
+
+	/**
+	 * Open the binlog of a bot, creating it if it doesn't exist. A compressed binlog is decompressed
+	 */
+	public Mono<BinlogAsyncFile> retrieveBinlog(long botId) {
+		var binlogPath = getBinlogPath(botId);
+		return manifestLoad
+				.then(migrateLegacyBinlog(botId))
+				.then(MonoUtils.fromBlockingEmpty(() -> {
+					if (BinlogCompression.isCompressed(binlogPath)) {
+						var tempPath = BinlogUtils.getTempPath(binlogPath);
+						BinlogCompression.decompressFile(binlogPath, tempPath);
+						// Keep the date of the binlog, the index refers to it
+						Files.setLastModifiedTime(tempPath, Files.getLastModifiedTime(binlogPath));
+						Files.move(tempPath, binlogPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					}
+				}))
+				.then(BinlogUtils.retrieveBinlog(fileSystem, binlogPath));
+	}
+
+	/**
+	 * Compress the binlog of a bot that is not running, if {@link BinlogCompression} is enabled.
+	 * The index keeps describing the uncompressed binlog
+	 */
+	public Mono<Void> compress(long botId) {
+		if (!BinlogCompression.isEnabled()) {
+			return Mono.empty();
+		}
+		var binlogPath = getBinlogPath(botId);
+		return MonoUtils.fromBlockingEmpty(() -> {
+			if (Files.notExists(binlogPath) || Files.size(binlogPath) == 0 || BinlogCompression.isCompressed(binlogPath)) {
+				return;
+			}
+			var tempPath = BinlogUtils.getTempPath(binlogPath);
+			BinlogCompression.compressFile(binlogPath, tempPath);
+			Files.setLastModifiedTime(tempPath, Files.getLastModifiedTime(binlogPath));
+			Files.move(tempPath, binlogPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		});
+	}
+
+	private Mono<Void> migrateLegacyBinlog(long botId) {
+		return Mono.defer(() -> {
+			if (index.containsKey(botId)) {
+				return Mono.empty();
+			}
+			return MonoUtils.fromBlockingEmpty(() -> {
+				var binlogPath = getBinlogPath(botId);
+				var legacyBinlogPath = getLegacyBinlogPath(botId);
+				if (Files.notExists(binlogPath) && Files.exists(legacyBinlogPath)) {
+					Files.createDirectories(binlogPath.getParent());
+					Files.move(legacyBinlogPath, binlogPath, StandardCopyOption.ATOMIC_MOVE);
+					logger.info("Moved the binlog of bot {} to the sharded archive", botId);
+				}
+			});
+		});
+	}
+
+	/**
+	 * @return size, date and hash of the binlog of a bot,
+	 * the hash is computed only if the binlog is not indexed or it changed after being indexed
+	 */
+	public Mono<BinlogInfo> getInfo(long botId) {
+		var binlogPath = getBinlogPath(botId);
+		return retrieveBinlog(botId).then(MonoUtils.fromBlockingSingle(() -> {
+			var info = index.get(botId);
+			var currentInfo = readInfo(binlogPath, null);
+			if (info != null && info.size() == currentInfo.size()
+					&& info.lastModifiedTime() == currentInfo.lastModifiedTime()) {
+				return info;
+			}
+			if (info != null) {
+				logger.warn("The binlog of bot {} changed after being indexed, computing its hash again", botId);
+			}
+			var newInfo = readInfo(binlogPath, BinlogDeltaUtils.sha256(binlogPath));
+			putInfo(botId, newInfo);
+			return newInfo;
+		}));
+	}
+
+	/**
+	 * Update the index after the binlog of a bot has been replaced
+	 *
+	 * @param hash SHA-256 of the new binlog
+	 */
+	public Mono<Void> update(long botId, byte[] hash) {
+		var binlogPath = getBinlogPath(botId);
+		return manifestLoad
+				.then(MonoUtils.fromBlockingSingle(() -> readInfo(binlogPath, hash)))
+				.doOnNext(info -> putInfo(botId, info))
+				.then();
+	}
+
+	/**
+	 * Check the size and the hash of every indexed binlog, fixing the index when they don't match
+	 *
+	 * @return the ids of the bots whose binlog didn't match the index
+	 */
+	public Flux<Long> verifyAll(int concurrency) {
+		return manifestLoad
+				.thenMany(Flux.defer(() -> Flux.fromIterable(index.keySet())))
+				.flatMap(botId -> MonoUtils
+						.fromBlockingMaybe(() -> {
+							var binlogPath = getBinlogPath(botId);
+							var expected = index.get(botId);
+							if (Files.notExists(binlogPath)) {
+								logger.warn("The binlog of bot {} is missing", botId);
+								index.remove(botId);
+								scheduleManifestSave();
+								return botId;
+							}
+							var actual = readInfo(binlogPath);
+							if (expected == null || expected.size() != actual.size()
+									|| !Arrays.equals(expected.hash(), actual.hash())) {
+								logger.warn("The binlog of bot {} doesn't match the index", botId);
+								putInfo(botId, actual);
+								return botId;
+							}
+							return null;
+						}), concurrency);
+	}
+
+	/**
+	 * Copy every binlog into another directory, keeping the sharded layout
+	 */
+	public Mono<Void> backupAll(Path destinationDirectory, int concurrency) {
+		return manifestLoad
+				.thenMany(Flux.defer(() -> Flux.fromIterable(index.keySet())))
+				.flatMap(botId -> MonoUtils.fromBlockingEmpty(() -> {
+					var binlogPath = getBinlogPath(botId);
+					var destinationPath = destinationDirectory.resolve(archiveDirectory.relativize(binlogPath));
+					Files.createDirectories(destinationPath.getParent());
+					Files.copy(binlogPath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+				}), concurrency)
+				.then()
+				.doOnSuccess(s -> logger.info("Backed up {} binlogs to {}", index.size(), destinationDirectory));
+	}
+
+	/**
+	 * Index every binlog of the archive, including the ones that are not in the manifest
+	 */
+	public Mono<Void> reindexAll(int concurrency) {
+		return manifestLoad
+				.then(MonoUtils.fromBlockingSingle(() -> {
+					if (Files.notExists(archiveDirectory)) {
+						return Set.<Long>of();
+					}
+					try (Stream<Path> files = Files.walk(archiveDirectory, 2)) {
+						return files
+								.filter(Files::isRegularFile)
+								.map(file -> BINLOG_FILE_NAME.matcher(file.getFileName().toString()))
+								.filter(Matcher::matches)
+								.map(matcher -> Long.parseLong(matcher.group(1)))
+								.collect(Collectors.toSet());
+					}
+				}))
+				.flatMapMany(Flux::fromIterable)
+				.flatMap(botId -> migrateLegacyBinlog(botId)
+						.then(MonoUtils.fromBlockingSingle(() -> readInfo(getBinlogPath(botId))))
+						.doOnNext(info -> putInfo(botId, info)), concurrency)
+				.then(Mono.defer(this::saveManifest));
+	}
+
+	public Mono<Void> saveManifest() {
+		return MonoUtils.fromBlockingEmpty(this::writeManifest);
+	}
+
+	private synchronized void writeManifest() throws Exception {
+		var binlogs = new JsonObject();
+		index.forEach((botId, info) -> binlogs.put(Long.toString(botId), new JsonObject()
+				.put("size", info.size())
+				.put("date", info.lastModifiedTime())
+				.put("hash", Base64.getEncoder().encodeToString(info.hash()))));
+		var manifestPath = getManifestPath();
+		var tempManifestPath = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+		Files.createDirectories(archiveDirectory);
+		Files.writeString(tempManifestPath, new JsonObject().put("version", 1).put("binlogs", binlogs).encode());
+		Files.move(tempManifestPath, manifestPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		logger.debug("Saved the binlogs manifest. Binlogs: {}", index.size());
+	}
+
+	private void loadManifest() throws Exception {
+		var manifestPath = getManifestPath();
+		if (Files.notExists(manifestPath)) {
+			return;
+		}
+		var binlogs = new JsonObject(Files.readString(manifestPath)).getJsonObject("binlogs", new JsonObject());
+		for (String botId : binlogs.fieldNames()) {
+			var entry = binlogs.getJsonObject(botId);
+			index.put(Long.parseLong(botId), new BinlogInfo(entry.getLong("size"),
+					entry.getLong("date"),
+					Base64.getDecoder().decode(entry.getString("hash"))
+			));
+		}
+		logger.info("Loaded the binlogs manifest. Binlogs: {}", index.size());
+	}
+
+	private void putInfo(long botId, BinlogInfo info) {
+		index.put(botId, info);
+		scheduleManifestSave();
+	}
+
+	/**
+	 * Save the manifest after {@link #MANIFEST_SAVE_INTERVAL}, grouping the changes made meanwhile
+	 */
+	private void scheduleManifestSave() {
+		if (manifestDirty.compareAndSet(false, true)) {
+			scheduledManifestSave = Mono
+					.delay(MANIFEST_SAVE_INTERVAL)
+					.then(Mono.defer(() -> manifestDirty.getAndSet(false) ? saveManifest() : Mono.empty()))
+					.subscribe(v -> {}, ex -> logger.error("Failed to save the binlogs manifest", ex));
+		}
+	}
+
+	/**
+	 * Read size and hash of a binlog, decompressing it if needed
+	 */
+	private static BinlogInfo readInfo(Path binlogPath) throws Exception {
+		if (!BinlogCompression.isCompressed(binlogPath)) {
+			return readInfo(binlogPath, BinlogDeltaUtils.sha256(binlogPath));
+		}
+		var digest = BinlogDeltaUtils.newSha256();
+		long size = 0;
+		try (var is = BinlogCompression.newInputStream(binlogPath)) {
+			var block = new byte[BinlogDeltaUtils.BLOCK_SIZE];
+			int length;
+			while ((length = is.read(block)) >= 0) {
+				digest.update(block, 0, length);
+				size += length;
+			}
+		}
+		long lastModifiedTime = size == 0 ? 0 : Files.getLastModifiedTime(binlogPath).toMillis();
+		return new BinlogInfo(size, lastModifiedTime, digest.digest());
+	}
+
+	private static BinlogInfo readInfo(Path binlogPath, byte[] hash) throws Exception {
+		long size = Files.size(binlogPath);
+		long lastModifiedTime = size == 0 ? 0 : Files.getLastModifiedTime(binlogPath).toMillis();
+		return new BinlogInfo(size, lastModifiedTime, hash);
+	}
+
+	public static final class BinlogInfo {
+
+		private final long size;
+		private final long lastModifiedTime;
+		private final byte[] hash;
+
+		public BinlogInfo(long size, long lastModifiedTime, byte[] hash) {
+			this.size = size;
+			this.lastModifiedTime = lastModifiedTime;
+			this.hash = hash;
+		}
+
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * @return last modified time of the binlog, 0 if the binlog is empty
+		 */
+		public long lastModifiedTime() {
+			return lastModifiedTime;
+		}
+
+		/**
+		 * @return SHA-256 of the binlog
+		 */
+		public byte[] hash() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import it.tdlight.tdlibsession.td.middle.ExecuteObject;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.tdlibsession.td.middle.TdResultMessage;
+import it.tdlight.tdlibsession.td.middle.server.AsyncTdMiddleEventBusServer;
+import it.tdlight.utils.EventBusUtils;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.jetbrains.annotations.Nullable;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Closes the bots that have been idle for a while, and starts them again when they are needed.
+ * <p>
+ * A bot is idle if it didn't receive execute requests or meaningful updates, see
+ * {@link AsyncTdMiddleEventBusServer#getLastActivityTime()}. The bot is closed cleanly and its final binlog
+ * is sent to the client, then this node keeps a lightweight consumer on the {@code .execute} address of the bot,
+ * and keeps listing the bot in its heartbeat. The first execute request, or the scheduled wake, starts the bot
+ * again on this node, then the queued requests are forwarded to it. The new verticle replays the TDLib parameters
+ * and the database encryption key of the hibernated one, so the client is not aware of the hibernation.
+ * The bots whose client didn't send the TDLib parameters yet are not hibernated.
+ * <p>
+ * Hibernation is enabled with the {@code tdlight.hibernation.idle-minutes} system property.
+ * The hibernated bots are woken every {@code tdlight.hibernation.wake-interval-minutes},
+ * to receive the updates accumulated meanwhile, unless this node is close to its resource limits.
+ */
+public class BotHibernator {
+
+	private static final Logger logger = LoggerFactory.getLogger(BotHibernator.class);
+	private static final Duration IDLE_TIME = Duration.ofMinutes(Long.getLong("tdlight.hibernation.idle-minutes", 0));
+	private static final Duration WAKE_INTERVAL
+			= Duration.ofMinutes(Long.getLong("tdlight.hibernation.wake-interval-minutes", 360));
+	private static final Duration CHECK_INTERVAL = Duration.ofMinutes(1);
+	private static final int MAX_CONCURRENT_HIBERNATIONS = 4;
+	/**
+	 * The bot registers its consumers shortly after it has been deployed
+	 */
+	private static final Retry WAKE_RETRY = Retry
+			.backoff(5, Duration.ofMillis(200))
+			.filter(ex -> ex instanceof ReplyException && ((ReplyException) ex).failureType() == ReplyFailure.NO_HANDLERS);
+
+	private final TDLibRemoteClient remoteClient;
+	private final TdClusterManager cluster;
+	private final Map<Long, HibernatedBot> hibernatedBots = new ConcurrentHashMap<>();
+	/**
+	 * Wakes in progress, by bot id
+	 */
+	private final Map<Long, Mono<Void>> wakingBots = new ConcurrentHashMap<>();
+
+	private Disposable hibernator;
+
+	public BotHibernator(TDLibRemoteClient remoteClient, TdClusterManager cluster) {
+		this.remoteClient = remoteClient;
+		this.cluster = cluster;
+	}
+
+	public static boolean isEnabled() {
+		return !IDLE_TIME.isZero();
+	}
+
+	public synchronized void start() {
+		if (!isEnabled() || hibernator != null) {
+			return;
+		}
+		hibernator = Flux
+				.interval(CHECK_INTERVAL)
+				.onBackpressureDrop()
+				.concatMap(tick -> hibernateIdleBots()
+						.then(wakeScheduledBots())
+						.onErrorResume(ex -> {
+							logger.warn("Failed to hibernate the idle bots", ex);
+							return Mono.empty();
+						}))
+				.subscribe();
+	}
+
+	/**
+	 * Stop hibernating bots and remove the consumers of the hibernated bots,
+	 * then wait for the bots that are being woken to be deployed
+	 */
+	public Mono<Void> stop() {
+		return Mono
+				.fromRunnable(() -> {
+					synchronized (this) {
+						if (hibernator != null) {
+							hibernator.dispose();
+							hibernator = null;
+						}
+					}
+				})
+				.thenMany(Flux.fromIterable(new ArrayList<>(hibernatedBots.keySet())))
+				.flatMap(botId -> Mono.justOrEmpty(hibernatedBots.remove(botId)))
+				.flatMap(HibernatedBot::unregister)
+				.thenMany(Flux.defer(() -> Flux.fromIterable(wakingBots.values())))
+				.flatMap(wake -> wake.onErrorResume(ex -> Mono.empty()))
+				.then();
+	}
+
+	public int getHibernatedBotsCount() {
+		return hibernatedBots.size();
+	}
+
+	public Set<Long> getHibernatedBotIds() {
+		return Collections.unmodifiableSet(hibernatedBots.keySet());
+	}
+
+	private Mono<Void> hibernateIdleBots() {
+		long now = System.currentTimeMillis();
+		return Flux
+				.fromIterable(remoteClient.getDeployedBots().entrySet())
+				.filter(bot -> now - bot.getValue().getLastActivityTime() >= IDLE_TIME.toMillis())
+				.filter(bot -> bot.getValue().getSessionSetup() != null)
+				.flatMap(bot -> hibernate(bot.getKey(), bot.getValue()).onErrorResume(ex -> {
+					logger.warn("Failed to hibernate bot {}: {}", bot.getKey(), ex.getMessage());
+					return Mono.empty();
+				}), MAX_CONCURRENT_HIBERNATIONS)
+				.then();
+	}
+
+	private Mono<Void> wakeScheduledBots() {
+		if (remoteClient.isUnderResourcePressure()) {
+			// The scheduled wakes are postponed, the bots are still woken by their execute requests
+			return Mono.empty();
+		}
+		long now = System.currentTimeMillis();
+		return Flux
+				.fromIterable(hibernatedBots.entrySet())
+				.filter(bot -> now - bot.getValue().hibernationTime >= WAKE_INTERVAL.toMillis())
+				.concatMap(bot -> wake(bot.getKey()))
+				.then();
+	}
+
+	private Mono<Void> hibernate(long botId, AsyncTdMiddleEventBusServer verticle) {
+		var botAlias = verticle.config().getString("botAlias");
+		var implementationDetails = verticle.config().getJsonObject("implementationDetails");
+		var sessionSetup = verticle.getSessionSetup();
+		return verticle
+				.hibernate()
+				.then(Mono.defer(() -> {
+					var botAddress = "bots.bot." + botId;
+					var hibernatedBot = new HibernatedBot(botAlias,
+							implementationDetails,
+							sessionSetup,
+							cluster.getEventBus().consumer(botAddress + ".execute")
+					);
+					hibernatedBots.put(botId, hibernatedBot);
+					hibernatedBot.executeConsumer.handler(msg -> onExecuteRequest(botId, hibernatedBot, msg));
+					return EventBusUtils.completion(hibernatedBot.executeConsumer);
+				}))
+				.doOnSuccess(s -> logger.info("Hibernated bot {}, it has been idle for more than {}ms", botId, IDLE_TIME.toMillis()));
+	}
+
+	private void onExecuteRequest(long botId, HibernatedBot hibernatedBot, Message<ExecuteObject> msg) {
+		hibernatedBot.pendingRequests.add(msg);
+		wake(botId).subscribeOn(Schedulers.boundedElastic()).subscribe();
+	}
+
+	/**
+	 * Start a hibernated bot again, then forward the requests received meanwhile.
+	 * <p>
+	 * The new verticle replays the session setup of the hibernated one before receiving requests,
+	 * so the forwarded requests reach a loaded session. The consumer of the hibernated bot is unregistered
+	 * before the wake, so the requests sent meanwhile find no handlers and they are retried by the client.
+	 */
+	private Mono<Void> wake(long botId) {
+		return Mono.defer(() -> {
+			var hibernatedBot = hibernatedBots.remove(botId);
+			if (hibernatedBot == null) {
+				// Already waking
+				return Mono.empty();
+			}
+			long startTime = System.nanoTime();
+			var wake = hibernatedBot
+					.unregister()
+					.then(remoteClient.deployBot(cluster,
+							botId,
+							hibernatedBot.botAlias,
+							hibernatedBot.implementationDetails,
+							true,
+							hibernatedBot.sessionSetup
+					))
+					.doOnSuccess(s -> {
+						logger.info("Woke bot {} in {}ms", botId, Duration.ofNanos(System.nanoTime() - startTime).toMillis());
+						forwardPendingRequests(botId, hibernatedBot);
+					})
+					.onErrorResume(ex -> {
+						logger.error("Failed to wake bot " + botId, ex);
+						Message<ExecuteObject> msg;
+						while ((msg = hibernatedBot.pendingRequests.poll()) != null) {
+							msg.fail(500, "Failed to wake the bot: " + ex.getMessage());
+						}
+						return Mono.empty();
+					})
+					.doFinally(signalType -> wakingBots.remove(botId))
+					.cache();
+			wakingBots.put(botId, wake);
+			return wake;
+		});
+	}
+
+	private void forwardPendingRequests(long botId, HibernatedBot hibernatedBot) {
+		Message<ExecuteObject> msg;
+		while ((msg = hibernatedBot.pendingRequests.poll()) != null) {
+			forward(botId, msg);
+		}
+	}
+
+	private void forward(long botId, Message<ExecuteObject> msg) {
+		var opts = new DeliveryOptions().setSendTimeout(Duration.ofSeconds(60 + 30).toMillis());
+		EventBusUtils
+				.<TdResultMessage>request(cluster.getEventBus(), "bots.bot." + botId + ".execute", msg.body(), opts)
+				.retryWhen(WAKE_RETRY)
+				.subscribe(reply -> msg.reply(reply.body()), ex -> msg.fail(500, ex.getMessage()));
+	}
+
+	private static final class HibernatedBot {
+
+		private final String botAlias;
+		private final JsonObject implementationDetails;
+		@Nullable
+		private final byte[] sessionSetup;
+		private final MessageConsumer<ExecuteObject> executeConsumer;
+		private final long hibernationTime = System.currentTimeMillis();
+		private final Queue<Message<ExecuteObject>> pendingRequests = new ConcurrentLinkedQueue<>();
+
+		private HibernatedBot(String botAlias,
+				JsonObject implementationDetails,
+				@Nullable byte[] sessionSetup,
+				MessageConsumer<ExecuteObject> executeConsumer) {
+			this.botAlias = botAlias;
+			this.implementationDetails = implementationDetails;
+			this.sessionSetup = sessionSetup;
+			this.executeConsumer = executeConsumer;
+		}
+
+		private Mono<Void> unregister() {
+			return EventBusUtils.unregister(executeConsumer);
+		}
+	}
+}
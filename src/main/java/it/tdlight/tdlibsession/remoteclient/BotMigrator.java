@@ -0,0 +1,438 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import it.tdlight.tdlibsession.td.middle.BinlogChecksums;
+import it.tdlight.tdlibsession.td.middle.BinlogChunk;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.tdlibsession.td.middle.client.NodePlacementPolicy;
+import it.tdlight.tdlibsession.td.middle.server.AsyncTdMiddleEventBusServer;
+import it.tdlight.utils.BinlogDeltaUtils;
+import it.tdlight.utils.BinlogUtils;
+import it.tdlight.utils.EventBusUtils;
+import it.tdlight.utils.MonoUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Nullable;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Moves running bots between the nodes of the cluster.
+ * <p>
+ * The session files are copied to the target node while the bot is still running,
+ * then the bot is closed, the blocks that changed meanwhile are sent again
+ * and the bot is started on the target node. The client keeps its consumers on {@code bots.bot.<id>},
+ * so the updates of the target node reach it without a new start handshake,
+ * and the requests sent while the bot is closed are retried by the client.
+ * The target node replays the TDLib parameters of the bot before receiving the requests,
+ * see {@link AsyncTdMiddleEventBusServer#getSessionSetup()}.
+ * <p>
+ * If the target node fails to start the bot, the migration is aborted on the target node,
+ * then the bot is started again on this node. If the target node doesn't confirm the abort,
+ * it may be running the bot, so the bot is left stopped: two instances of the same session
+ * would overwrite each other's binlog.
+ * <p>
+ * Every node listens on {@code bots.migrate-bot.<nodeId>} for migration requests of its bots,
+ * and on the {@code .file}, {@code .start} and {@code .abort} sub-addresses for the bots migrated to it.
+ */
+public class BotMigrator {
+
+	private static final Logger logger = LoggerFactory.getLogger(BotMigrator.class);
+	private static final byte[] EMPTY = new byte[0];
+	private static final Pattern SESSION_FILE_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+	private static final String BINLOG_FILE_NAME = "td.binlog";
+
+	private final TDLibRemoteClient remoteClient;
+	private final TdClusterManager cluster;
+	private final DeliveryOptions deliveryOptions;
+	private final Set<Long> migratingBots = ConcurrentHashMap.newKeySet();
+	/**
+	 * Starts of the bots migrated to this node that are still running, by bot id
+	 */
+	private final Map<Long, Mono<Void>> incomingStarts = new ConcurrentHashMap<>();
+	/**
+	 * Bots whose migration to this node has been aborted, a late start request must not start them
+	 */
+	private final Set<Long> abortedBots = ConcurrentHashMap.newKeySet();
+
+	public BotMigrator(TDLibRemoteClient remoteClient, TdClusterManager cluster) {
+		this.remoteClient = remoteClient;
+		this.cluster = cluster;
+		this.deliveryOptions = cluster.newDeliveryOpts().setSendTimeout(Duration.ofSeconds(30).toMillis());
+	}
+
+	/**
+	 * @return the address that receives the migration requests of the bots deployed on a node
+	 */
+	public static String getMigrateBotAddress(String nodeId) {
+		return "bots.migrate-bot." + nodeId;
+	}
+
+	/**
+	 * Request the migration of a bot to the node that is running it
+	 *
+	 * @param sourceNodeId node that is running the bot
+	 * @param targetNodeId node that will run the bot, or null to choose the least-loaded node
+	 */
+	public static Mono<MigrationResult> requestMigration(TdClusterManager cluster,
+			String sourceNodeId,
+			long botId,
+			@Nullable String targetNodeId,
+			boolean includeDatabase) {
+		var request = new JsonObject()
+				.put("botId", botId)
+				.put("targetNodeId", targetNodeId)
+				.put("includeDatabase", includeDatabase);
+		var opts = cluster.newDeliveryOpts().setSendTimeout(Duration.ofMinutes(10).toMillis());
+		return EventBusUtils
+				.<JsonObject>request(cluster.getEventBus(), getMigrateBotAddress(sourceNodeId), request, opts)
+				.map(reply -> MigrationResult.fromJson(reply.body()));
+	}
+
+	public Mono<Void> start() {
+		var nodeAddress = getMigrateBotAddress(cluster.getNodeId());
+		MessageConsumer<JsonObject> migrateConsumer = cluster.getEventBus().consumer(nodeAddress);
+		MessageConsumer<JsonObject> fileConsumer = cluster.getEventBus().consumer(nodeAddress + ".file");
+		MessageConsumer<JsonObject> startConsumer = cluster.getEventBus().consumer(nodeAddress + ".start");
+		MessageConsumer<JsonObject> abortConsumer = cluster.getEventBus().consumer(nodeAddress + ".abort");
+		migrateConsumer.handler(this::onMigrateRequest);
+		fileConsumer.handler(this::onFileRequest);
+		startConsumer.handler(this::onStartRequest);
+		abortConsumer.handler(this::onAbortRequest);
+		return Mono.when(EventBusUtils.completion(migrateConsumer),
+				EventBusUtils.completion(fileConsumer),
+				EventBusUtils.completion(startConsumer),
+				EventBusUtils.completion(abortConsumer)
+		);
+	}
+
+	/**
+	 * Migrate a bot deployed on this node to another node
+	 *
+	 * @param targetNodeId node that will run the bot, or null to choose the least-loaded node
+	 * @param includeDatabase true to copy the session database too, otherwise the target node rebuilds it
+	 */
+	public Mono<MigrationResult> migrateBot(long botId, @Nullable String targetNodeId, boolean includeDatabase) {
+		return Mono.defer(() -> {
+			var verticle = remoteClient.getDeployedBot(botId);
+			if (verticle == null) {
+				return Mono.error(new IllegalStateException("Bot " + botId + " is not deployed on this node"));
+			}
+			if (!migratingBots.add(botId)) {
+				return Mono.error(new IllegalStateException("Bot " + botId + " is already being migrated"));
+			}
+			var botAlias = verticle.config().getString("botAlias");
+			var implementationDetails = verticle.config().getJsonObject("implementationDetails");
+			var closed = new AtomicBoolean();
+			var chosenTarget = new AtomicReference<String>();
+			var startTime = System.nanoTime();
+			var downtimeStartTime = new AtomicLong();
+			return chooseTargetNode(targetNodeId)
+					.flatMap(target -> {
+						chosenTarget.set(target);
+						logger.info("Migrating bot {} to node {}", botId, target);
+						return sendSessionFiles(target, botId, includeDatabase)
+								.doOnSuccess(s -> logger.debug("Copied the session of bot {} while it was running", botId))
+								.then(Mono.defer(() -> {
+									downtimeStartTime.set(System.nanoTime());
+									closed.set(true);
+									return verticle.closeForMigration();
+								}))
+								.doOnSuccess(s -> logger.debug("Closed bot {} for the migration", botId))
+								// Send the blocks that changed while the first copy was running
+								.then(sendSessionFiles(target, botId, includeDatabase))
+								.flatMap(files -> EventBusUtils.<byte[]>request(cluster.getEventBus(),
+										getMigrateBotAddress(target) + ".start",
+										new JsonObject()
+												.put("botId", botId)
+												.put("botAlias", botAlias)
+												.put("implementationDetails", implementationDetails)
+												.put("sessionSetup", verticle.getSessionSetup())
+												.put("files", new JsonArray(files)),
+										new DeliveryOptions(deliveryOptions).setSendTimeout(Duration.ofMinutes(2).toMillis())
+								))
+								.map(started -> {
+									long endTime = System.nanoTime();
+									return new MigrationResult(botId,
+											target,
+											Duration.ofNanos(endTime - startTime),
+											Duration.ofNanos(endTime - downtimeStartTime.get())
+									);
+								});
+					})
+					.doOnNext(result -> logger.info("Migrated bot {} to node {}. Duration: {}ms, downtime: {}ms",
+							botId,
+							result.targetNodeId(),
+							result.duration().toMillis(),
+							result.downtime().toMillis()
+					))
+					.onErrorResume(ex -> {
+						logger.error("Failed to migrate bot " + botId, ex);
+						if (!closed.get()) {
+							return Mono.error(ex);
+						}
+						// The bot has been closed, start it again on this node if the target node is not running it
+						var target = chosenTarget.get();
+						return abortMigration(target, botId)
+								.onErrorMap(abortEx -> {
+									logger.error("Node {} didn't confirm that it's not running bot {}, the bot is left stopped",
+											target,
+											botId
+									);
+									ex.addSuppressed(abortEx);
+									return ex;
+								})
+								.then(Mono.defer(() -> remoteClient.deployBot(cluster,
+										botId,
+										botAlias,
+										implementationDetails,
+										true,
+										verticle.getSessionSetup()
+								)))
+								.doOnSuccess(s -> logger.info("Started bot {} again on this node after the failed migration", botId))
+								.then(Mono.error(ex));
+					})
+					.doFinally(signalType -> migratingBots.remove(botId));
+		});
+	}
+
+	/**
+	 * Abort the migration of a bot on the target node
+	 *
+	 * @return a Mono that completes when the target node confirmed that it's not running the bot
+	 */
+	private Mono<Void> abortMigration(String targetNodeId, long botId) {
+		return EventBusUtils
+				.<byte[]>request(cluster.getEventBus(),
+						getMigrateBotAddress(targetNodeId) + ".abort",
+						new JsonObject().put("botId", botId),
+						// The target node waits for the running start before replying
+						new DeliveryOptions(deliveryOptions).setSendTimeout(Duration.ofMinutes(3).toMillis())
+				)
+				.then();
+	}
+
+	private Mono<String> chooseTargetNode(@Nullable String targetNodeId) {
+		if (targetNodeId != null) {
+			if (targetNodeId.equals(cluster.getNodeId())) {
+				return Mono.error(new IllegalArgumentException("The bot is already deployed on node " + targetNodeId));
+			}
+			return Mono.just(targetNodeId);
+		}
+		return NodePlacementPolicy
+				.of(cluster)
+				.chooseNode(cluster.getNodeId())
+				.switchIfEmpty(Mono.error(new IllegalStateException("No other node can receive the bot")));
+	}
+
+	/**
+	 * Send the session files of a bot to another node, only the blocks that are different on the target node
+	 *
+	 * @return the names of the sent files
+	 */
+	private Mono<List<String>> sendSessionFiles(String targetNodeId, long botId, boolean includeDatabase) {
+		var sessionPath = TDLibRemoteClient.getSessionDirectory(botId);
+		var fileAddress = getMigrateBotAddress(targetNodeId) + ".file";
+		return MonoUtils
+				.fromBlockingSingle(() -> listSessionFiles(sessionPath, includeDatabase))
+				.flatMap(files -> Flux
+						.fromIterable(files)
+						.concatMap(name -> EventBusUtils
+								.<BinlogChecksums>request(cluster.getEventBus(),
+										fileAddress,
+										new JsonObject().put("botId", botId).put("name", name),
+										deliveryOptions
+								)
+								.flatMap(reply -> BinlogUtils.sendChunks(reply, sessionPath.resolve(name), reply.body(), deliveryOptions)))
+						.then()
+						.thenReturn(files));
+	}
+
+	/**
+	 * @return the binlog, followed by the session database files if requested
+	 */
+	private static List<String> listSessionFiles(Path sessionPath, boolean includeDatabase) throws java.io.IOException {
+		var files = new ArrayList<String>();
+		files.add(BINLOG_FILE_NAME);
+		if (includeDatabase && Files.isDirectory(sessionPath)) {
+			try (var stream = Files.list(sessionPath)) {
+				files.addAll(stream
+						.filter(Files::isRegularFile)
+						.map(path -> path.getFileName().toString())
+						.filter(name -> !name.equals(BINLOG_FILE_NAME))
+						.filter(name -> !name.endsWith(".synced") && !name.endsWith(".tmp") && !name.endsWith(".bak"))
+						.sorted()
+						.collect(Collectors.toList()));
+			}
+		}
+		return files;
+	}
+
+	private void onMigrateRequest(Message<JsonObject> msg) {
+		var body = msg.body();
+		migrateBot(body.getLong("botId"), body.getString("targetNodeId"), body.getBoolean("includeDatabase", false))
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe(result -> msg.reply(result.toJson()), ex -> msg.fail(500, ex.getMessage()));
+	}
+
+	/**
+	 * Receive a session file of a bot that is being migrated to this node
+	 */
+	private void onFileRequest(Message<JsonObject> msg) {
+		var body = msg.body();
+		long botId = body.getLong("botId");
+		var name = body.getString("name");
+		if (name == null || !SESSION_FILE_NAME.matcher(name).matches() || name.equals(".") || name.equals("..")) {
+			msg.fail(400, "Invalid session file name: " + name);
+			return;
+		}
+		if (remoteClient.getDeployedBot(botId) != null) {
+			msg.fail(409, "Bot " + botId + " is already deployed on this node");
+			return;
+		}
+		if (remoteClient.isDraining()) {
+			msg.fail(503, "This node is draining, it doesn't accept new bots");
+			return;
+		}
+		if (remoteClient.getResourceGovernor().isOverloaded()) {
+			msg.fail(NodeResourceGovernor.NODE_OVERLOADED_FAILURE_CODE, "This node is overloaded, it doesn't accept new bots");
+			return;
+		}
+		// A new migration of the bot to this node
+		abortedBots.remove(botId);
+		var filePath = TDLibRemoteClient.getSessionDirectory(botId).resolve(name);
+		MonoUtils
+				.fromBlockingSingle(() -> {
+					Files.createDirectories(filePath.getParent());
+					if (Files.notExists(filePath)) {
+						return new BinlogChecksums(BinlogDeltaUtils.BLOCK_SIZE, 0, new int[0]);
+					}
+					return BinlogDeltaUtils.computeChecksums(filePath);
+				})
+				.doOnError(ex -> msg.fail(500, "Failed to read the session file: " + ex.getMessage()))
+				.flatMap(checksums -> BinlogUtils.receiveChunks(EventBusUtils
+						.<BinlogChunk>replyAndRequest(msg.getDelegate(), checksums, deliveryOptions), filePath, deliveryOptions))
+				.flatMap(lastMessage -> MonoUtils
+						.fromBlockingEmpty(() -> {
+							// Only the binlog needs a backup generation
+							if (!name.equals(BINLOG_FILE_NAME)) {
+								Files.deleteIfExists(BinlogUtils.getBackupPath(filePath));
+							}
+						})
+						.thenReturn(lastMessage))
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe(lastMessage -> lastMessage.reply(EMPTY),
+						ex -> logger.error("Failed to receive the session file " + filePath, ex)
+				);
+	}
+
+	/**
+	 * Start a bot that has been migrated to this node
+	 */
+	private void onStartRequest(Message<JsonObject> msg) {
+		var body = msg.body();
+		long botId = body.getLong("botId");
+		var files = body.getJsonArray("files", new JsonArray()).getList();
+		if (remoteClient.getDeployedBot(botId) != null) {
+			msg.fail(409, "Bot " + botId + " is already deployed on this node");
+			return;
+		}
+		if (remoteClient.isDraining()) {
+			msg.fail(503, "This node is draining");
+			return;
+		}
+		var sessionPath = TDLibRemoteClient.getSessionDirectory(botId);
+		var start = MonoUtils
+				.fromBlockingEmpty(() -> {
+					// Remove the files left by a previous session of this bot on this node
+					try (var stream = Files.list(sessionPath)) {
+						for (Path path : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+							var name = path.getFileName().toString();
+							if (!files.contains(name) && !name.equals(BINLOG_FILE_NAME + ".bak")) {
+								Files.delete(path);
+							}
+						}
+					}
+				})
+				.then(remoteClient.deployBot(cluster,
+						botId,
+						body.getString("botAlias"),
+						body.getJsonObject("implementationDetails"),
+						true,
+						body.getBinary("sessionSetup")
+				))
+				.doOnSuccess(s -> logger.info("Started bot {} migrated from another node", botId))
+				.subscribeOn(Schedulers.boundedElastic())
+				.cache();
+		if (incomingStarts.putIfAbsent(botId, start) != null) {
+			msg.fail(409, "Bot " + botId + " is already starting on this node");
+			return;
+		}
+		// Checked after registering the start, so an abort request either sees the start or is seen by it
+		if (abortedBots.contains(botId)) {
+			incomingStarts.remove(botId, start);
+			msg.fail(409, "The migration of bot " + botId + " has been aborted");
+			return;
+		}
+		start
+				.doFinally(signalType -> incomingStarts.remove(botId, start))
+				.subscribe(v -> {}, ex -> {
+					logger.error("Failed to start the migrated bot " + botId, ex);
+					msg.fail(500, "Failed to start the migrated bot: " + ex.getMessage());
+				}, () -> msg.reply(EMPTY));
+	}
+
+	/**
+	 * @return a Mono that completes when the bots being migrated to this node have been started, or failed to start
+	 */
+	public Mono<Void> awaitIncomingStarts() {
+		return Flux
+				.fromIterable(incomingStarts.values())
+				.flatMap(start -> start.onErrorResume(ex -> Mono.empty()))
+				.then();
+	}
+
+	/**
+	 * Abort the migration of a bot to this node, because the source node failed to complete it.
+	 * The reply is sent when this node is not running the bot, and it will not start it anymore.
+	 */
+	private void onAbortRequest(Message<JsonObject> msg) {
+		long botId = msg.body().getLong("botId");
+		abortedBots.add(botId);
+		Mono
+				.justOrEmpty(incomingStarts.get(botId))
+				.flatMap(start -> start.onErrorResume(ex -> Mono.empty()))
+				.then(Mono.defer(() -> {
+					var verticle = remoteClient.getDeployedBot(botId);
+					if (verticle == null) {
+						return Mono.empty();
+					}
+					logger.warn("Closing bot {}, its migration to this node has been aborted", botId);
+					// The source node starts the bot again, the client must not see it closing
+					return verticle.closeForMigration();
+				}))
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe(v -> {}, ex -> {
+					logger.error("Failed to abort the migration of bot " + botId, ex);
+					msg.fail(500, "Failed to abort the migration: " + ex.getMessage());
+				}, () -> msg.reply(EMPTY));
+	}
+}
@@ -0,0 +1,209 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.Empty;
+
+/**
+ * Runs the start requests of the bots, a limited number at a time.
+ * <p>
+ * The start requests waiting for a free slot are ordered by priority, then by arrival.
+ * The priority is read from the {@code startPriority} key of the implementation details of the bot,
+ * higher values start first, so for example user accounts can be started before bots.
+ * The number of running starts can be configured with the {@code tdlight.start.concurrency} system property.
+ */
+public class BotStartQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(BotStartQueue.class);
+	public static final String START_PRIORITY_KEY = "startPriority";
+	private static final int DEFAULT_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private final int concurrency;
+	private final PriorityBlockingQueue<PendingStart> queue = new PriorityBlockingQueue<>(64,
+			Comparator.comparingInt(PendingStart::priority).reversed().thenComparingLong(PendingStart::sequence));
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger runningStarts = new AtomicInteger();
+	private final Set<PendingStart> running = ConcurrentHashMap.newKeySet();
+	private volatile Throwable rejection;
+
+	// Statistics
+	private final AtomicLong completedStarts = new AtomicLong();
+	private final AtomicLong failedStarts = new AtomicLong();
+	private final AtomicLong totalTimeToReadyMillis = new AtomicLong();
+	private final AtomicLong maxTimeToReadyMillis = new AtomicLong();
+
+	public BotStartQueue() {
+		this(Integer.getInteger("tdlight.start.concurrency", DEFAULT_CONCURRENCY));
+	}
+
+	public BotStartQueue(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("The start concurrency must be positive");
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Queue the start of a bot
+	 *
+	 * @param start the start procedure, it's subscribed when a slot is available
+	 * @return a Mono that completes when the bot has been started,
+	 * cancelling it removes the start from the queue if it's not running yet
+	 */
+	public Mono<Void> enqueue(long botId, int priority, Mono<Void> start) {
+		return Mono.defer(() -> {
+			var pendingStart = new PendingStart(botId, priority, sequence.getAndIncrement(), start);
+			queue.add(pendingStart);
+			// Checked after queueing, so the start is rejected here or by rejectPending
+			var rejection = this.rejection;
+			if (rejection != null && queue.remove(pendingStart)) {
+				return Mono.error(rejection);
+			}
+			logger.debug("Queued the start of bot {} with priority {}. Queue depth: {}", botId, priority, queue.size());
+			startNext();
+			return pendingStart.result.asMono().doOnCancel(() -> {
+				if (queue.remove(pendingStart)) {
+					logger.debug("Removed the cancelled start of bot {} from the queue", botId);
+				}
+			});
+		});
+	}
+
+	private void startNext() {
+		while (true) {
+			int running = runningStarts.get();
+			if (running >= concurrency || queue.isEmpty()) {
+				return;
+			}
+			if (!runningStarts.compareAndSet(running, running + 1)) {
+				continue;
+			}
+			var pendingStart = queue.poll();
+			if (pendingStart == null) {
+				runningStarts.decrementAndGet();
+				return;
+			}
+			run(pendingStart);
+		}
+	}
+
+	private void run(PendingStart pendingStart) {
+		long queuedMillis = Duration.ofNanos(System.nanoTime() - pendingStart.queueTime).toMillis();
+		running.add(pendingStart);
+		pendingStart.start
+				.doFinally(signalType -> {
+					running.remove(pendingStart);
+					runningStarts.decrementAndGet();
+					startNext();
+				})
+				.subscribe(v -> {}, ex -> {
+					failedStarts.incrementAndGet();
+					pendingStart.result.tryEmitError(ex);
+				}, () -> {
+					long timeToReadyMillis = Duration.ofNanos(System.nanoTime() - pendingStart.queueTime).toMillis();
+					completedStarts.incrementAndGet();
+					totalTimeToReadyMillis.addAndGet(timeToReadyMillis);
+					maxTimeToReadyMillis.accumulateAndGet(timeToReadyMillis, Math::max);
+					logger.info("Bot {} is ready after {}ms, {}ms spent in the start queue. Queue depth: {}",
+							pendingStart.botId,
+							timeToReadyMillis,
+							queuedMillis,
+							queue.size()
+					);
+					pendingStart.result.tryEmitEmpty();
+				});
+	}
+
+	/**
+	 * Fail the queued start requests with the given error, and the ones queued from now on.
+	 * The running starts are not interrupted, see {@link #awaitRunningStarts()}
+	 */
+	public void rejectPending(Throwable rejection) {
+		this.rejection = rejection;
+		PendingStart pendingStart;
+		int rejected = 0;
+		while ((pendingStart = queue.poll()) != null) {
+			pendingStart.result.tryEmitError(rejection);
+			rejected++;
+		}
+		if (rejected > 0) {
+			logger.info("Rejected {} queued starts: {}", rejected, rejection.getMessage());
+		}
+	}
+
+	/**
+	 * @return a Mono that completes when the starts running now have completed or failed
+	 */
+	public Mono<Void> awaitRunningStarts() {
+		return Flux
+				.fromIterable(running)
+				.flatMap(pendingStart -> pendingStart.result.asMono().onErrorResume(ex -> Mono.empty()))
+				.then();
+	}
+
+	/**
+	 * @return number of start requests waiting for a free slot
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getRunningStarts() {
+		return runningStarts.get();
+	}
+
+	public long getCompletedStarts() {
+		return completedStarts.get();
+	}
+
+	public long getFailedStarts() {
+		return failedStarts.get();
+	}
+
+	/**
+	 * @return average time between the arrival of a start request and the bot being ready, in milliseconds
+	 */
+	public long getAverageTimeToReadyMillis() {
+		long completed = completedStarts.get();
+		return completed == 0 ? 0 : totalTimeToReadyMillis.get() / completed;
+	}
+
+	public long getMaxTimeToReadyMillis() {
+		return maxTimeToReadyMillis.get();
+	}
+
+	private static final class PendingStart {
+
+		private final long botId;
+		private final int priority;
+		private final long sequence;
+		private final Mono<Void> start;
+		private final long queueTime = System.nanoTime();
+		private final Empty<Void> result = Sinks.empty();
+
+		private PendingStart(long botId, int priority, long sequence, Mono<Void> start) {
+			this.botId = botId;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.start = start;
+		}
+
+		private int priority() {
+			return priority;
+		}
+
+		private long sequence() {
+			return sequence;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.shareddata.AsyncMap;
+import it.tdlight.tdlibsession.td.middle.NodeLoad;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.tdlibsession.td.middle.client.NodePlacementPolicy;
+import it.tdlight.utils.MonoUtils;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Moves bots away from this node when it has more bots than the other nodes, or when it's overloaded.
+ * <p>
+ * The rebalancer is disabled by default, it's enabled on the nodes started with {@code -Dtdlight.rebalancer.enabled=true}.
+ * <p>
+ * Every node runs a rebalancer that only moves its own bots, using the load published in the cluster shared data,
+ * see {@link NodeLoad}. The target distribution gives the same number of bots to every node that accepts bots,
+ * so a node that joins the cluster receives bots from the others.
+ * To avoid moving bots back and forth:
+ * <ul>
+ *   <li>a node moves bots only if it has more than {@link #HYSTERESIS} above the average,
+ *   or if it's hot while another node is cold</li>
+ *   <li>only one node at a time chooses the bots to move, and the rounds are separated by a cluster-wide cooldown,
+ *   so the next round sees the load published after the previous migrations.
+ *   The lock is released before migrating the bots, a slow migration doesn't block the other nodes</li>
+ *   <li>a round moves a limited number of bots, and bots deployed recently are not moved</li>
+ * </ul>
+ * The rebalancer can be configured with the {@code tdlight.rebalancer.*} system properties.
+ */
+public class ClusterRebalancer {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClusterRebalancer.class);
+	private static final String REBALANCER_LOCK = "tdlib.rebalancer";
+	private static final String REBALANCER_MAP = "tdlib.rebalancer";
+	private static final String LAST_ROUND_KEY = "lastRound";
+
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("tdlight.rebalancer.enabled", "false"));
+	private static final Duration INTERVAL = Duration.ofSeconds(Long.getLong("tdlight.rebalancer.interval", 30));
+	/**
+	 * Minimum time between two rounds of the cluster
+	 */
+	private static final Duration COOLDOWN = Duration.ofSeconds(Long.getLong("tdlight.rebalancer.cooldown", 120));
+	/**
+	 * Bots deployed more recently than this are not moved
+	 */
+	private static final Duration BOT_COOLDOWN = Duration.ofSeconds(Long.getLong("tdlight.rebalancer.bot-cooldown", 600));
+	private static final int MAX_MIGRATIONS_PER_ROUND = Integer.getInteger("tdlight.rebalancer.max-migrations", 4);
+	private static final int MAX_CONCURRENT_MIGRATIONS = Integer.getInteger("tdlight.rebalancer.max-concurrent-migrations", 2);
+	private static final double HYSTERESIS = 0.2;
+	private static final double HOT_CPU_LOAD = 0.85;
+	private static final double HOT_HEAP_USAGE = 0.85;
+	private static final double COLD_CPU_LOAD = 0.5;
+	private static final double COLD_HEAP_USAGE = 0.6;
+
+	private final TDLibRemoteClient remoteClient;
+	private final BotMigrator botMigrator;
+	private final TdClusterManager cluster;
+
+	private Disposable rebalancer;
+
+	public ClusterRebalancer(TDLibRemoteClient remoteClient, BotMigrator botMigrator, TdClusterManager cluster) {
+		this.remoteClient = remoteClient;
+		this.botMigrator = botMigrator;
+		this.cluster = cluster;
+	}
+
+	public synchronized void start() {
+		if (!ENABLED || rebalancer != null) {
+			return;
+		}
+		rebalancer = Flux
+				.interval(INTERVAL)
+				.onBackpressureDrop()
+				.concatMap(tick -> rebalance().onErrorResume(ex -> {
+					logger.warn("Failed to rebalance the bots of this node", ex);
+					return Mono.empty();
+				}))
+				.subscribe();
+	}
+
+	public synchronized void stop() {
+		if (rebalancer != null) {
+			rebalancer.dispose();
+			rebalancer = null;
+		}
+	}
+
+	/**
+	 * Run a rebalancing round, if this node has bots to move
+	 */
+	public Mono<Void> rebalance() {
+		return NodePlacementPolicy
+				.of(cluster)
+				.getNodesLoad()
+				.map(this::computeMigrationsCount)
+				.filter(count -> count > 0)
+				.flatMap(count -> MonoUtils
+						.fromFuture(() -> cluster.getSharedData().getDelegate().getLockWithTimeout(REBALANCER_LOCK, 1000))
+						// Another node is rebalancing
+						.onErrorResume(ex -> Mono.empty())
+						// The lock is held only while choosing the moves
+						.flatMap(lock -> Mono.usingWhen(Mono.just(lock),
+								l -> startRound().flatMap(started -> started ? chooseMoves(count) : Mono.<Map<Long, String>>empty()),
+								l -> Mono.fromRunnable(l::release)
+						)))
+				.flatMap(this::moveBots);
+	}
+
+	/**
+	 * @return how many bots this node should move, 0 if the cluster is balanced
+	 */
+	private int computeMigrationsCount(List<NodeLoad> loads) {
+		if (remoteClient.isDraining()) {
+			return 0;
+		}
+		var nodeId = cluster.getNodeId();
+		var eligible = loads.stream().filter(load -> !load.draining()).collect(Collectors.toList());
+		Optional<NodeLoad> self = eligible.stream().filter(load -> load.nodeId().equals(nodeId)).findAny();
+		if (self.isEmpty() || eligible.size() < 2) {
+			return 0;
+		}
+		int deployments = self.get().activeDeployments();
+		int totalDeployments = eligible.stream().mapToInt(NodeLoad::activeDeployments).sum();
+		int minDeployments = eligible.stream().mapToInt(NodeLoad::activeDeployments).min().orElse(0);
+		double averageDeployments = (double) totalDeployments / eligible.size();
+
+		int count = 0;
+		// Moving a bot must reduce the difference, otherwise it would be moved back
+		if (deployments > averageDeployments * (1 + HYSTERESIS) && deployments - minDeployments >= 2) {
+			count = (int) Math.ceil(deployments - averageDeployments);
+		}
+		boolean hot = self.get().overloaded() || self.get().cpuLoad() >= HOT_CPU_LOAD
+				|| self.get().heapUsage() >= HOT_HEAP_USAGE;
+		boolean coldNodeExists = eligible
+				.stream()
+				.filter(load -> !load.nodeId().equals(nodeId))
+				.anyMatch(load -> load.cpuLoad() < COLD_CPU_LOAD && load.heapUsage() < COLD_HEAP_USAGE);
+		if (hot && coldNodeExists && deployments > 1) {
+			count = Math.max(count, 1);
+		}
+		count = Math.min(count, MAX_MIGRATIONS_PER_ROUND);
+		if (count > 0) {
+			logger.info("This node has {} bots, the average is {}. Hot: {}. Moving {} bots",
+					deployments,
+					String.format("%.1f", averageDeployments),
+					hot,
+					count
+			);
+		}
+		return count;
+	}
+
+	/**
+	 * Must be called while holding the rebalancer lock
+	 *
+	 * @return true if the cluster-wide cooldown has elapsed and the round has been recorded
+	 */
+	private Mono<Boolean> startRound() {
+		return MonoUtils
+				.fromFuture(() -> cluster.getSharedData().getDelegate().<String, Long>getAsyncMap(REBALANCER_MAP))
+				.flatMap((AsyncMap<String, Long> map) -> MonoUtils
+						.fromFuture(() -> map.get(LAST_ROUND_KEY))
+						.map(Optional::of)
+						.defaultIfEmpty(Optional.empty())
+						.flatMap(lastRound -> {
+							long now = System.currentTimeMillis();
+							if (lastRound.isPresent() && now - lastRound.get() < COOLDOWN.toMillis()) {
+								return Mono.just(false);
+							}
+							return MonoUtils.<Void>fromFuture(() -> map.put(LAST_ROUND_KEY, now)).thenReturn(true);
+						}));
+	}
+
+	/**
+	 * Must be called while holding the rebalancer lock
+	 *
+	 * @return the target node of each bot to move, by bot id, empty if no bot can be moved
+	 */
+	private Mono<Map<Long, String>> chooseMoves(int count) {
+		long now = System.currentTimeMillis();
+		var botIds = remoteClient
+				.getBotDeployTimes()
+				.entrySet()
+				.stream()
+				.filter(entry -> now - entry.getValue() >= BOT_COOLDOWN.toMillis())
+				// Move the bots that have been running for the longest time
+				.sorted(Map.Entry.comparingByValue())
+				.limit(count)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+		if (botIds.isEmpty()) {
+			logger.debug("No bot can be moved, all the bots have been deployed recently");
+			return Mono.empty();
+		}
+		var placementPolicy = NodePlacementPolicy.of(cluster);
+		// The targets are chosen one at a time, so each choice counts the bots placed by the previous ones
+		return Flux
+				.fromIterable(botIds)
+				.concatMap(botId -> placementPolicy
+						.chooseNode(cluster.getNodeId())
+						.map(targetNodeId -> Map.entry(botId, targetNodeId)))
+				.collectMap(Map.Entry::getKey, Map.Entry::getValue)
+				.filter(moves -> !moves.isEmpty());
+	}
+
+	private Mono<Void> moveBots(Map<Long, String> moves) {
+		return Flux
+				.fromIterable(moves.entrySet())
+				.flatMap(move -> botMigrator
+						.migrateBot(move.getKey(), move.getValue(), true)
+						.thenReturn(move.getKey())
+						.onErrorResume(ex -> {
+							logger.warn("Failed to move bot {}: {}", move.getKey(), ex.getMessage());
+							return Mono.empty();
+						}), MAX_CONCURRENT_MIGRATIONS)
+				.count()
+				.doOnNext(moved -> logger.info("Moved {} of {} bots to other nodes", moved, moves.size()))
+				.then();
+	}
+}
@@ -0,0 +1,90 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.json.JsonObject;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Result of the migration of a bot to another node, see {@link BotMigrator}
+ */
+public final class MigrationResult {
+
+	private final long botId;
+	private final String targetNodeId;
+	private final Duration duration;
+	private final Duration downtime;
+
+	public MigrationResult(long botId, String targetNodeId, Duration duration, Duration downtime) {
+		this.botId = botId;
+		this.targetNodeId = targetNodeId;
+		this.duration = duration;
+		this.downtime = downtime;
+	}
+
+	public static MigrationResult fromJson(JsonObject json) {
+		return new MigrationResult(json.getLong("botId"),
+				json.getString("targetNodeId"),
+				Duration.ofMillis(json.getLong("durationMillis", 0L)),
+				Duration.ofMillis(json.getLong("downtimeMillis", 0L))
+		);
+	}
+
+	public JsonObject toJson() {
+		return new JsonObject()
+				.put("botId", botId)
+				.put("targetNodeId", targetNodeId)
+				.put("durationMillis", duration.toMillis())
+				.put("downtimeMillis", downtime.toMillis());
+	}
+
+	public long botId() {
+		return botId;
+	}
+
+	public String targetNodeId() {
+		return targetNodeId;
+	}
+
+	/**
+	 * @return total time of the migration, including the copy of the session while the bot was running
+	 */
+	public Duration duration() {
+		return duration;
+	}
+
+	/**
+	 * @return time between the closing of the bot on the source node and its start on the target node
+	 */
+	public Duration downtime() {
+		return downtime;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		MigrationResult that = (MigrationResult) o;
+		return botId == that.botId && Objects.equals(targetNodeId, that.targetNodeId)
+				&& Objects.equals(duration, that.duration) && Objects.equals(downtime, that.downtime);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(botId, targetNodeId, duration, downtime);
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", MigrationResult.class.getSimpleName() + "[", "]")
+				.add("botId=" + botId)
+				.add("targetNodeId='" + targetNodeId + "'")
+				.add("duration=" + duration)
+				.add("downtime=" + downtime)
+				.toString();
+	}
+}
@@ -0,0 +1,69 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Supplier;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * Publishes periodically the ids of the bots hosted by this node, in a single message for all the bots.
+ * <p>
+ * The clients derive the liveness of their bots from these messages, instead of pinging every bot,
+ * see {@link it.tdlight.tdlibsession.td.middle.client.BotLivenessMonitor}.
+ * The hibernated bots are hosted by this node too, they are woken by their requests.
+ */
+public class NodeHeartbeat {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeHeartbeat.class);
+	public static final String HEARTBEAT_ADDRESS = "bots.heartbeat";
+	public static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(5);
+
+	private final TdClusterManager cluster;
+	private final Supplier<Collection<Long>> hostedBots;
+
+	private Disposable publisher;
+
+	public NodeHeartbeat(TdClusterManager cluster, Supplier<Collection<Long>> hostedBots) {
+		this.cluster = cluster;
+		this.hostedBots = hostedBots;
+	}
+
+	public synchronized void start() {
+		if (publisher != null) {
+			return;
+		}
+		publisher = Flux
+				.interval(Duration.ZERO, HEARTBEAT_INTERVAL)
+				.onBackpressureDrop()
+				.subscribe(tick -> {
+					try {
+						publish();
+					} catch (Exception ex) {
+						logger.warn("Failed to publish the heartbeat of this node: {}", ex.getMessage());
+					}
+				});
+	}
+
+	public synchronized void stop() {
+		if (publisher != null) {
+			publisher.dispose();
+			publisher = null;
+		}
+	}
+
+	private void publish() {
+		var bots = new JsonArray(new ArrayList<>(hostedBots.get()));
+		cluster.getEventBus().publish(HEARTBEAT_ADDRESS, new JsonObject()
+				.put("nodeId", cluster.getNodeId())
+				.put("bots", bots)
+				.put("timestamp", System.currentTimeMillis()));
+		logger.trace("Published the heartbeat of {} bots", bots.size());
+	}
+}
@@ -0,0 +1,169 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.AsyncMap;
+import it.tdlight.tdlibsession.td.middle.NodeLoad;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.utils.MonoUtils;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Publishes the load of this node in the cluster shared data, see {@link NodeLoad}.
+ * <p>
+ * Entries expire if the node stops publishing them, so crashed nodes disappear from the placement decisions.
+ */
+public class NodeLoadMonitor {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeLoadMonitor.class);
+	public static final Duration PUBLISH_INTERVAL = Duration.ofSeconds(5);
+	private static final Path PROC_STATM = Path.of("/proc/self/statm");
+	private static final long PAGE_SIZE = 4096;
+
+	private final TdClusterManager cluster;
+	private final IntSupplier activeDeployments;
+	private final BotStartQueue startQueue;
+	private final LongSupplier receivedUpdates;
+	private final BooleanSupplier draining;
+	private final BooleanSupplier overloaded;
+
+	private long lastReceivedUpdates = -1;
+	private long lastMeasureTime;
+	private Disposable publisher;
+
+	public NodeLoadMonitor(TdClusterManager cluster,
+			IntSupplier activeDeployments,
+			BotStartQueue startQueue,
+			LongSupplier receivedUpdates,
+			BooleanSupplier draining,
+			BooleanSupplier overloaded) {
+		this.cluster = cluster;
+		this.activeDeployments = activeDeployments;
+		this.startQueue = startQueue;
+		this.receivedUpdates = receivedUpdates;
+		this.draining = draining;
+		this.overloaded = overloaded;
+	}
+
+	public synchronized void start() {
+		if (publisher != null) {
+			return;
+		}
+		publisher = Flux
+				.interval(Duration.ZERO, PUBLISH_INTERVAL)
+				.onBackpressureDrop()
+				.concatMap(tick -> publish().onErrorResume(ex -> {
+					logger.warn("Failed to publish the load of this node: {}", ex.getMessage());
+					return Mono.empty();
+				}))
+				.subscribe();
+	}
+
+	/**
+	 * Publish the load immediately, for example after the node started draining or became overloaded
+	 */
+	public Mono<Void> publish() {
+		return Mono
+				.fromCallable(this::measure)
+				.flatMap(load -> getLoadMap().flatMap(map -> MonoUtils.<Void>fromFuture(() -> map.put(load.nodeId(),
+						load.toJson(),
+						PUBLISH_INTERVAL.multipliedBy(3).toMillis()
+				))))
+				.doOnSuccess(s -> logger.trace("Published the load of this node"));
+	}
+
+	/**
+	 * Stop publishing the load and remove this node from the placement decisions
+	 */
+	public Mono<Void> stop() {
+		return Mono
+				.fromRunnable(() -> {
+					synchronized (this) {
+						if (publisher != null) {
+							publisher.dispose();
+							publisher = null;
+						}
+					}
+				})
+				.then(getLoadMap())
+				.flatMap(map -> MonoUtils.fromFuture(() -> map.remove(cluster.getNodeId())))
+				.then();
+	}
+
+	public synchronized NodeLoad measure() {
+		var memory = ManagementFactory.getMemoryMXBean();
+		var heap = memory.getHeapMemoryUsage();
+		long now = System.currentTimeMillis();
+
+		double updatesPerSecond = 0;
+		long updates = receivedUpdates.getAsLong();
+		if (lastReceivedUpdates >= 0 && now > lastMeasureTime) {
+			// The counter decreases when bots are undeployed
+			updatesPerSecond = Math.max(0, updates - lastReceivedUpdates) * 1000d / (now - lastMeasureTime);
+		}
+		lastReceivedUpdates = updates;
+		lastMeasureTime = now;
+
+		return new NodeLoad(cluster.getNodeId(),
+				activeDeployments.getAsInt(),
+				heap.getUsed(),
+				heap.getMax(),
+				getNativeMemoryUsed(heap.getCommitted()),
+				getCpuLoad(),
+				updatesPerSecond,
+				draining.getAsBoolean(),
+				overloaded.getAsBoolean(),
+				startQueue.getQueueDepth(),
+				startQueue.getRunningStarts(),
+				startQueue.getAverageTimeToReadyMillis(),
+				now
+		);
+	}
+
+	private Mono<AsyncMap<String, JsonObject>> getLoadMap() {
+		return MonoUtils.fromFuture(() -> cluster
+				.getSharedData()
+				.getDelegate()
+				.<String, JsonObject>getAsyncMap(NodeLoad.NODES_LOAD_MAP));
+	}
+
+	/**
+	 * TDLib allocates its memory natively, so the resident memory of the process is used when available
+	 */
+	static long getNativeMemoryUsed(long heapCommitted) {
+		try {
+			var statm = Files.readString(PROC_STATM).trim().split(" ");
+			long residentMemory = Long.parseLong(statm[1]) * PAGE_SIZE;
+			return Math.max(0, residentMemory - heapCommitted);
+		} catch (Exception ex) {
+			long nativeMemory = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage().getUsed();
+			for (BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+				nativeMemory += Math.max(0, bufferPool.getMemoryUsed());
+			}
+			return nativeMemory;
+		}
+	}
+
+	static double getCpuLoad() {
+		var os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			double cpuLoad = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+			if (cpuLoad >= 0) {
+				return cpuLoad;
+			}
+		}
+		// Fall back to the load average, normalized by the number of processors
+		return Math.max(0, Math.min(1, os.getSystemLoadAverage() / os.getAvailableProcessors()));
+	}
+}
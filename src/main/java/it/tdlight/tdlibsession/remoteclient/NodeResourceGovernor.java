@@ -0,0 +1,238 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.IntSupplier;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * Limits the resources used by the bots of this node.
+ * <p>
+ * A start request is rejected with {@link #NODE_OVERLOADED_FAILURE_CODE} if this node reached one of its limits,
+ * so the client can send it to another node. The limits can be configured with these system properties:
+ * <ul>
+ *   <li>{@code tdlight.governor.max-bots}: bots deployed or starting, 0 for no limit</li>
+ *   <li>{@code tdlight.governor.max-heap-usage}: heap usage after the last garbage collection, between 0 and 1,
+ *   0 for no limit</li>
+ *   <li>{@code tdlight.governor.max-native-memory-mb}: memory used outside of the heap, 0 for no limit</li>
+ *   <li>{@code tdlight.governor.max-cpu-load}: CPU usage averaged over the last minute, between 0 and 1,
+ *   0 for no limit</li>
+ * </ul>
+ * All the limits are disabled by default. The resources are sampled every {@link #SAMPLE_INTERVAL},
+ * the start requests are checked against the last sample, except for the number of bots.
+ * When a value is above {@link #SOFT_LIMIT_RATIO} of its limit the node is under pressure,
+ * and the optional work, like filling the native client pool, is paused.
+ */
+public class NodeResourceGovernor {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeResourceGovernor.class);
+	/**
+	 * Failure code of the start requests rejected because this node reached one of its limits, or it's draining
+	 */
+	public static final int NODE_OVERLOADED_FAILURE_CODE = 507;
+	private static final int MAX_BOTS = Integer.getInteger("tdlight.governor.max-bots", 0);
+	private static final double MAX_HEAP_USAGE
+			= Double.parseDouble(System.getProperty("tdlight.governor.max-heap-usage", "0"));
+	private static final long MAX_NATIVE_MEMORY = Long.getLong("tdlight.governor.max-native-memory-mb", 0) * 1024 * 1024;
+	private static final double MAX_CPU_LOAD
+			= Double.parseDouble(System.getProperty("tdlight.governor.max-cpu-load", "0"));
+	private static final double SOFT_LIMIT_RATIO = 0.9;
+	private static final Duration SAMPLE_INTERVAL = NodeLoadMonitor.PUBLISH_INTERVAL;
+	/**
+	 * The CPU usage is averaged over this window, so short bursts don't reject the start requests
+	 */
+	private static final Duration CPU_WINDOW = Duration.ofMinutes(1);
+	private static final double CPU_SMOOTHING
+			= 1 - Math.exp(-(double) SAMPLE_INTERVAL.toMillis() / CPU_WINDOW.toMillis());
+
+	private final IntSupplier bots;
+	private final Runnable onStateChange;
+
+	private volatile double sustainedCpuLoad = -1;
+	/**
+	 * Reason why this node reached one of its limits as of the last sample, null if it didn't
+	 */
+	private volatile String overloadReason;
+	private volatile boolean overloaded;
+	private volatile boolean underPressure;
+	private Disposable sampler;
+
+	/**
+	 * @param bots number of bots deployed or starting on this node
+	 * @param onStateChange called when the node becomes overloaded or under pressure, and when it recovers
+	 */
+	public NodeResourceGovernor(IntSupplier bots, Runnable onStateChange) {
+		this.bots = bots;
+		this.onStateChange = onStateChange;
+	}
+
+	public synchronized void start() {
+		if (sampler != null) {
+			return;
+		}
+		sampler = Flux
+				.interval(Duration.ZERO, SAMPLE_INTERVAL)
+				.onBackpressureDrop()
+				.subscribe(tick -> sample(), ex -> logger.error("The resource governor crashed", ex));
+	}
+
+	public synchronized void stop() {
+		if (sampler != null) {
+			sampler.dispose();
+			sampler = null;
+		}
+	}
+
+	private void sample() {
+		double cpuLoad = NodeLoadMonitor.getCpuLoad();
+		double previousCpuLoad = sustainedCpuLoad;
+		sustainedCpuLoad = previousCpuLoad < 0 ? cpuLoad : previousCpuLoad + CPU_SMOOTHING * (cpuLoad - previousCpuLoad);
+
+		var rejectionReason = checkCapacity();
+		boolean wasOverloaded = overloaded;
+		boolean wasUnderPressure = underPressure;
+		overloadReason = rejectionReason.orElse(null);
+		overloaded = rejectionReason.isPresent();
+		underPressure = overloaded || isNearLimit();
+		if (overloaded != wasOverloaded) {
+			if (overloaded) {
+				logger.warn("This node doesn't accept new bots: {}", rejectionReason.get());
+			} else {
+				logger.info("This node accepts new bots again");
+			}
+		}
+		if (underPressure != wasUnderPressure) {
+			logger.info(underPressure ? "This node is close to its resource limits, pausing the optional work"
+					: "This node is not close to its resource limits anymore, resuming the optional work");
+		}
+		if (overloaded != wasOverloaded || underPressure != wasUnderPressure) {
+			onStateChange.run();
+		}
+	}
+
+	/**
+	 * Check the limits right now, it's expensive, the start requests use {@link #getRejectionReason()}
+	 *
+	 * @return the reason why this node can't start another bot, empty if it can
+	 */
+	private Optional<String> checkCapacity() {
+		var tooManyBots = checkBots();
+		if (tooManyBots.isPresent()) {
+			return tooManyBots;
+		}
+		if (MAX_HEAP_USAGE > 0) {
+			double heapUsage = getHeapUsageAfterGc();
+			if (heapUsage >= MAX_HEAP_USAGE) {
+				return Optional.of("heap usage is " + percent(heapUsage) + ", the limit is " + percent(MAX_HEAP_USAGE));
+			}
+		}
+		if (MAX_NATIVE_MEMORY > 0) {
+			long nativeMemory = getNativeMemoryUsed();
+			if (nativeMemory >= MAX_NATIVE_MEMORY) {
+				return Optional.of("native memory usage is " + nativeMemory / 1024 / 1024 + "MiB, the limit is "
+						+ MAX_NATIVE_MEMORY / 1024 / 1024 + "MiB");
+			}
+		}
+		double cpuLoad = sustainedCpuLoad;
+		if (MAX_CPU_LOAD > 0 && cpuLoad >= MAX_CPU_LOAD) {
+			return Optional.of("CPU usage is " + percent(cpuLoad) + ", the limit is " + percent(MAX_CPU_LOAD));
+		}
+		return Optional.empty();
+	}
+
+	private Optional<String> checkBots() {
+		if (MAX_BOTS <= 0) {
+			return Optional.empty();
+		}
+		int bots = this.bots.getAsInt();
+		if (bots >= MAX_BOTS) {
+			return Optional.of("too many bots: " + bots + "/" + MAX_BOTS);
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * The number of bots is checked right now, because a burst of start requests can exceed it between two samples,
+	 * the other limits are checked as of the last sample
+	 *
+	 * @return the reason why this node can't start another bot, empty if it can
+	 */
+	public Optional<String> getRejectionReason() {
+		var tooManyBots = checkBots();
+		if (tooManyBots.isPresent()) {
+			return tooManyBots;
+		}
+		return Optional.ofNullable(overloadReason);
+	}
+
+	private boolean isNearLimit() {
+		return (MAX_BOTS > 0 && bots.getAsInt() >= MAX_BOTS * SOFT_LIMIT_RATIO)
+				|| (MAX_HEAP_USAGE > 0 && getHeapUsageAfterGc() >= MAX_HEAP_USAGE * SOFT_LIMIT_RATIO)
+				|| (MAX_NATIVE_MEMORY > 0 && getNativeMemoryUsed() >= MAX_NATIVE_MEMORY * SOFT_LIMIT_RATIO)
+				|| (MAX_CPU_LOAD > 0 && sustainedCpuLoad >= MAX_CPU_LOAD * SOFT_LIMIT_RATIO);
+	}
+
+	/**
+	 * @return true if this node reached one of its limits, as of the last sample
+	 */
+	public boolean isOverloaded() {
+		return overloaded;
+	}
+
+	/**
+	 * @return true if this node is close to one of its limits, as of the last sample
+	 */
+	public boolean isUnderPressure() {
+		return underPressure;
+	}
+
+	/**
+	 * @return CPU usage of the node process averaged over the last minute, between 0 and 1
+	 */
+	public double getSustainedCpuLoad() {
+		return Math.max(0, sustainedCpuLoad);
+	}
+
+	/**
+	 * The heap usage right now includes the garbage that has not been collected yet,
+	 * so the usage after the last collection of every heap pool is used when available
+	 */
+	private static double getHeapUsageAfterGc() {
+		var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		if (heap.getMax() <= 0) {
+			return 0;
+		}
+		long used = 0;
+		boolean collected = false;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP) {
+				continue;
+			}
+			var collectionUsage = pool.getCollectionUsage();
+			if (collectionUsage != null && collectionUsage.getUsed() > 0) {
+				used += collectionUsage.getUsed();
+				collected = true;
+			} else {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		if (!collected) {
+			used = heap.getUsed();
+		}
+		return (double) used / heap.getMax();
+	}
+
+	private static long getNativeMemoryUsed() {
+		return NodeLoadMonitor.getNativeMemoryUsed(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getCommitted());
+	}
+
+	private static String percent(double value) {
+		return String.format("%.0f%%", value * 100);
+	}
+}
@@ -8,18 +8,30 @@ import io.vertx.reactivex.core.eventbus.Message;
 import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import it.tdlight.common.Init;
 import it.tdlight.common.utils.CantLoadLibrary;
+import it.tdlight.tdlibsession.td.direct.NativeClientPool;
+import it.tdlight.tdlibsession.td.direct.TelegramClientFactory;
 import it.tdlight.tdlibsession.td.middle.StartSessionMessage;
 import it.tdlight.tdlibsession.td.middle.TdClusterManager;
 import it.tdlight.tdlibsession.td.middle.server.AsyncTdMiddleEventBusServer;
 import it.tdlight.utils.BinlogUtils;
+import it.tdlight.utils.EventBusUtils;
 import it.tdlight.utils.MonoUtils;
 import java.net.URISyntaxException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.logging.log4j.LogManager;
 import org.jetbrains.annotations.Nullable;
 import org.warp.commonutils.log.Logger;
@@ -30,10 +42,24 @@ import reactor.core.publisher.Sinks;
 import reactor.core.publisher.Sinks.One;
 import reactor.core.scheduler.Schedulers;
 import reactor.tools.agent.ReactorDebugAgent;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 public class TDLibRemoteClient implements AutoCloseable {
 
 	private static final Logger logger = LoggerFactory.getLogger(TDLibRemoteClient.class);
+	/**
+	 * Maximum time spent closing the bots when the node is drained
+	 */
+	private static final Duration DRAIN_TIME_BUDGET = Duration.ofSeconds(Long.getLong("tdlight.drain.time-budget", 60));
+	/**
+	 * Bots closed at the same time when the node is drained
+	 */
+	private static final int DRAIN_CONCURRENCY = Integer.getInteger("tdlight.drain.concurrency", 8);
+	/**
+	 * Native TDLib clients created in advance, ready for the next bot starts
+	 */
+	private static final int NATIVE_CLIENT_POOL_SIZE = Integer.getInteger("tdlight.native-client-pool.size", 2);
 
 	@Nullable
 	private final SecurityInfo securityInfo;
@@ -46,6 +72,30 @@ public class TDLibRemoteClient implements AutoCloseable {
 	 * Statistic about active deployments count
 	 */
 	private final AtomicInteger statsActiveDeployments = new AtomicInteger();
+	/**
+	 * Bots deployed on this node, by bot id
+	 */
+	private final Map<Long, AsyncTdMiddleEventBusServer> deployedBots = new ConcurrentHashMap<>();
+	/**
+	 * Deployment time of the bots deployed on this node, in milliseconds, by bot id
+	 */
+	private final Map<Long, Long> botDeployTimes = new ConcurrentHashMap<>();
+	private final One<NodeLoadMonitor> nodeLoadMonitor = Sinks.one();
+	private final One<BotMigrator> botMigrator = Sinks.one();
+	private final One<ClusterRebalancer> clusterRebalancer = Sinks.one();
+	private final One<BotHibernator> botHibernator = Sinks.one();
+	private final One<NodeHeartbeat> nodeHeartbeat = Sinks.one();
+	private final BotStartQueue startQueue = new BotStartQueue();
+	private final NodeResourceGovernor resourceGovernor
+			= new NodeResourceGovernor(this::getDeployedAndStartingBots, this::onResourceStateChange);
+	private final NativeClientPool nativeClientPool
+			= new NativeClientPool(NATIVE_CLIENT_POOL_SIZE, resourceGovernor::isUnderPressure);
+	private final TelegramClientFactory clientFactory = new TelegramClientFactory(nativeClientPool);
+	private final Set<MessageConsumer<StartSessionMessage>> startBotConsumers = ConcurrentHashMap.newKeySet();
+	/**
+	 * True when the node doesn't accept new bots anymore, because it's being shut down
+	 */
+	private volatile boolean draining;
 
 	public static boolean runningFromIntelliJ() {
 		return System.getProperty("java.class.path").contains("idea_rt.jar")
@@ -119,9 +169,8 @@ public class TDLibRemoteClient implements AutoCloseable {
 				.start()
 				.block();
 
-		// Close vert.x on shutdown
-		var vertx = client.clusterManager.asMono().block().getVertx();
-		Runtime.getRuntime().addShutdownHook(new Thread(() -> MonoUtils.toMono(vertx.rxClose()).blockOptional()));
+		// Drain the node on shutdown: the bots are closed and their final binlogs are sent to the clients
+		Runtime.getRuntime().addShutdownHook(new Thread(client::close));
 	}
 
 	public Mono<Void> start() {
@@ -169,11 +218,48 @@ public class TDLibRemoteClient implements AutoCloseable {
 				.flatMap(clusterManager -> {
 					MessageConsumer<StartSessionMessage> startBotConsumer
 							= clusterManager.getEventBus().consumer("bots.start-bot");
-
-					return this.listenForStartBotsCommand(
-							clusterManager,
-							MonoUtils.fromReplyableMessageConsumer(Mono.empty(), startBotConsumer)
+					// Clients that choose the node by its load send the start requests to this address
+					MessageConsumer<StartSessionMessage> nodeStartBotConsumer
+							= clusterManager.getEventBus().consumer(getStartBotAddress(clusterManager.getNodeId()));
+					startBotConsumers.add(startBotConsumer);
+					startBotConsumers.add(nodeStartBotConsumer);
+
+					var nodeLoadMonitor = new NodeLoadMonitor(clusterManager,
+							statsActiveDeployments::get,
+							startQueue,
+							this::getReceivedUpdates,
+							() -> draining,
+							resourceGovernor::isOverloaded
 					);
+					this.nodeLoadMonitor.tryEmitValue(nodeLoadMonitor);
+					resourceGovernor.start();
+					nodeLoadMonitor.start();
+
+					nativeClientPool.start();
+
+					var botMigrator = new BotMigrator(this, clusterManager);
+					this.botMigrator.tryEmitValue(botMigrator);
+
+					var clusterRebalancer = new ClusterRebalancer(this, botMigrator, clusterManager);
+					this.clusterRebalancer.tryEmitValue(clusterRebalancer);
+					clusterRebalancer.start();
+
+					var botHibernator = new BotHibernator(this, clusterManager);
+					this.botHibernator.tryEmitValue(botHibernator);
+					botHibernator.start();
+
+					var nodeHeartbeat = new NodeHeartbeat(clusterManager, () -> getHostedBots(botHibernator));
+					this.nodeHeartbeat.tryEmitValue(nodeHeartbeat);
+					nodeHeartbeat.start();
+
+					return botMigrator
+							.start()
+							.then(this.listenForStartBotsCommand(
+									clusterManager,
+									Flux.merge(MonoUtils.fromReplyableMessageConsumer(Mono.empty(), startBotConsumer),
+											MonoUtils.fromReplyableMessageConsumer(Mono.empty(), nodeStartBotConsumer)
+									)
+							));
 				})
 				.then();
 	}
@@ -182,33 +268,35 @@ public class TDLibRemoteClient implements AutoCloseable {
 			Flux<Message<StartSessionMessage>> messages) {
 		return MonoUtils
 				.fromBlockingEmpty(() -> messages
-						.flatMapSequential(msg -> {
+						// The start queue limits the concurrent starts
+						.flatMap(msg -> {
 							StartSessionMessage req = msg.body();
-							DeploymentOptions deploymentOptions = clusterManager
-									.newDeploymentOpts()
-									.setConfig(new JsonObject()
-											.put("botId", req.id())
-											.put("botAlias", req.alias())
-											.put("local", false)
-											.put("implementationDetails", req.implementationDetails()));
-							var verticle = new AsyncTdMiddleEventBusServer();
-
-							// Binlog path
-							var sessPath = getSessionDirectory(req.id());
-							var mediaPath = getMediaDirectory(req.id());
-							var blPath = getSessionBinlogDirectory(req.id());
-
-							return BinlogUtils
-									.chooseBinlog(clusterManager.getVertx().fileSystem(), blPath, req.binlog(), req.binlogDate())
-									.then(BinlogUtils.cleanSessionPath(clusterManager.getVertx().fileSystem(), blPath, sessPath, mediaPath))
-									.then(clusterManager.getVertx().rxDeployVerticle(verticle, deploymentOptions).as(MonoUtils::toMono))
-									.then(MonoUtils.fromBlockingEmpty(() -> msg.reply(new byte[0])))
+							if (draining) {
+								msg.fail(NodeResourceGovernor.NODE_OVERLOADED_FAILURE_CODE, "This node is draining");
+								return Mono.empty();
+							}
+							var rejectionReason = resourceGovernor.getRejectionReason();
+							if (rejectionReason.isPresent()) {
+								// The client sends the start request to another node
+								logger.warn("Rejected the start of bot {}, this node is overloaded: {}", req.id(), rejectionReason.get());
+								msg.fail(NodeResourceGovernor.NODE_OVERLOADED_FAILURE_CODE,
+										"This node is overloaded: " + rejectionReason.get()
+								);
+								return Mono.empty();
+							}
+							int priority = req.implementationDetails().getInteger(BotStartQueue.START_PRIORITY_KEY, 0);
+							var started = new AtomicBoolean();
+							var start = startBot(clusterManager, msg).doOnSubscribe(s -> started.set(true));
+							return startQueue
+									.enqueue(req.id(), priority, start)
 									.onErrorResume(ex -> {
-										msg.fail(500, "Failed to deploy bot verticle: " + ex.getMessage());
-										logger.error("Failed to deploy bot verticle", ex);
+										if (!started.get()) {
+											// Rejected before starting, the client sends it to another node
+											msg.fail(NodeResourceGovernor.NODE_OVERLOADED_FAILURE_CODE, ex.getMessage());
+										}
 										return Mono.empty();
 									});
-						})
+						}, Integer.MAX_VALUE)
 						.subscribeOn(Schedulers.parallel())
 						.subscribe(
 								v -> {},
@@ -217,6 +305,339 @@ public class TDLibRemoteClient implements AutoCloseable {
 				);
 	}
 
+	/**
+	 * Start a bot, receiving its binlog from the client.
+	 * <p>
+	 * The binlog is received while TDLib is being initialized and the verticle is being deployed,
+	 * because TDLib reads the session only after the client sends the parameters, and the client
+	 * sends them only after the start has been replied. The start latency is the slowest of the two phases.
+	 */
+	private Mono<Void> startBot(TdClusterManager clusterManager, Message<StartSessionMessage> msg) {
+		return Mono.defer(() -> {
+			StartSessionMessage req = msg.body();
+			var fileSystem = clusterManager.getVertx().fileSystem();
+			var sessPath = getSessionDirectory(req.id());
+			var mediaPath = getMediaDirectory(req.id());
+			var blPath = getSessionBinlogDirectory(req.id());
+			long startTime = System.nanoTime();
+			var binlogTime = new AtomicLong();
+			var sessionTime = new AtomicLong();
+			var deploymentTime = new AtomicLong();
+
+			var binlog = BinlogUtils
+					.receiveBinlog(fileSystem, blPath, msg, clusterManager.newDeliveryOpts())
+					.doOnSuccess(s -> binlogTime.set(System.nanoTime() - startTime))
+					.flatMap(deltaMsg -> BinlogUtils.prepareSessionPath(fileSystem, blPath, sessPath, mediaPath).thenReturn(deltaMsg))
+					.doOnSuccess(s -> sessionTime.set(System.nanoTime() - startTime - binlogTime.get()));
+			var deployment = deployVerticle(clusterManager, req.id(), req.alias(), req.implementationDetails(), false, null)
+					.doOnSuccess(s -> deploymentTime.set(System.nanoTime() - startTime));
+
+			return Mono
+					.zip(binlog.materialize(), deployment.materialize())
+					.flatMap(signals -> {
+						var binlogSignal = signals.getT1();
+						var deploymentSignal = signals.getT2();
+						if (binlogSignal.hasValue() && deploymentSignal.hasValue()) {
+							var deltaMsg = binlogSignal.get();
+							onBotDeployed(req.id(), deploymentSignal.get().getT2());
+							return MonoUtils
+									.fromBlockingEmpty(() -> deltaMsg.reply(new byte[0]))
+									.doOnSuccess(s -> logger.info(
+											"Started bot {} in {}ms. Binlog: {}ms, then session: {}ms, meanwhile TDLib and verticle: {}ms",
+											req.id(),
+											Duration.ofNanos(System.nanoTime() - startTime).toMillis(),
+											Duration.ofNanos(binlogTime.get()).toMillis(),
+											Duration.ofNanos(sessionTime.get()).toMillis(),
+											Duration.ofNanos(deploymentTime.get()).toMillis()
+									));
+						}
+						Throwable ex;
+						if (!binlogSignal.hasValue()) {
+							ex = binlogSignal.getThrowable() != null ? binlogSignal.getThrowable()
+									: new IllegalStateException("The binlog has not been received");
+							msg.fail(500, "Failed to receive the binlog: " + ex.getMessage());
+							logger.error("Failed to receive the binlog", ex);
+						} else {
+							ex = deploymentSignal.getThrowable() != null ? deploymentSignal.getThrowable()
+									: new IllegalStateException("The verticle has not been deployed");
+							binlogSignal.get().fail(500, "Failed to deploy bot verticle: " + ex.getMessage());
+							logger.error("Failed to deploy bot verticle", ex);
+						}
+						if (deploymentSignal.hasValue()) {
+							return discardVerticle(clusterManager, deploymentSignal.get()).then(Mono.error(ex));
+						}
+						return Mono.error(ex);
+					});
+		});
+	}
+
+	/**
+	 * Deploy a bot whose session binlog is already on this node
+	 *
+	 * @param migrated true if the bot has been migrated from another node, and its client is already receiving its updates
+	 * @param sessionSetup session setup of the previous verticle of the bot, see
+	 * {@link AsyncTdMiddleEventBusServer#getSessionSetup()}, replayed before receiving the requests
+	 */
+	Mono<Void> deployBot(TdClusterManager clusterManager,
+			long botId,
+			String botAlias,
+			JsonObject implementationDetails,
+			boolean migrated,
+			@Nullable byte[] sessionSetup) {
+		// Binlog path
+		var sessPath = getSessionDirectory(botId);
+		var mediaPath = getMediaDirectory(botId);
+		var blPath = getSessionBinlogDirectory(botId);
+
+		return BinlogUtils
+				.prepareSessionPath(clusterManager.getVertx().fileSystem(), blPath, sessPath, mediaPath)
+				.then(deployVerticle(clusterManager, botId, botAlias, implementationDetails, migrated, sessionSetup))
+				.doOnNext(deployment -> onBotDeployed(botId, deployment.getT2()))
+				.then();
+	}
+
+	/**
+	 * @return the deployment id and the verticle
+	 */
+	private Mono<Tuple2<String, AsyncTdMiddleEventBusServer>> deployVerticle(TdClusterManager clusterManager,
+			long botId,
+			String botAlias,
+			JsonObject implementationDetails,
+			boolean migrated,
+			@Nullable byte[] sessionSetup) {
+		if (draining) {
+			return Mono.error(new IllegalStateException("This node is draining, it doesn't accept new bots"));
+		}
+		DeploymentOptions deploymentOptions = clusterManager
+				.newDeploymentOpts()
+				.setConfig(new JsonObject()
+						.put("botId", botId)
+						.put("botAlias", botAlias)
+						.put("local", false)
+						.put("implementationDetails", implementationDetails)
+						.put("migrated", migrated)
+						.put("sessionSetup", sessionSetup));
+		var verticle = new AsyncTdMiddleEventBusServer(clientFactory);
+		return clusterManager
+				.getVertx()
+				.rxDeployVerticle(verticle, deploymentOptions)
+				.as(MonoUtils::toMono)
+				.map(deploymentId -> Tuples.of(deploymentId, verticle));
+	}
+
+	/**
+	 * Close TDLib and undeploy a verticle of a bot that failed to start
+	 */
+	private Mono<Void> discardVerticle(TdClusterManager clusterManager, Tuple2<String, AsyncTdMiddleEventBusServer> deployment) {
+		return deployment
+				.getT2()
+				.discard()
+				.then(clusterManager.getVertx().rxUndeploy(deployment.getT1()).as(MonoUtils::<Void>toMono))
+				.onErrorResume(ex -> {
+					logger.warn("Failed to undeploy the verticle of a bot that failed to start", ex);
+					return Mono.empty();
+				});
+	}
+
+	private void onBotDeployed(long botId, AsyncTdMiddleEventBusServer verticle) {
+		deployedBots.put(botId, verticle);
+		botDeployTimes.put(botId, System.currentTimeMillis());
+		statsActiveDeployments.incrementAndGet();
+		verticle
+				.onStopped()
+				.doFinally(signalType -> {
+					if (deployedBots.remove(botId, verticle)) {
+						botDeployTimes.remove(botId);
+					}
+					statsActiveDeployments.decrementAndGet();
+				})
+				.subscribe(v -> {}, ex -> {});
+	}
+
+	/**
+	 * @return the verticle of a bot deployed on this node, or null
+	 */
+	@Nullable
+	AsyncTdMiddleEventBusServer getDeployedBot(long botId) {
+		return deployedBots.get(botId);
+	}
+
+	public BotStartQueue getStartQueue() {
+		return startQueue;
+	}
+
+	public boolean isDraining() {
+		return draining;
+	}
+
+	public NodeResourceGovernor getResourceGovernor() {
+		return resourceGovernor;
+	}
+
+	/**
+	 * @return true if the optional work must be postponed, because this node is close to its resource limits
+	 */
+	boolean isUnderResourcePressure() {
+		return resourceGovernor.isUnderPressure();
+	}
+
+	private int getDeployedAndStartingBots() {
+		return statsActiveDeployments.get() + startQueue.getQueueDepth() + startQueue.getRunningStarts();
+	}
+
+	/**
+	 * Publish the load immediately, so the clients stop choosing this node while it's overloaded,
+	 * and fill the native client pool again when this node is not under pressure anymore
+	 */
+	private void onResourceStateChange() {
+		nativeClientPool.start();
+		nodeLoadMonitor
+				.asMono()
+				.flatMap(NodeLoadMonitor::publish)
+				.subscribe(v -> {}, ex -> logger.warn("Failed to publish the load of this node", ex));
+	}
+
+	/**
+	 * Stop accepting new bots and close the bots deployed on this node.
+	 * <p>
+	 * The start consumers are unregistered, so the clients start their bots on the other nodes,
+	 * and the load of this node is published immediately as draining.
+	 * The queued starts are rejected, then the running starts, migrations and wakes are awaited,
+	 * so the bots they deploy are closed too.
+	 * The bots are closed in parallel, each one sends its final binlog to its client before stopping.
+	 * The bots that are still running when the time budget expires are left to the shutdown of Vert.x.
+	 *
+	 * @param timeBudget maximum time spent closing the bots
+	 */
+	public Mono<Void> drain(Duration timeBudget) {
+		return Mono.defer(() -> {
+			if (draining) {
+				return Mono.empty();
+			}
+			draining = true;
+			long startTime = System.nanoTime();
+			long deadline = startTime + timeBudget.toNanos();
+			var bots = new ArrayList<Map.Entry<Long, AsyncTdMiddleEventBusServer>>();
+			var closedBots = new AtomicInteger();
+			var failedBots = new AtomicInteger();
+			logger.info("Draining this node, time budget: {}ms", timeBudget.toMillis());
+			startQueue.rejectPending(new IllegalStateException("This node is draining"));
+			return Flux
+					.fromIterable(startBotConsumers)
+					.flatMap(consumer -> EventBusUtils.unregister(consumer).onErrorResume(ex -> Mono.empty()))
+					.then(clusterRebalancer
+							.asMono()
+							.timeout(Duration.ofSeconds(1), Mono.empty())
+							.doOnNext(ClusterRebalancer::stop))
+					// The hibernated bots have already sent their final binlog
+					.then(botHibernator
+							.asMono()
+							.timeout(Duration.ofSeconds(1), Mono.empty())
+							.flatMap(BotHibernator::stop)
+							.onErrorResume(ex -> {
+								logger.warn("Failed to stop the hibernation of the bots", ex);
+								return Mono.empty();
+							}))
+					.then(nodeLoadMonitor
+							.asMono()
+							.timeout(Duration.ofSeconds(1), Mono.empty())
+							.flatMap(NodeLoadMonitor::publish)
+							.onErrorResume(ex -> {
+								logger.warn("Failed to publish the load of this node", ex);
+								return Mono.empty();
+							}))
+					// Wait for the bots that are being deployed
+					.then(Mono.defer(() -> Mono
+							.when(startQueue.awaitRunningStarts(), botMigrator
+									.asMono()
+									.timeout(Duration.ofSeconds(1), Mono.empty())
+									.flatMap(BotMigrator::awaitIncomingStarts))
+							.timeout(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())),
+									Mono.fromRunnable(() -> logger.warn("Drain: some bots are still starting, they will not be closed"))
+							)))
+					.thenMany(Flux.defer(() -> {
+						bots.addAll(deployedBots.entrySet());
+						logger.info("Drain: closing {} bots", bots.size());
+						return Flux.fromIterable(bots);
+					}))
+					.flatMap(bot -> Mono.defer(() -> {
+						long botStartTime = System.nanoTime();
+						return bot
+								.getValue()
+								.closeGracefully()
+								.timeout(Duration.ofNanos(Math.max(0, deadline - botStartTime)))
+								.doOnSuccess(s -> logger.info("Drain: closed bot {} ({}/{}) in {}ms",
+										bot.getKey(),
+										closedBots.incrementAndGet(),
+										bots.size(),
+										Duration.ofNanos(System.nanoTime() - botStartTime).toMillis()
+								))
+								.onErrorResume(ex -> {
+									failedBots.incrementAndGet();
+									logger.warn("Drain: bot {} has not been closed cleanly: {}", bot.getKey(), ex.toString());
+									return Mono.empty();
+								});
+					}), DRAIN_CONCURRENCY)
+					.then()
+					.doOnSuccess(s -> logger.info("Drained this node in {}ms. Closed bots: {}, failed bots: {}",
+							Duration.ofNanos(System.nanoTime() - startTime).toMillis(),
+							closedBots.get(),
+							failedBots.get()
+					));
+		});
+	}
+
+	/**
+	 * @return the bots deployed on this node, by bot id
+	 */
+	Map<Long, AsyncTdMiddleEventBusServer> getDeployedBots() {
+		return Collections.unmodifiableMap(deployedBots);
+	}
+
+	/**
+	 * @return deployment time of the bots deployed on this node, in milliseconds, by bot id
+	 */
+	Map<Long, Long> getBotDeployTimes() {
+		return Collections.unmodifiableMap(botDeployTimes);
+	}
+
+	/**
+	 * @return the ids of the bots deployed or hibernated on this node
+	 */
+	private Collection<Long> getHostedBots(BotHibernator botHibernator) {
+		var hostedBots = new HashSet<>(deployedBots.keySet());
+		hostedBots.addAll(botHibernator.getHibernatedBotIds());
+		return hostedBots;
+	}
+
+	private long getReceivedUpdates() {
+		long receivedUpdates = 0;
+		for (AsyncTdMiddleEventBusServer verticle : deployedBots.values()) {
+			receivedUpdates += verticle.getReceivedUpdates();
+		}
+		return receivedUpdates;
+	}
+
+	/**
+	 * Migrate a bot deployed on this node to another node
+	 *
+	 * @param targetNodeId the node that will run the bot, or null to choose the least-loaded node
+	 * @param includeDatabase true to transfer the session database too, so the bot doesn't need to rebuild it
+	 */
+	public Mono<MigrationResult> migrateBot(long botId, @Nullable String targetNodeId, boolean includeDatabase) {
+		return botMigrator
+				.asMono()
+				.switchIfEmpty(Mono.error(new IllegalStateException("The remote client is not started")))
+				.flatMap(migrator -> migrator.migrateBot(botId, targetNodeId, includeDatabase));
+	}
+
+	/**
+	 * @return the address that receives the start requests sent to a specific node
+	 */
+	public static String getStartBotAddress(String nodeId) {
+		return "bots.start-bot." + nodeId;
+	}
+
 	public static Path getSessionDirectory(long botId) {
 		return Paths.get(".sessions-cache").resolve("id" + botId);
 	}
@@ -231,10 +652,27 @@ public class TDLibRemoteClient implements AutoCloseable {
 
 	@Override
 	public void close() {
+		this.drain(DRAIN_TIME_BUDGET)
+				.onErrorResume(ex -> {
+					logger.error("Failed to drain this node", ex);
+					return Mono.empty();
+				})
+				.block();
+		this.resourceGovernor.stop();
+		this.nodeHeartbeat.asMono().timeout(Duration.ofSeconds(1), Mono.empty()).doOnNext(NodeHeartbeat::stop).block();
+		this.nativeClientPool.close();
+		this.nodeLoadMonitor
+				.asMono()
+				.timeout(Duration.ofSeconds(1), Mono.empty())
+				.flatMap(NodeLoadMonitor::stop)
+				.onErrorResume(ex -> {
+					logger.warn("Failed to remove the load of this node", ex);
+					return Mono.empty();
+				})
+				.block();
 		this.clusterManager
 				.asMono()
 				.blockOptional()
-				.map(TdClusterManager::getVertx)
-				.ifPresent(v -> v.rxClose().blockingAwait());
+				.ifPresent(clusterManager -> clusterManager.close().block());
 	}
 }
@@ -3,21 +3,31 @@ package it.tdlight.tdlibsession.td;
 import it.tdlight.common.ReactiveTelegramClient;
 import it.tdlight.jni.TdApi;
 import it.tdlight.utils.MonoUtils;
+import java.util.concurrent.atomic.AtomicBoolean;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public class WrappedReactorTelegramClient implements ReactorTelegramClient {
 
 	private final ReactiveTelegramClient reactiveTelegramClient;
+	private final AtomicBoolean initialized = new AtomicBoolean();
 
 	public WrappedReactorTelegramClient(ReactiveTelegramClient reactiveTelegramClient) {
 		this.reactiveTelegramClient = reactiveTelegramClient;
 	}
 
+	/**
+	 * Create and register the native client. Clients taken from a pool are already initialized,
+	 * so the next calls don't do anything.
+	 */
 	@SuppressWarnings("Convert2MethodRef")
 	public Mono<Void> initialize() {
 		return MonoUtils
-				.fromBlockingEmpty(() -> reactiveTelegramClient.createAndRegisterClient());
+				.fromBlockingEmpty(() -> {
+					if (initialized.compareAndSet(false, true)) {
+						reactiveTelegramClient.createAndRegisterClient();
+					}
+				});
 	}
 
 	@Override
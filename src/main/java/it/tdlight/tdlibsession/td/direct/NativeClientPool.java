@@ -0,0 +1,133 @@
+package it.tdlight.tdlibsession.td.direct;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.ReactorTelegramClient;
+import it.tdlight.tdlibsession.td.WrappedReactorTelegramClient;
+import it.tdlight.tdlight.ClientManager;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Native TDLib clients created and registered in advance, so a bot start doesn't wait for them.
+ * <p>
+ * A client taken from the pool is replaced in the background.
+ * When the pool is empty a new client is created on demand.
+ * The clients don't have a session until they receive the parameters of a bot.
+ * The pool is not filled while it's paused, for example when the node is close to its memory limit.
+ */
+public class NativeClientPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(NativeClientPool.class);
+
+	private final int size;
+	private final BooleanSupplier paused;
+	private final Queue<ReactorTelegramClient> clients = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean refilling = new AtomicBoolean();
+	private volatile boolean closed;
+
+	// Statistics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public NativeClientPool(int size) {
+		this(size, () -> false);
+	}
+
+	/**
+	 * @param paused true when the pool must not create new clients
+	 */
+	public NativeClientPool(int size, BooleanSupplier paused) {
+		this.size = size;
+		this.paused = paused;
+	}
+
+	/**
+	 * Fill the pool in the background, this can be called again when the pool is not paused anymore
+	 */
+	public void start() {
+		refill();
+	}
+
+	/**
+	 * @return a registered native client, from the pool if available
+	 */
+	public Mono<ReactorTelegramClient> take() {
+		return Mono.defer(() -> {
+			var client = clients.poll();
+			refill();
+			if (client != null) {
+				hits.incrementAndGet();
+				logger.trace("Took a native client from the pool");
+				return Mono.just(client);
+			}
+			misses.incrementAndGet();
+			logger.debug("The native client pool is empty, creating a new client");
+			return createClient();
+		});
+	}
+
+	private Mono<ReactorTelegramClient> createClient() {
+		return Mono
+				.<ReactorTelegramClient>fromCallable(() -> new WrappedReactorTelegramClient(ClientManager.createReactive()))
+				.flatMap(client -> client.initialize().thenReturn(client))
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private void refill() {
+		if (closed || clients.size() >= size || paused.getAsBoolean() || !refilling.compareAndSet(false, true)) {
+			return;
+		}
+		createClient()
+				.repeat(() -> !closed && clients.size() < size && !paused.getAsBoolean())
+				.doOnNext(client -> {
+					clients.add(client);
+					if (closed) {
+						closeClients();
+					}
+				})
+				.doFinally(signalType -> {
+					refilling.set(false);
+					// Clients may have been taken while refilling
+					if (!closed && clients.size() < size && !paused.getAsBoolean() && signalType != SignalType.ON_ERROR) {
+						refill();
+					}
+				})
+				.subscribe(client -> {}, ex -> logger.warn("Failed to fill the native client pool", ex));
+	}
+
+	/**
+	 * Close the clients that are still in the pool
+	 */
+	public void close() {
+		closed = true;
+		closeClients();
+		logger.debug("Closed the native client pool. Hits: {}, misses: {}", hits.get(), misses.get());
+	}
+
+	private void closeClients() {
+		ReactorTelegramClient client;
+		while ((client = clients.poll()) != null) {
+			client.send(new TdApi.Close()).subscribe(result -> {}, ex -> {});
+		}
+	}
+
+	public int getAvailableClients() {
+		return clients.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+}
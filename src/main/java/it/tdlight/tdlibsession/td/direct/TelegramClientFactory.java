@@ -5,17 +5,31 @@ import it.tdlight.tdlibsession.td.ReactorTelegramClient;
 import it.tdlight.tdlibsession.td.WrappedReactorTelegramClient;
 import it.tdlight.tdlight.ClientManager;
 import it.tdlight.utils.MonoUtils;
+import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Mono;
 
 public class TelegramClientFactory {
 
+	@Nullable
+	private final NativeClientPool nativeClientPool;
+
 	public TelegramClientFactory() {
+		this(null);
+	}
 
+	/**
+	 * @param nativeClientPool pool of the native clients, or null to create them on demand
+	 */
+	public TelegramClientFactory(@Nullable NativeClientPool nativeClientPool) {
+		this.nativeClientPool = nativeClientPool;
 	}
 
 	public Mono<ReactorTelegramClient> create(JsonObject implementationDetails) {
+		var implementationName = implementationDetails.getString("name", "native-client");
+		if (nativeClientPool != null && implementationName.equals("native-client")) {
+			return nativeClientPool.take();
+		}
 		return MonoUtils.fromBlockingSingle(() -> {
-			var implementationName = implementationDetails.getString("name", "native-client");
 			switch (implementationName) {
 				case "native-client":
 					return new WrappedReactorTelegramClient(ClientManager.createReactive());
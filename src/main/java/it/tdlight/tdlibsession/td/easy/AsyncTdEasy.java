@@ -39,9 +39,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import org.reactivestreams.Publisher;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
@@ -65,7 +69,7 @@ public class AsyncTdEasy {
 	private final One<FatalErrorType> fatalError = Sinks.one();
 	private final AsyncTdMiddle td;
 	private final String logName;
-	private final Flux<Update> incomingUpdates;
+	private final Flux<List<Update>> incomingUpdatesBatches;
 	private final Scheduler scheduler = Schedulers.parallel();
 
 	public AsyncTdEasy(AsyncTdMiddle td, String logName) {
@@ -73,10 +77,8 @@ public class AsyncTdEasy {
 		this.logName = logName;
 		this.logger = LoggerFactory.getLogger("AsyncTdEasy " + logName);
 
-		this.incomingUpdates = td.receive()
-				.flatMapSequential(this::preprocessUpdates)
-				.flatMapSequential(update -> Mono.from(this.getState()).single().map(state -> new AsyncTdUpdateObj(state, update)))
-				.map(upd -> (TdApi.Update) upd.getUpdate())
+		this.incomingUpdatesBatches = td.receiveBatches()
+				.flatMapSequential(this::preprocessUpdatesBatch)
 				.doOnError(ex -> {
 					if (ex instanceof TdError) {
 						var tdEx = (TdError) ex;
@@ -162,7 +164,14 @@ public class AsyncTdEasy {
 	}
 
 	private Flux<TdApi.Update> getIncomingUpdates(boolean includePreAuthUpdates) {
-		return incomingUpdates;
+		return incomingUpdatesBatches.flatMapIterable(updates -> updates);
+	}
+
+	/**
+	 * Get incoming updates from TDLib, grouped in the same batches in which they have been received.
+	 */
+	public Flux<List<TdApi.Update>> getIncomingUpdatesBatches() {
+		return incomingUpdatesBatches;
 	}
 
 	/**
@@ -187,10 +196,104 @@ public class AsyncTdEasy {
 		return td.<T>execute(request, false);
 	}
 
+	/**
+	 * Sends request to TDLib without building a reactive pipeline.
+	 * @return The response or {@link TdApi.Error}.
+	 */
+	public <T extends Object> CompletionStage<TdResult<T>> sendAsync(TdApi.Function request) {
+		return td.executeAsync(request);
+	}
+
 	private <T extends TdApi.Object> Mono<TdResult<T>> sendDirectly(TdApi.Function obj, boolean synchronous) {
 		return td.<T>execute(obj, synchronous);
 	}
 
+	/**
+	 * Get the history of a chat, from the newest message to the oldest one, by sending {@link TdApi.GetChatHistory}
+	 * requests page by page until TDLib returns no message older than the last one received.
+	 * TDLib may return fewer messages than requested even when more are available, so a partial page doesn't end the history.
+	 * <p>
+	 * Each page after the first one starts from the oldest message received, that TDLib returns again,
+	 * so one more message is requested and the repeated messages are skipped.
+	 * The next page is requested while the current one is being consumed.
+	 *
+	 * @param chatId chat identifier
+	 * @param fromMessageId identifier of the message from which the history must be fetched, included if it exists,
+	 *                      0 to start from the last message
+	 * @param pageSize maximum number of messages requested in each page, from 1 to 100
+	 * @param onlyLocal return only messages that are available locally without sending network requests
+	 */
+	public Flux<TdApi.Message> getChatHistory(long chatId, long fromMessageId, int pageSize, boolean onlyLocal) {
+		int limit = Math.max(1, Math.min(100, pageSize));
+		return Mono
+				.defer(() -> Mono.fromCompletionStage(requestChatHistoryPage(chatId, fromMessageId, limit, onlyLocal)))
+				// The first page includes fromMessageId, like GetChatHistory
+				.map(result -> toChatHistoryPage(chatId, 0, limit, onlyLocal, result))
+				.expand(page -> {
+					if (page.nextPage == null) {
+						return Mono.empty();
+					}
+					return Mono
+							.fromCompletionStage(page.nextPage)
+							.map(result -> toChatHistoryPage(chatId, page.oldestMessageId, limit, onlyLocal, result));
+				})
+				// Request a page only after the previous one has been consumed
+				.concatMap(page -> Flux.fromArray(page.messages), 1);
+	}
+
+	private CompletionStage<TdResult<TdApi.Messages>> requestChatHistoryPage(long chatId,
+			long fromMessageId,
+			int limit,
+			boolean onlyLocal) {
+		return td.<TdApi.Messages>executeAsync(new TdApi.GetChatHistory(chatId, fromMessageId, 0, limit, onlyLocal));
+	}
+
+	/**
+	 * @param olderThanMessageId the oldest message of the previous page, 0 for the first page
+	 */
+	private ChatHistoryPage toChatHistoryPage(long chatId,
+			long olderThanMessageId,
+			int limit,
+			boolean onlyLocal,
+			TdResult<TdApi.Messages> result) {
+		var messages = result.orElseThrow().messages;
+		if (olderThanMessageId != 0) {
+			// Don't return again the messages of the previous page
+			int count = 0;
+			for (TdApi.Message message : messages) {
+				if (message.id < olderThanMessageId) {
+					messages[count++] = message;
+				}
+			}
+			if (count < messages.length) {
+				messages = Arrays.copyOf(messages, count);
+			}
+		}
+		if (messages.length == 0) {
+			// There are no older messages
+			return new ChatHistoryPage(messages, 0, null);
+		}
+		var oldestMessageId = messages[messages.length - 1].id;
+		// Prefetch the next page, it starts with the oldest message of this page
+		var nextPage = requestChatHistoryPage(chatId, oldestMessageId, Math.min(100, limit + 1), onlyLocal);
+		return new ChatHistoryPage(messages, oldestMessageId, nextPage);
+	}
+
+	private static final class ChatHistoryPage {
+
+		private final TdApi.Message[] messages;
+		private final long oldestMessageId;
+		private final CompletionStage<TdResult<TdApi.Messages>> nextPage;
+
+		private ChatHistoryPage(TdApi.Message[] messages,
+				long oldestMessageId,
+				CompletionStage<TdResult<TdApi.Messages>> nextPage) {
+			this.messages = messages;
+			this.oldestMessageId = oldestMessageId;
+			this.nextPage = nextPage;
+		}
+	}
+
 	/**
 	 * Set verbosity level
 	 * @param i level
@@ -392,6 +495,31 @@ public class AsyncTdEasy {
 		return Mono.from(settings.asFlux()).single().map(TdEasySettings::isBotTokenSet);
 	}
 
+	private Mono<List<TdApi.Update>> preprocessUpdatesBatch(List<TdApi.Object> updatesBatch) {
+		boolean requiresPreprocessing = false;
+		for (TdApi.Object updateObj : updatesBatch) {
+			var constructor = updateObj.getConstructor();
+			if (constructor == Error.CONSTRUCTOR || constructor == UpdateAuthorizationState.CONSTRUCTOR) {
+				requiresPreprocessing = true;
+				break;
+			}
+		}
+		Mono<List<TdApi.Update>> updatesMono;
+		if (requiresPreprocessing) {
+			updatesMono = Flux.fromIterable(updatesBatch).flatMapSequential(this::preprocessUpdates).collectList();
+		} else {
+			// Fast path: the batch contains only plain updates
+			var updates = new ArrayList<TdApi.Update>(updatesBatch.size());
+			for (TdApi.Object updateObj : updatesBatch) {
+				updates.add((TdApi.Update) updateObj);
+			}
+			updatesMono = Mono.just(updates);
+		}
+		return updatesMono
+				.filter(updates -> !updates.isEmpty())
+				.flatMap(updates -> Mono.from(this.getState()).single().thenReturn(updates));
+	}
+
 	private Publisher<TdApi.Update> preprocessUpdates(TdApi.Object updateObj) {
 		return Mono
 				.just(updateObj)
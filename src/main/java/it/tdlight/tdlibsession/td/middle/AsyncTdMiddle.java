@@ -2,6 +2,8 @@ package it.tdlight.tdlibsession.td.middle;
 
 import it.tdlight.jni.TdApi;
 import it.tdlight.tdlibsession.td.TdResult;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -16,6 +18,15 @@ public interface AsyncTdMiddle {
 	 */
 	Flux<TdApi.Object> receive();
 
+	/**
+	 * Receives incoming updates from TDLib, grouped in the same batches in which they have been received.
+	 *
+	 * @return Batches of updates (or Error if received a fatal error. A fatal error means that the client is no longer working)
+	 */
+	default Flux<List<TdApi.Object>> receiveBatches() {
+		return receive().map(List::of);
+	}
+
 	/**
 	 * Sends request to TDLib. May be called from any thread.
 	 *
@@ -23,4 +34,11 @@ public interface AsyncTdMiddle {
 	 * @param executeDirectly Execute the function synchronously.
 	 */
 	<T extends TdApi.Object> Mono<TdResult<T>> execute(TdApi.Function request, boolean executeDirectly);
+
+	/**
+	 * Sends request to TDLib without building a reactive pipeline. May be called from any thread.
+	 *
+	 * @param request Request to TDLib.
+	 */
+	<T extends TdApi.Object> CompletionStage<TdResult<T>> executeAsync(TdApi.Function request);
 }
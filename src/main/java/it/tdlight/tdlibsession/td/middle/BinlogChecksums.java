@@ -0,0 +1,62 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Checksums of the fixed-size blocks of a binlog, sent to the other side of a binlog transfer
+ * to let it send only the blocks that changed
+ */
+public final class BinlogChecksums {
+
+	private final int blockSize;
+	private final long size;
+	private final int[] checksums;
+
+	public BinlogChecksums(int blockSize, long size, int[] checksums) {
+		this.blockSize = blockSize;
+		this.size = size;
+		this.checksums = checksums;
+	}
+
+	public int blockSize() {
+		return blockSize;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int[] checksums() {
+		return checksums;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		BinlogChecksums that = (BinlogChecksums) o;
+		return blockSize == that.blockSize && size == that.size && Arrays.equals(checksums, that.checksums);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Objects.hash(blockSize, size);
+		result = 31 * result + Arrays.hashCode(checksums);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", BinlogChecksums.class.getSimpleName() + "[", "]")
+				.add("blockSize=" + blockSize)
+				.add("size=" + size)
+				.add("blocks=" + checksums.length)
+				.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import it.tdlight.utils.BufferUtils;
+
+public class BinlogChecksumsCodec implements MessageCodec<BinlogChecksums, BinlogChecksums> {
+
+	private final String codecName;
+
+	public BinlogChecksumsCodec() {
+		super();
+		this.codecName = "BinlogChecksumsCodec";
+	}
+
+	@Override
+	public void encodeToWire(Buffer buffer, BinlogChecksums t) {
+		BufferUtils.encode(buffer, os -> {
+			os.writeInt(t.blockSize());
+			os.writeLong(t.size());
+			var checksums = t.checksums();
+			os.writeInt(checksums.length);
+			for (int checksum : checksums) {
+				os.writeInt(checksum);
+			}
+		});
+	}
+
+	@Override
+	public BinlogChecksums decodeFromWire(int pos, Buffer buffer) {
+		return BufferUtils.decode(pos, buffer, is -> {
+			int blockSize = is.readInt();
+			long size = is.readLong();
+			var checksums = new int[is.readInt()];
+			for (int i = 0; i < checksums.length; i++) {
+				checksums[i] = is.readInt();
+			}
+			return new BinlogChecksums(blockSize, size, checksums);
+		});
+	}
+
+	@Override
+	public BinlogChecksums transform(BinlogChecksums t) {
+		// If a message is sent *locally* across the event bus.
+		// This sends message just as is
+		return t;
+	}
+
+	@Override
+	public String name() {
+		return codecName;
+	}
+
+	@Override
+	public byte systemCodecID() {
+		// Always -1
+		return -1;
+	}
+}
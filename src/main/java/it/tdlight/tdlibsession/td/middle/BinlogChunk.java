@@ -0,0 +1,110 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import io.vertx.reactivex.core.buffer.Buffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Part of a binlog transfer.
+ * <p>
+ * Every chunk contains a run of changed blocks, the last chunk contains only the size and the SHA-256 of the binlog.
+ * The next chunk is sent as a reply of the acknowledgement of the previous one.
+ * The data of a chunk can be compressed, see {@link it.tdlight.utils.BinlogCompression}.
+ */
+public final class BinlogChunk {
+
+	private static final byte[] NO_HASH = new byte[0];
+
+	private final long offset;
+	private final Buffer data;
+	private final boolean compressed;
+	private final boolean last;
+	private final long size;
+	private final byte[] hash;
+
+	private BinlogChunk(long offset, Buffer data, boolean compressed, boolean last, long size, byte[] hash) {
+		this.offset = offset;
+		this.data = data;
+		this.compressed = compressed;
+		this.last = last;
+		this.size = size;
+		this.hash = hash;
+	}
+
+	public static BinlogChunk of(long offset, Buffer data) {
+		return new BinlogChunk(offset, data, false, false, 0, NO_HASH);
+	}
+
+	public static BinlogChunk compressed(long offset, Buffer compressedData) {
+		return new BinlogChunk(offset, compressedData, true, false, 0, NO_HASH);
+	}
+
+	public static BinlogChunk last(long size, byte[] hash) {
+		return new BinlogChunk(0, Buffer.buffer(0), false, true, size, hash);
+	}
+
+	public long offset() {
+		return offset;
+	}
+
+	public Buffer data() {
+		return data;
+	}
+
+	/**
+	 * @return true if the data must be decompressed before writing it at {@link #offset()}
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public boolean isLast() {
+		return last;
+	}
+
+	/**
+	 * @return size of the complete binlog, set only in the last chunk
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return SHA-256 of the complete binlog, set only in the last chunk
+	 */
+	public byte[] hash() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		BinlogChunk that = (BinlogChunk) o;
+		return offset == that.offset && compressed == that.compressed && last == that.last && size == that.size && Objects.equals(data, that.data)
+				&& Arrays.equals(hash, that.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Objects.hash(offset, data, compressed, last, size);
+		result = 31 * result + Arrays.hashCode(hash);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", BinlogChunk.class.getSimpleName() + "[", "]")
+				.add("offset=" + offset)
+				.add("data=" + data.length())
+				.add("compressed=" + compressed)
+				.add("last=" + last)
+				.add("size=" + size)
+				.toString();
+	}
+}
@@ -0,0 +1,65 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import it.tdlight.utils.BufferUtils;
+
+public class BinlogChunkCodec implements MessageCodec<BinlogChunk, BinlogChunk> {
+
+	private final String codecName;
+
+	public BinlogChunkCodec() {
+		super();
+		this.codecName = "BinlogChunkCodec";
+	}
+
+	@Override
+	public void encodeToWire(Buffer buffer, BinlogChunk t) {
+		BufferUtils.encode(buffer, os -> {
+			os.writeBoolean(t.isLast());
+			if (t.isLast()) {
+				os.writeLong(t.size());
+				os.writeInt(t.hash().length);
+				os.write(t.hash());
+			} else {
+				os.writeLong(t.offset());
+				os.writeBoolean(t.isCompressed());
+				BufferUtils.writeBuf(os, t.data());
+			}
+		});
+	}
+
+	@Override
+	public BinlogChunk decodeFromWire(int pos, Buffer buffer) {
+		return BufferUtils.decode(pos, buffer, is -> {
+			if (is.readBoolean()) {
+				return BinlogChunk.last(is.readLong(), is.readNBytes(is.readInt()));
+			} else {
+				long offset = is.readLong();
+				if (is.readBoolean()) {
+					return BinlogChunk.compressed(offset, BufferUtils.rxReadBuf(is));
+				} else {
+					return BinlogChunk.of(offset, BufferUtils.rxReadBuf(is));
+				}
+			}
+		});
+	}
+
+	@Override
+	public BinlogChunk transform(BinlogChunk t) {
+		// If a message is sent *locally* across the event bus.
+		// This sends message just as is
+		return t;
+	}
+
+	@Override
+	public String name() {
+		return codecName;
+	}
+
+	@Override
+	public byte systemCodecID() {
+		// Always -1
+		return -1;
+	}
+}
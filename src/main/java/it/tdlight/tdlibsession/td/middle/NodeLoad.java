@@ -0,0 +1,228 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import io.vertx.core.json.JsonObject;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Load of a node, published periodically by every node in the cluster shared data
+ */
+public final class NodeLoad {
+
+	/**
+	 * Name of the cluster-wide map that contains the load of every node, by node id
+	 */
+	public static final String NODES_LOAD_MAP = "tdlib.nodes-load";
+
+	private final String nodeId;
+	private final int activeDeployments;
+	private final long heapUsed;
+	private final long heapMax;
+	private final long nativeMemoryUsed;
+	private final double cpuLoad;
+	private final double updatesPerSecond;
+	private final boolean draining;
+	private final boolean overloaded;
+	private final int startQueueDepth;
+	private final int runningStarts;
+	private final long averageTimeToReadyMillis;
+	private final long timestamp;
+
+	public NodeLoad(String nodeId,
+			int activeDeployments,
+			long heapUsed,
+			long heapMax,
+			long nativeMemoryUsed,
+			double cpuLoad,
+			double updatesPerSecond,
+			boolean draining,
+			boolean overloaded,
+			int startQueueDepth,
+			int runningStarts,
+			long averageTimeToReadyMillis,
+			long timestamp) {
+		this.nodeId = nodeId;
+		this.activeDeployments = activeDeployments;
+		this.heapUsed = heapUsed;
+		this.heapMax = heapMax;
+		this.nativeMemoryUsed = nativeMemoryUsed;
+		this.cpuLoad = cpuLoad;
+		this.updatesPerSecond = updatesPerSecond;
+		this.draining = draining;
+		this.overloaded = overloaded;
+		this.startQueueDepth = startQueueDepth;
+		this.runningStarts = runningStarts;
+		this.averageTimeToReadyMillis = averageTimeToReadyMillis;
+		this.timestamp = timestamp;
+	}
+
+	public static NodeLoad fromJson(JsonObject json) {
+		return new NodeLoad(json.getString("nodeId"),
+				json.getInteger("activeDeployments", 0),
+				json.getLong("heapUsed", 0L),
+				json.getLong("heapMax", 0L),
+				json.getLong("nativeMemoryUsed", 0L),
+				json.getDouble("cpuLoad", 0d),
+				json.getDouble("updatesPerSecond", 0d),
+				json.getBoolean("draining", false),
+				json.getBoolean("overloaded", false),
+				json.getInteger("startQueueDepth", 0),
+				json.getInteger("runningStarts", 0),
+				json.getLong("averageTimeToReadyMillis", 0L),
+				json.getLong("timestamp", 0L)
+		);
+	}
+
+	public JsonObject toJson() {
+		return new JsonObject()
+				.put("nodeId", nodeId)
+				.put("activeDeployments", activeDeployments)
+				.put("heapUsed", heapUsed)
+				.put("heapMax", heapMax)
+				.put("nativeMemoryUsed", nativeMemoryUsed)
+				.put("cpuLoad", cpuLoad)
+				.put("updatesPerSecond", updatesPerSecond)
+				.put("draining", draining)
+				.put("overloaded", overloaded)
+				.put("startQueueDepth", startQueueDepth)
+				.put("runningStarts", runningStarts)
+				.put("averageTimeToReadyMillis", averageTimeToReadyMillis)
+				.put("timestamp", timestamp);
+	}
+
+	public String nodeId() {
+		return nodeId;
+	}
+
+	public int activeDeployments() {
+		return activeDeployments;
+	}
+
+	public long heapUsed() {
+		return heapUsed;
+	}
+
+	public long heapMax() {
+		return heapMax;
+	}
+
+	/**
+	 * @return memory used outside of the heap: non-heap memory of the JVM and direct buffers
+	 */
+	public long nativeMemoryUsed() {
+		return nativeMemoryUsed;
+	}
+
+	/**
+	 * @return recent CPU usage of the node process, between 0 and 1
+	 */
+	public double cpuLoad() {
+		return cpuLoad;
+	}
+
+	public double updatesPerSecond() {
+		return updatesPerSecond;
+	}
+
+	/**
+	 * @return true if the node doesn't accept new bots
+	 */
+	public boolean draining() {
+		return draining;
+	}
+
+	/**
+	 * @return true if the node reached one of its resource limits, it rejects new bots until it recovers
+	 */
+	public boolean overloaded() {
+		return overloaded;
+	}
+
+	/**
+	 * @return number of bot start requests waiting to be run
+	 */
+	public int startQueueDepth() {
+		return startQueueDepth;
+	}
+
+	/**
+	 * @return number of bots being started
+	 */
+	public int runningStarts() {
+		return runningStarts;
+	}
+
+	/**
+	 * @return average time between the arrival of a start request and the bot being ready, in milliseconds
+	 */
+	public long averageTimeToReadyMillis() {
+		return averageTimeToReadyMillis;
+	}
+
+	/**
+	 * @return time when the load has been measured, in milliseconds
+	 */
+	public long timestamp() {
+		return timestamp;
+	}
+
+	public double heapUsage() {
+		return heapMax <= 0 ? 0 : (double) heapUsed / heapMax;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		NodeLoad nodeLoad = (NodeLoad) o;
+		return activeDeployments == nodeLoad.activeDeployments && heapUsed == nodeLoad.heapUsed
+				&& heapMax == nodeLoad.heapMax && nativeMemoryUsed == nodeLoad.nativeMemoryUsed
+				&& Double.compare(nodeLoad.cpuLoad, cpuLoad) == 0
+				&& Double.compare(nodeLoad.updatesPerSecond, updatesPerSecond) == 0 && draining == nodeLoad.draining
+				&& overloaded == nodeLoad.overloaded && startQueueDepth == nodeLoad.startQueueDepth
+				&& runningStarts == nodeLoad.runningStarts
+				&& averageTimeToReadyMillis == nodeLoad.averageTimeToReadyMillis
+				&& timestamp == nodeLoad.timestamp && Objects.equals(nodeId, nodeLoad.nodeId);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(nodeId,
+				activeDeployments,
+				heapUsed,
+				heapMax,
+				nativeMemoryUsed,
+				cpuLoad,
+				updatesPerSecond,
+				draining,
+				overloaded,
+				startQueueDepth,
+				runningStarts,
+				averageTimeToReadyMillis,
+				timestamp
+		);
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", NodeLoad.class.getSimpleName() + "[", "]")
+				.add("nodeId='" + nodeId + "'")
+				.add("activeDeployments=" + activeDeployments)
+				.add("heapUsed=" + heapUsed)
+				.add("heapMax=" + heapMax)
+				.add("nativeMemoryUsed=" + nativeMemoryUsed)
+				.add("cpuLoad=" + cpuLoad)
+				.add("updatesPerSecond=" + updatesPerSecond)
+				.add("draining=" + draining)
+				.add("overloaded=" + overloaded)
+				.add("startQueueDepth=" + startQueueDepth)
+				.add("runningStarts=" + runningStarts)
+				.add("averageTimeToReadyMillis=" + averageTimeToReadyMillis)
+				.add("timestamp=" + timestamp)
+				.toString();
+	}
+}
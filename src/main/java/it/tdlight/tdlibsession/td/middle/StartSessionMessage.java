@@ -1,7 +1,7 @@
 package it.tdlight.tdlibsession.td.middle;
 
 import io.vertx.core.json.JsonObject;
-import io.vertx.reactivex.core.buffer.Buffer;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.StringJoiner;
 
@@ -9,14 +9,21 @@ public final class StartSessionMessage {
 
 	private final long id;
 	private final String alias;
-	private final Buffer binlog;
+	private final long binlogSize;
+	private final byte[] binlogHash;
 	private final long binlogDate;
 	private final JsonObject implementationDetails;
 
-	public StartSessionMessage(long id, String alias, Buffer binlog, long binlogDate, JsonObject implementationDetails) {
+	public StartSessionMessage(long id,
+			String alias,
+			long binlogSize,
+			byte[] binlogHash,
+			long binlogDate,
+			JsonObject implementationDetails) {
 		this.id = id;
 		this.alias = alias;
-		this.binlog = binlog;
+		this.binlogSize = binlogSize;
+		this.binlogHash = binlogHash;
 		this.binlogDate = binlogDate;
 		this.implementationDetails = implementationDetails;
 	}
@@ -29,8 +36,15 @@ public final class StartSessionMessage {
 		return alias;
 	}
 
-	public Buffer binlog() {
-		return binlog;
+	public long binlogSize() {
+		return binlogSize;
+	}
+
+	/**
+	 * @return SHA-256 of the binlog
+	 */
+	public byte[] binlogHash() {
+		return binlogHash;
 	}
 
 	public long binlogDate() {
@@ -50,14 +64,16 @@ public final class StartSessionMessage {
 			return false;
 		}
 		StartSessionMessage that = (StartSessionMessage) o;
-		return id == that.id && binlogDate == that.binlogDate && Objects.equals(alias, that.alias) && Objects.equals(binlog,
-				that.binlog
-		) && Objects.equals(implementationDetails, that.implementationDetails);
+		return id == that.id && binlogSize == that.binlogSize && binlogDate == that.binlogDate && Objects.equals(alias,
+				that.alias
+		) && Arrays.equals(binlogHash, that.binlogHash) && Objects.equals(implementationDetails, that.implementationDetails);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(id, alias, binlog, binlogDate, implementationDetails);
+		int result = Objects.hash(id, alias, binlogSize, binlogDate, implementationDetails);
+		result = 31 * result + Arrays.hashCode(binlogHash);
+		return result;
 	}
 
 	@Override
@@ -65,7 +81,7 @@ public final class StartSessionMessage {
 		return new StringJoiner(", ", StartSessionMessage.class.getSimpleName() + "[", "]")
 				.add("id=" + id)
 				.add("alias='" + alias + "'")
-				.add("binlog=" + binlog)
+				.add("binlogSize=" + binlogSize)
 				.add("binlogDate=" + binlogDate)
 				.add("implementationDetails=" + implementationDetails)
 				.toString();
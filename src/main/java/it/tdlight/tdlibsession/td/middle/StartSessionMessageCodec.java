@@ -20,7 +20,9 @@ public class StartSessionMessageCodec implements MessageCodec<StartSessionMessag
 		BufferUtils.encode(buffer, os -> {
 			os.writeLong(t.id());
 			UTFUtils.writeUTF(os, t.alias());
-			BufferUtils.writeBuf(os, t.binlog());
+			os.writeLong(t.binlogSize());
+			os.writeInt(t.binlogHash().length);
+			os.write(t.binlogHash());
 			os.writeLong(t.binlogDate());
 			UTFUtils.writeUTF(os, t.implementationDetails().toString());
 		});
@@ -30,7 +32,8 @@ public class StartSessionMessageCodec implements MessageCodec<StartSessionMessag
 	public StartSessionMessage decodeFromWire(int pos, Buffer buffer) {
 		return BufferUtils.decode(pos, buffer, is -> new StartSessionMessage(is.readLong(),
 				UTFUtils.readUTF(is),
-				BufferUtils.rxReadBuf(is),
+				is.readLong(),
+				is.readNBytes(is.readInt()),
 				is.readLong(),
 				new JsonObject(UTFUtils.readUTF(is))
 		));
@@ -1,5 +1,7 @@
 package it.tdlight.tdlibsession.td.middle;
 
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
 import com.hazelcast.config.Config;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MultiMapConfig;
@@ -24,11 +26,14 @@ import it.tdlight.utils.MonoUtils;
 import java.nio.channels.AlreadyBoundException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -40,6 +45,8 @@ public class TdClusterManager {
 	private final ClusterManager mgr;
 	private final VertxOptions vertxOptions;
 	private final Vertx vertx;
+	private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+	private volatile boolean closed;
 
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public TdClusterManager(ClusterManager mgr, VertxOptions vertxOptions, Vertx vertx) {
@@ -55,7 +62,8 @@ public class TdClusterManager {
 					.registerDefaultCodec(ExecuteObject.class, new TdExecuteObjectMessageCodec())
 					.registerDefaultCodec(TdResultMessage.class, new TdResultMessageCodec())
 					.registerDefaultCodec(StartSessionMessage.class, new StartSessionMessageCodec())
-					.registerDefaultCodec(EndSessionMessage.class, new EndSessionMessageCodec());
+					.registerDefaultCodec(BinlogChecksums.class, new BinlogChecksumsCodec())
+					.registerDefaultCodec(BinlogChunk.class, new BinlogChunkCodec());
 			var constructors = ConstructorDetector.getTDConstructorsUnsafe();
 			if (constructors != null) {
 				for (Class<?> value : constructors.values()) {
@@ -276,4 +284,74 @@ public class TdClusterManager {
 	public SharedData getSharedData() {
 		return vertx.sharedData();
 	}
+
+	/**
+	 * @return the id of this node in the cluster, "local" if the cluster is disabled
+	 */
+	public String getNodeId() {
+		return mgr != null ? mgr.getNodeId() : "local";
+	}
+
+	/**
+	 * @return the ids of the nodes of the cluster
+	 */
+	public List<String> getNodes() {
+		return mgr != null ? mgr.getNodes() : List.of(getNodeId());
+	}
+
+	/**
+	 * Listen for the nodes that leave the cluster, as soon as Hazelcast notices it.
+	 * The listener is called on a Hazelcast thread, so it must not block.
+	 *
+	 * @param listener receives the id of the node that left the cluster
+	 * @return a Runnable that removes the listener
+	 */
+	public Runnable addNodeLeftListener(Consumer<String> listener) {
+		if (!(mgr instanceof HazelcastClusterManager)) {
+			return () -> {};
+		}
+		var hazelcastCluster = ((HazelcastClusterManager) mgr).getHazelcastInstance().getCluster();
+		var registrationId = hazelcastCluster.addMembershipListener(new MembershipListener() {
+			@Override
+			public void memberAdded(MembershipEvent membershipEvent) {
+
+			}
+
+			@Override
+			public void memberRemoved(MembershipEvent membershipEvent) {
+				listener.accept(membershipEvent.getMember().getUuid().toString());
+			}
+		});
+		return () -> hazelcastCluster.removeMembershipListener(registrationId);
+	}
+
+	/**
+	 * Listen for the closure of this cluster manager, to release the resources bound to it.
+	 * If it's already closed, the listener is called immediately.
+	 *
+	 * @return a Runnable that removes the listener
+	 */
+	public Runnable addCloseListener(Runnable listener) {
+		closeListeners.add(listener);
+		if (closed && closeListeners.remove(listener)) {
+			listener.run();
+		}
+		return () -> closeListeners.remove(listener);
+	}
+
+	/**
+	 * Call the close listeners, then close Vert.x
+	 */
+	public Mono<Void> close() {
+		return Mono
+				.fromRunnable(() -> {
+					closed = true;
+					for (Runnable listener : closeListeners) {
+						if (closeListeners.remove(listener)) {
+							listener.run();
+						}
+					}
+				})
+				.then(MonoUtils.fromFuture(() -> vertx.getDelegate().close()));
+	}
 }
@@ -1,31 +1,40 @@
 package it.tdlight.tdlibsession.td.middle.client;
 
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonObject;
-import io.vertx.reactivex.core.Vertx;
-import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import it.tdlight.jni.TdApi;
 import it.tdlight.jni.TdApi.AuthorizationStateClosed;
 import it.tdlight.jni.TdApi.Function;
-import it.tdlight.jni.TdApi.Object;
 import it.tdlight.jni.TdApi.UpdateAuthorizationState;
+import it.tdlight.tdlibsession.remoteclient.BinlogManager;
+import it.tdlight.tdlibsession.remoteclient.NodeResourceGovernor;
 import it.tdlight.tdlibsession.td.ResponseError;
 import it.tdlight.tdlibsession.td.TdError;
 import it.tdlight.tdlibsession.td.TdResult;
 import it.tdlight.tdlibsession.td.middle.TdResultMessage;
 import it.tdlight.tdlibsession.td.middle.AsyncTdMiddle;
-import it.tdlight.tdlibsession.td.middle.EndSessionMessage;
+import it.tdlight.tdlibsession.td.middle.BinlogChecksums;
+import it.tdlight.tdlibsession.td.middle.BinlogChunk;
 import it.tdlight.tdlibsession.td.middle.ExecuteObject;
 import it.tdlight.tdlibsession.td.middle.StartSessionMessage;
 import it.tdlight.tdlibsession.td.middle.TdClusterManager;
 import it.tdlight.tdlibsession.td.middle.TdResultList;
-import it.tdlight.utils.BinlogAsyncFile;
+import it.tdlight.utils.BinlogDeltaUtils;
 import it.tdlight.utils.BinlogUtils;
+import it.tdlight.utils.EventBusUtils;
 import it.tdlight.utils.MonoUtils;
 import java.net.ConnectException;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import org.jetbrains.annotations.Nullable;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
 import reactor.core.publisher.Flux;
@@ -34,6 +43,7 @@ import reactor.core.publisher.Sinks;
 import reactor.core.publisher.Sinks.Empty;
 import reactor.core.publisher.Sinks.One;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 
@@ -41,12 +51,31 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 
 	public static final byte[] EMPTY = new byte[0];
 
+	private static final Duration START_TIMEOUT = Duration.ofMinutes(5);
+
+	/**
+	 * Requests sent while the bot is being migrated to another node find no handlers, for a short time.
+	 * The requests of {@link #execute(Function, boolean)} and {@link #executeAsync(Function)} are retried
+	 * with the same policy, see {@link #getMigrationRetryDelay(Throwable, long)}
+	 */
+	private static final int MIGRATION_MAX_RETRIES = 5;
+	private static final Duration MIGRATION_MIN_BACKOFF = Duration.ofMillis(500);
+	private static final Retry MIGRATION_RETRY = Retry.from(signals -> signals.concatMap(signal -> {
+		var delay = getMigrationRetryDelay(signal.failure(), signal.totalRetries());
+		return delay == null ? Mono.error(signal.failure()) : Mono.delay(delay);
+	}));
+	/**
+	 * An overloaded node rejects the start request and publishes its load immediately,
+	 * so the next attempt chooses another node
+	 */
+	private static final Retry OVERLOADED_NODE_RETRY = Retry
+			.backoff(3, Duration.ofSeconds(1))
+			.filter(AsyncTdMiddleEventBusClient::isNodeOverloaded)
+			.onRetryExhaustedThrow((spec, signal) -> signal.failure());
+
 	private final TdClusterManager cluster;
 	private final DeliveryOptions deliveryOptions;
 	private final DeliveryOptions deliveryOptionsWithTimeout;
-	private final DeliveryOptions pingDeliveryOptions;
-
-	private final One<BinlogAsyncFile> binlog = Sinks.one();
 
 	private final One<MessageConsumer<TdResultList>> updates = Sinks.one();
 	// This will only result in a successful completion, never completes in other ways
@@ -54,13 +83,14 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 	// This will only result in a crash, never completes in other ways
 	private final Empty<Void> crash = Sinks.one();
 	// This will only result in a successful completion, never completes in other ways
-	private final Empty<Void> pingFail = Sinks.one();
+	private final Empty<Void> heartbeatFail = Sinks.one();
 	// This will only result in a successful completion, never completes in other ways.
 	// It will be called when UpdateAuthorizationStateClosing is intercepted.
-	// If it's completed stop checking if the ping works or not
+	// If it's completed stop checking if the heartbeats are received or not
 	private final Empty<Void> authStateClosing = Sinks.one();
 
 	private long botId;
+	private BinlogManager binlogManager;
 	private String botAddress;
 	private String botAlias;
 	private boolean local;
@@ -70,7 +100,6 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 		this.cluster = clusterManager;
 		this.deliveryOptions = cluster.newDeliveryOpts().setLocalOnly(local);
 		this.deliveryOptionsWithTimeout = cluster.newDeliveryOpts().setLocalOnly(local).setSendTimeout(30000);
-		this.pingDeliveryOptions = cluster.newDeliveryOpts().setLocalOnly(local).setSendTimeout(60000);
 	}
 
 	private Mono<AsyncTdMiddleEventBusClient> initializeEb() {
@@ -89,107 +118,181 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 			boolean local,
 			JsonObject implementationDetails,
 			Path binlogsArchiveDirectory) {
+		var binlogManager = BinlogManager.of(clusterManager.getVertx(), binlogsArchiveDirectory);
 		return new AsyncTdMiddleEventBusClient(clusterManager)
 				.initializeEb()
-				.flatMap(instance -> retrieveBinlog(clusterManager.getVertx(), binlogsArchiveDirectory, botId)
-						.flatMap(binlog -> binlog
-								.getLastModifiedTime()
-								.filter(modTime -> modTime == 0)
-								.doOnNext(v -> LoggerFactory
-										.getLogger(AsyncTdMiddleEventBusClient.class)
-										.error("Can't retrieve binlog of bot " + botId + " " + botAlias + ". Creating a new one..."))
-								.thenReturn(binlog)).<AsyncTdMiddle>flatMap(binlog -> instance
-								.start(botId, botAlias, local, implementationDetails, binlog)
-								.thenReturn(instance)
-						)
-						.single()
+				.flatMap(instance -> binlogManager
+						.getInfo(botId)
+						.filter(info -> info.lastModifiedTime() == 0)
+						.doOnNext(v -> LoggerFactory
+								.getLogger(AsyncTdMiddleEventBusClient.class)
+								.error("Can't retrieve binlog of bot " + botId + " " + botAlias + ". Creating a new one..."))
+						.then(instance.start(botId, botAlias, local, implementationDetails, binlogManager))
+						.<AsyncTdMiddle>thenReturn(instance)
 				)
 				.single();
 	}
 
-	/**
-	 *
-	 * @return optional result
-	 */
-	public static Mono<BinlogAsyncFile> retrieveBinlog(Vertx vertx, Path binlogsArchiveDirectory, long botId) {
-		return BinlogUtils.retrieveBinlog(vertx.fileSystem(), binlogsArchiveDirectory.resolve(botId + ".binlog"));
-	}
-
-	private Mono<Void> saveBinlog(Buffer data) {
-		return this.binlog.asMono().flatMap(binlog -> BinlogUtils.saveBinlog(binlog, data));
-	}
-
 	public Mono<Void> start(long botId,
 			String botAlias,
 			boolean local,
 			JsonObject implementationDetails,
-			BinlogAsyncFile binlog) {
+			BinlogManager binlogManager) {
 		this.botId = botId;
 		this.botAlias = botAlias;
 		this.botAddress = "bots.bot." + this.botId;
 		this.local = local;
+		this.binlogManager = binlogManager;
 		this.logger = LoggerFactory.getLogger(this.botId + " " + botAlias);
-		return MonoUtils
-				.emitValue(this.binlog, binlog)
-				.then(binlog.getLastModifiedTime())
-				.zipWith(binlog.readFully().map(Buffer::getDelegate))
+		var binlogPath = binlogManager.getBinlogPath(botId);
+		return binlogManager
+				.getInfo(botId)
 				.single()
-				.flatMap(tuple -> {
-					var binlogLastModifiedTime = tuple.getT1();
-					var binlogData = tuple.getT2();
-
+				.flatMap(binlogInfo -> {
 					var msg = new StartSessionMessage(this.botId,
 							this.botAlias,
-							Buffer.newInstance(binlogData),
-							binlogLastModifiedTime,
+							binlogInfo.size(),
+							binlogInfo.hash(),
+							binlogInfo.lastModifiedTime(),
 							implementationDetails
 					);
 					return setupUpdatesListener()
+							.then(setupBinlogCheckpoints())
 							.then(Mono.defer(() -> {
 								if (local) {
 									return Mono.empty();
 								}
-								logger.trace("Requesting bots.start-bot");
-								return cluster.getEventBus()
-										.<byte[]>rxRequest("bots.start-bot", msg).as(MonoUtils::toMono)
+								return NodePlacementPolicy
+										.of(cluster)
+										.chooseStartBotAddress()
+										.flatMap(address -> {
+											logger.trace("Requesting {}", address);
+											// The node may queue the start request behind the starts of other bots
+											var startDeliveryOptions = cluster.newDeliveryOpts().setSendTimeout(START_TIMEOUT.toMillis());
+											return EventBusUtils
+													.<Object>request(cluster.getEventBus(), address, msg, startDeliveryOptions)
+													.onErrorResume(ex -> isNoHandlers(ex)
+															&& !address.equals(NodePlacementPolicy.ANY_NODE_START_BOT_ADDRESS), ex -> {
+														// The chosen node left the cluster after publishing its load
+														logger.debug("The chosen node is not available anymore, starting the bot on any node");
+														return EventBusUtils.<Object>request(cluster.getEventBus(),
+																NodePlacementPolicy.ANY_NODE_START_BOT_ADDRESS,
+																msg,
+																startDeliveryOptions
+														);
+													});
+										})
+										.retryWhen(OVERLOADED_NODE_RETRY)
+										.<Void>flatMap(reply -> {
+											if (!(reply.body() instanceof BinlogChecksums)) {
+												logger.info("The node already has this binlog, it has not been transferred");
+												return Mono.empty();
+											}
+											// The node replied with the checksums of its binlog, send only the changed blocks
+											var checksums = (BinlogChecksums) reply.body();
+											return BinlogUtils
+													.sendChunks(reply, binlogPath, checksums, cluster.newDeliveryOpts())
+													.then();
+										})
 										.doOnSuccess(s -> logger.trace("bots.start-bot returned successfully"))
 										.subscribeOn(Schedulers.boundedElastic());
 							}))
-							.then(setupPing());
+							.then(setupHeartbeat());
 				});
 	}
 
-	private Mono<Void> setupPing() {
+	/**
+	 * @param retries number of retries already done
+	 * @return the delay before retrying a failed request, null if it must not be retried
+	 */
+	@Nullable
+	private static Duration getMigrationRetryDelay(Throwable ex, long retries) {
+		if (!isNoHandlers(ex) || retries >= MIGRATION_MAX_RETRIES) {
+			return null;
+		}
+		return MIGRATION_MIN_BACKOFF.multipliedBy(1L << retries);
+	}
+
+	private static boolean isNoHandlers(Throwable ex) {
+		return ex instanceof ReplyException && ((ReplyException) ex).failureType() == ReplyFailure.NO_HANDLERS;
+	}
+
+	private static boolean isNodeOverloaded(Throwable ex) {
+		return ex instanceof ReplyException && ((ReplyException) ex).failureType() == ReplyFailure.RECIPIENT_FAILURE
+				&& ((ReplyException) ex).failureCode() == NodeResourceGovernor.NODE_OVERLOADED_FAILURE_CODE;
+	}
+
+	/**
+	 * Receive the binlog from the server into the archive, then update the archive index
+	 *
+	 * @param firstChunk the reply containing the first chunk
+	 */
+	private Mono<Void> receiveBinlog(Mono<io.vertx.core.eventbus.Message<BinlogChunk>> firstChunk) {
+		var binlogPath = binlogManager.getBinlogPath(botId);
+		return BinlogUtils
+				.receiveChunks(firstChunk, binlogPath, deliveryOptionsWithTimeout)
+				.flatMap(lastChunkMessage -> binlogManager
+						.update(botId, lastChunkMessage.body().hash())
+						.doOnSuccess(s -> lastChunkMessage.reply(EMPTY)));
+	}
+
+	/**
+	 * Save the binlog checkpoints pushed by the server in the binlog archive.
+	 * The final binlog is pushed as a checkpoint, before the updates batch that closes the session
+	 */
+	private Mono<Void> setupBinlogCheckpoints() {
+		return Mono.defer(() -> {
+			logger.trace("Setting up binlog checkpoints listener");
+			MessageConsumer<byte[]> checkpointConsumer = cluster.getEventBus().consumer(botAddress + ".binlog-checkpoint");
+			Flux
+					.<io.vertx.reactivex.core.eventbus.Message<byte[]>>create(sink -> {
+						checkpointConsumer.handler(sink::next);
+						checkpointConsumer.endHandler(h -> sink.complete());
+					})
+					.concatMap(msg -> MonoUtils
+							.fromBlockingSingle(() -> BinlogDeltaUtils.computeChecksums(binlogManager.getBinlogPath(botId)))
+							.flatMap(checksums -> receiveBinlog(EventBusUtils.replyAndRequest(msg.getDelegate(),
+									checksums,
+									deliveryOptionsWithTimeout
+							)))
+							.doOnSuccess(s -> logger.debug("Saved a binlog checkpoint from server"))
+							.onErrorResume(ex -> {
+								logger.warn("Failed to save a binlog checkpoint from server", ex);
+								return Mono.empty();
+							})
+					)
+					.takeUntilOther(updatesStreamEnd.asMono())
+					.doFinally(signalType -> EventBusUtils.unregister(checkpointConsumer).subscribe(v -> {}, ex -> {}))
+					.subscribeOn(Schedulers.boundedElastic())
+					.subscribe(v -> {}, ex -> logger.error("Binlog checkpoints listener crashed", ex));
+			return EventBusUtils.completion(checkpointConsumer);
+		});
+	}
+
+	/**
+	 * Watch the liveness of the bot, using the heartbeats of the node that hosts it
+	 */
+	private Mono<Void> setupHeartbeat() {
 		return Mono.<Void>fromCallable(() -> {
-			logger.trace("Setting up ping");
-			// Disable ping on local servers
+			logger.trace("Setting up heartbeat");
+			// Disable heartbeat on local servers
 			if (!local) {
-				Mono
-						.defer(() -> {
-							logger.trace("Requesting ping...");
-							return cluster.getEventBus()
-									.<byte[]>rxRequest(botAddress + ".ping", EMPTY, pingDeliveryOptions)
-									.as(MonoUtils::toMono);
-						})
-						.flatMap(msg -> Mono.fromCallable(msg::body).subscribeOn(Schedulers.boundedElastic()))
-						.repeatWhen(l -> l.delayElements(Duration.ofSeconds(10)).takeWhile(x -> true))
+				BotLivenessMonitor
+						.of(cluster)
+						.watch(botId)
 						.takeUntilOther(Mono.firstWithSignal(this.updatesStreamEnd.asMono().doOnTerminate(() -> {
-							logger.trace("About to kill pinger because updates stream ended");
+							logger.trace("About to stop watching the heartbeat because updates stream ended");
 						}), this.crash.asMono().onErrorResume(ex -> Mono.empty()).doOnTerminate(() -> {
-							logger.trace("About to kill pinger because it has seen a crash signal");
+							logger.trace("About to stop watching the heartbeat because it has seen a crash signal");
 						})))
-						.doOnNext(s -> logger.trace("PING"))
-						.then()
 						.onErrorResume(ex -> {
-							logger.warn("Ping failed: {}", ex.getMessage());
-							return Mono.empty();
+							logger.warn("Heartbeat failed: {}", ex.getMessage());
+							return MonoUtils.emitEmpty(this.heartbeatFail);
 						})
-						.doOnNext(s -> logger.debug("END PING"))
-						.then(MonoUtils.emitEmpty(this.pingFail))
 						.subscribeOn(Schedulers.parallel())
 						.subscribe();
 			}
-			logger.trace("Ping setup success");
+			logger.trace("Heartbeat setup success");
 			return null;
 		}).subscribeOn(Schedulers.boundedElastic());
 	}
@@ -216,9 +319,13 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 				.then();
 	}
 
-	@SuppressWarnings("Convert2MethodRef")
 	@Override
 	public Flux<TdApi.Object> receive() {
+		return receiveBatches().flatMapIterable(updates -> updates);
+	}
+
+	@Override
+	public Flux<List<TdApi.Object>> receiveBatches() {
 		// Here the updates will be received
 
 		return Mono
@@ -230,10 +337,11 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 				.flatMapMany(updatesMessageConsumer -> MonoUtils.fromMessageConsumer(Mono
 						.empty()
 						.doOnSuccess(s -> logger.trace("Sending ready-to-receive"))
-						.then(cluster.getEventBus().<byte[]>rxRequest(botAddress + ".ready-to-receive",
+						.then(EventBusUtils.<byte[]>request(cluster.getEventBus(),
+								botAddress + ".ready-to-receive",
 								EMPTY,
 								deliveryOptionsWithTimeout
-						).as(MonoUtils::toMono))
+						))
 						.doOnSuccess(s -> logger.trace("Sent ready-to-receive, received reply"))
 						.doOnSuccess(s -> logger.trace("About to read updates flux"))
 						.then(), updatesMessageConsumer)
@@ -245,9 +353,9 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 											logger.error("TDLib crashed", ex);
 											return Mono.empty();
 										}),
-								pingFail.asMono()
+								heartbeatFail.asMono()
 										.then(Mono.fromCallable(() -> {
-											var ex = new ConnectException("Server did not respond to ping");
+											var ex = new ConnectException("The node of the bot stopped sending heartbeats");
 											ex.setStackTrace(new StackTraceElement[0]);
 											throw ex;
 										}).onErrorResume(ex -> MonoUtils.emitError(crash, ex)))
@@ -258,21 +366,8 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 						)
 						.doOnTerminate(() -> logger.trace("TakeUntilOther has been trigghered, the receive() flux will end"))
 				)
-				.takeUntil(a -> a.succeeded() && a.value().stream().anyMatch(item -> {
-					if (item.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR) {
-						return ((UpdateAuthorizationState) item).authorizationState.getConstructor()
-								== AuthorizationStateClosed.CONSTRUCTOR;
-					}
-					return false;
-				}))
-				.flatMapSequential(updates -> {
-					if (updates.succeeded()) {
-						return Flux.fromIterable(updates.value());
-					} else {
-						return Mono.fromCallable(() -> TdResult.failed(updates.error()).orElseThrow());
-					}
-				})
-				.concatMap(update -> interceptUpdate(update))
+				.takeUntil(updates -> updates.succeeded() && containsAuthorizationStateClosed(updates.value()))
+				.concatMap(this::interceptUpdates)
 				// Redirect errors to crash sink
 				.doOnError(error -> crash.tryEmitError(error))
 				.onErrorResume(ex -> {
@@ -283,27 +378,47 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 				.doOnTerminate(updatesStreamEnd::tryEmitEmpty);
 	}
 
-	private Mono<TdApi.Object> interceptUpdate(Object update) {
-		logger.trace("Received update {}", update.getClass().getSimpleName());
-		switch (update.getConstructor()) {
-			case TdApi.UpdateAuthorizationState.CONSTRUCTOR:
+	private static boolean containsAuthorizationStateClosed(List<TdApi.Object> updates) {
+		for (TdApi.Object update : updates) {
+			if (update.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR
+					&& ((UpdateAuthorizationState) update).authorizationState.getConstructor()
+					== AuthorizationStateClosed.CONSTRUCTOR) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Mono<List<TdApi.Object>> interceptUpdates(TdResultList updates) {
+		if (!updates.succeeded()) {
+			var error = updates.error();
+			return Mono.error(new TdError(error.code, error.message));
+		}
+		var updatesList = updates.value();
+		boolean closed = false;
+		for (TdApi.Object update : updatesList) {
+			if (update.getConstructor() == TdApi.UpdateAuthorizationState.CONSTRUCTOR) {
 				var updateAuthorizationState = (TdApi.UpdateAuthorizationState) update;
 				switch (updateAuthorizationState.authorizationState.getConstructor()) {
 					case TdApi.AuthorizationStateClosing.CONSTRUCTOR:
 						authStateClosing.tryEmitEmpty();
 						break;
 					case TdApi.AuthorizationStateClosed.CONSTRUCTOR:
-						return Mono.fromRunnable(() -> logger.info("Received AuthorizationStateClosed from tdlib"))
-								.then(cluster.getEventBus().<EndSessionMessage>rxRequest(this.botAddress + ".read-binlog", EMPTY).as(MonoUtils::toMono))
-								.flatMap(latestBinlogMsg -> Mono.fromCallable(latestBinlogMsg::body).subscribeOn(Schedulers.parallel()))
-								.doOnNext(latestBinlog -> logger.info("Received binlog from server. Size: " + BinlogUtils.humanReadableByteCountBin(latestBinlog.binlog().length())))
-								.flatMap(latestBinlog -> this.saveBinlog(latestBinlog.binlog()))
-								.doOnSuccess(s -> logger.info("Overwritten binlog from server"))
-								.thenReturn(update);
+						closed = true;
+						break;
 				}
-				break;
+			}
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("Received {} updates", updatesList.size());
 		}
-		return Mono.just(update);
+		if (closed) {
+			// The server pushes the final binlog as a checkpoint, before sending the last updates
+			return Mono.fromRunnable(() -> logger.info("Received AuthorizationStateClosed from tdlib"))
+					.then(binlogManager.compress(botId))
+					.thenReturn(updatesList);
+		}
+		return Mono.just(updatesList);
 	}
 
 	@Override
@@ -319,7 +434,9 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 								),
 						Mono
 								.fromRunnable(() -> logger.trace("Executing request {}", request))
-								.then(cluster.getEventBus().<TdResultMessage>rxRequest(botAddress + ".execute", req, deliveryOptions).as(MonoUtils::toMono))
+								.then(EventBusUtils
+										.<TdResultMessage>request(cluster.getEventBus(), botAddress + ".execute", req, deliveryOptions)
+										.retryWhen(MIGRATION_RETRY))
 								.onErrorMap(ex -> ResponseError.newResponseError(request, botAlias, ex))
 								.<TdResult<T>>handle((resp, sink) -> {
 									if (resp.body() == null) {
@@ -335,4 +452,36 @@ public class AsyncTdMiddleEventBusClient implements AsyncTdMiddle {
 					throw ResponseError.newResponseError(request, botAlias, new TdError(500, "Client is closed or response is empty"));
 				})));
 	}
+
+	@Override
+	public <T extends TdApi.Object> CompletionStage<TdResult<T>> executeAsync(Function request) {
+		var req = new ExecuteObject(false, request);
+		Promise<Message<TdResultMessage>> reply = Promise.promise();
+		requestWithMigrationRetry(req, 0, reply);
+		return reply
+				.future()
+				.<TdResult<T>>compose(resp -> {
+					if (resp.body() == null) {
+						return Future.failedFuture(ResponseError.newResponseError(request, botAlias, new TdError(500, "Response is empty")));
+					} else {
+						return Future.succeededFuture(resp.body().<T>toTdResult());
+					}
+				}, ex -> Future.failedFuture(ResponseError.newResponseError(request, botAlias, ex)))
+				.toCompletionStage();
+	}
+
+	private void requestWithMigrationRetry(ExecuteObject req, long retries, Promise<Message<TdResultMessage>> reply) {
+		cluster.getEventBus().getDelegate().<TdResultMessage>request(botAddress + ".execute", req, deliveryOptions, result -> {
+			if (result.succeeded()) {
+				reply.complete(result.result());
+				return;
+			}
+			var delay = getMigrationRetryDelay(result.cause(), retries);
+			if (delay == null) {
+				reply.fail(result.cause());
+			} else {
+				cluster.getVertx().setTimer(delay.toMillis(), timerId -> requestWithMigrationRetry(req, retries + 1, reply));
+			}
+		});
+	}
 }
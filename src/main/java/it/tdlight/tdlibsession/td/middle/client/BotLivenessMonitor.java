@@ -0,0 +1,198 @@
+package it.tdlight.tdlibsession.td.middle.client;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import it.tdlight.tdlibsession.remoteclient.NodeHeartbeat;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.utils.EventBusUtils;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.Empty;
+
+/**
+ * Tracks the liveness of the remote bots of this client, using the heartbeats published by the nodes,
+ * see {@link NodeHeartbeat}.
+ * <p>
+ * A single consumer receives the heartbeats of every node, each one lists all the bots hosted by that node.
+ * A bot is lost if no node listed it for {@code tdlight.heartbeat.timeout} seconds,
+ * or shortly after its node left the cluster, unless another node lists it meanwhile,
+ * because the bot may have been migrated just before.
+ * <p>
+ * The monitor of a cluster is closed when the cluster is closed with {@link TdClusterManager#close()},
+ * the bots still watched at that time are lost.
+ */
+public class BotLivenessMonitor {
+
+	private static final Logger logger = LoggerFactory.getLogger(BotLivenessMonitor.class);
+	private static final Map<TdClusterManager, BotLivenessMonitor> MONITORS = new ConcurrentHashMap<>();
+	private static final Duration TIMEOUT = Duration.ofSeconds(Long.getLong("tdlight.heartbeat.timeout", 60));
+	/**
+	 * Time given to another node to list the bots of a node that left the cluster
+	 */
+	private static final Duration NODE_LEFT_GRACE_TIME = NodeHeartbeat.HEARTBEAT_INTERVAL.multipliedBy(2);
+	private static final Duration CHECK_INTERVAL = Duration.ofSeconds(1);
+
+	private final TdClusterManager cluster;
+	/**
+	 * The watchers of each bot, a bot may be watched more than once at the same time
+	 */
+	private final Map<Long, Set<WatchedBot>> watchedBots = new ConcurrentHashMap<>();
+
+	private MessageConsumer<JsonObject> heartbeatConsumer;
+	private Runnable removeNodeLeftListener;
+	private Disposable checker;
+	private Runnable removeCloseListener;
+	private boolean closed;
+
+	private BotLivenessMonitor(TdClusterManager cluster) {
+		this.cluster = cluster;
+	}
+
+	public static BotLivenessMonitor of(TdClusterManager cluster) {
+		return MONITORS.computeIfAbsent(cluster, BotLivenessMonitor::new);
+	}
+
+	/**
+	 * Watch the liveness of a bot, until the returned Mono is cancelled
+	 *
+	 * @return a Mono that fails when the bot is lost, it never completes
+	 */
+	public Mono<Void> watch(long botId) {
+		return Mono.defer(() -> {
+			var watchedBot = new WatchedBot();
+			synchronized (this) {
+				start();
+				if (closed) {
+					return Mono.error(new IllegalStateException("The cluster is closed"));
+				}
+				watchedBots.compute(botId, (id, botWatchers) -> {
+					if (botWatchers == null) {
+						botWatchers = ConcurrentHashMap.newKeySet();
+					}
+					botWatchers.add(watchedBot);
+					return botWatchers;
+				});
+			}
+			return watchedBot.lost
+					.asMono()
+					.doFinally(signalType -> watchedBots.computeIfPresent(botId, (id, botWatchers) -> {
+						botWatchers.remove(watchedBot);
+						return botWatchers.isEmpty() ? null : botWatchers;
+					}));
+		});
+	}
+
+	private synchronized void start() {
+		if (checker != null || closed) {
+			return;
+		}
+		// Called immediately if the cluster is already closed
+		removeCloseListener = cluster.addCloseListener(this::close);
+		if (closed) {
+			return;
+		}
+		heartbeatConsumer = cluster.getEventBus().consumer(NodeHeartbeat.HEARTBEAT_ADDRESS);
+		heartbeatConsumer.handler(msg -> onHeartbeat(msg.body()));
+		removeNodeLeftListener = cluster.addNodeLeftListener(this::onNodeLeft);
+		checker = Flux
+				.interval(CHECK_INTERVAL)
+				.onBackpressureDrop()
+				.subscribe(tick -> checkDeadlines(), ex -> logger.error("The bot liveness checker crashed", ex));
+	}
+
+	/**
+	 * Stop receiving the heartbeats and forget this monitor, the bots that are still watched are lost
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		MONITORS.remove(cluster, this);
+		if (removeCloseListener != null) {
+			removeCloseListener.run();
+		}
+		if (checker != null) {
+			checker.dispose();
+			removeNodeLeftListener.run();
+			EventBusUtils
+					.unregister(heartbeatConsumer)
+					.subscribe(v -> {}, ex -> logger.warn("Failed to unregister the heartbeats consumer", ex));
+		}
+		watchedBots.forEach((botId, botWatchers) -> {
+			var ex = new ConnectException("The cluster is closed");
+			ex.setStackTrace(new StackTraceElement[0]);
+			for (WatchedBot watchedBot : botWatchers) {
+				watchedBot.lost.tryEmitError(ex);
+			}
+		});
+	}
+
+	private void onHeartbeat(JsonObject heartbeat) {
+		var nodeId = heartbeat.getString("nodeId");
+		JsonArray bots = heartbeat.getJsonArray("bots");
+		long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+		for (int i = 0; i < bots.size(); i++) {
+			var botWatchers = watchedBots.get(bots.getLong(i));
+			if (botWatchers != null) {
+				for (WatchedBot watchedBot : botWatchers) {
+					watchedBot.nodeId = nodeId;
+					watchedBot.deadline = deadline;
+				}
+			}
+		}
+	}
+
+	private void onNodeLeft(String nodeId) {
+		long deadline = System.currentTimeMillis() + NODE_LEFT_GRACE_TIME.toMillis();
+		int affectedBots = 0;
+		for (Set<WatchedBot> botWatchers : watchedBots.values()) {
+			boolean affected = false;
+			for (WatchedBot watchedBot : botWatchers) {
+				if (nodeId.equals(watchedBot.nodeId)) {
+					watchedBot.deadline = Math.min(watchedBot.deadline, deadline);
+					affected = true;
+				}
+			}
+			if (affected) {
+				affectedBots++;
+			}
+		}
+		if (affectedBots > 0) {
+			logger.warn("Node {} left the cluster while hosting {} bots of this client", nodeId, affectedBots);
+		}
+	}
+
+	private void checkDeadlines() {
+		long now = System.currentTimeMillis();
+		watchedBots.forEach((botId, botWatchers) -> {
+			for (WatchedBot watchedBot : botWatchers) {
+				if (now > watchedBot.deadline) {
+					var ex = new ConnectException(watchedBot.nodeId == null ? "No node is hosting the bot"
+							: "Node " + watchedBot.nodeId + " stopped hosting the bot");
+					ex.setStackTrace(new StackTraceElement[0]);
+					if (watchedBot.lost.tryEmitError(ex).isSuccess()) {
+						logger.warn("Lost bot {}: {}", botId, ex.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	private static final class WatchedBot {
+
+		private final Empty<Void> lost = Sinks.empty();
+		private volatile String nodeId;
+		private volatile long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+	}
+}
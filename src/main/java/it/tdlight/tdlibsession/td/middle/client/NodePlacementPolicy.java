@@ -0,0 +1,134 @@
+package it.tdlight.tdlibsession.td.middle.client;
+
+import io.vertx.core.json.JsonObject;
+import it.tdlight.tdlibsession.remoteclient.NodeLoadMonitor;
+import it.tdlight.tdlibsession.remoteclient.TDLibRemoteClient;
+import it.tdlight.tdlibsession.td.middle.NodeLoad;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.utils.MonoUtils;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Chooses the node that will start a bot, using the load published by the nodes, see {@link NodeLoad}.
+ * <p>
+ * The least-loaded node is chosen between the nodes that are not draining or overloaded.
+ * The load of a node expires from the cluster shared data if the node stops publishing it.
+ * The bots queued or being started on a node are counted as already deployed,
+ * and so are the bots placed on it by this client in the last {@link #PLACEMENT_WINDOW},
+ * which may not be included in its published load yet. So many bots started at the same time
+ * are spread across the nodes.
+ * If no node published its load, the start request is sent to any node.
+ */
+public class NodePlacementPolicy {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodePlacementPolicy.class);
+	private static final Map<TdClusterManager, NodePlacementPolicy> POLICIES = new ConcurrentHashMap<>();
+	/**
+	 * Time after which a placement is surely included in the load published by the node
+	 */
+	private static final Duration PLACEMENT_WINDOW = NodeLoadMonitor.PUBLISH_INTERVAL.multipliedBy(2);
+	private static final double MAX_HEAP_USAGE = 0.9;
+	public static final String ANY_NODE_START_BOT_ADDRESS = "bots.start-bot";
+
+	private final TdClusterManager cluster;
+	/**
+	 * Times of the placements made in the last {@link #PLACEMENT_WINDOW}, by node id
+	 */
+	private final Map<String, Deque<Long>> recentPlacements = new ConcurrentHashMap<>();
+
+	NodePlacementPolicy(TdClusterManager cluster) {
+		this.cluster = cluster;
+	}
+
+	public static NodePlacementPolicy of(TdClusterManager cluster) {
+		return POLICIES.computeIfAbsent(cluster, NodePlacementPolicy::new);
+	}
+
+	/**
+	 * @return the load of the nodes that published it recently
+	 */
+	public Mono<List<NodeLoad>> getNodesLoad() {
+		return MonoUtils
+				.fromFuture(() -> cluster.getSharedData().getDelegate().<String, JsonObject>getAsyncMap(NodeLoad.NODES_LOAD_MAP))
+				.flatMap(map -> MonoUtils.fromFuture(map::entries))
+				.map(entries -> entries.values().stream().map(NodeLoad::fromJson).collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return the address where the start request of a bot must be sent
+	 */
+	public Mono<String> chooseStartBotAddress() {
+		return chooseNode(null)
+				.map(TDLibRemoteClient::getStartBotAddress)
+				.defaultIfEmpty(ANY_NODE_START_BOT_ADDRESS)
+				.onErrorResume(ex -> {
+					logger.warn("Failed to read the load of the nodes, the bot will be started on any node", ex);
+					return Mono.just(ANY_NODE_START_BOT_ADDRESS);
+				});
+	}
+
+	/**
+	 * @param excludedNodeId node that must not be chosen, or null
+	 * @return the id of the least-loaded eligible node, empty if no node is eligible
+	 */
+	public Mono<String> chooseNode(String excludedNodeId) {
+		return getNodesLoad().flatMap(loads -> Mono.justOrEmpty(chooseNode(loads, excludedNodeId)));
+	}
+
+	synchronized Optional<String> chooseNode(List<NodeLoad> loads, String excludedNodeId) {
+		long now = System.nanoTime();
+		recentPlacements.values().forEach(placements -> {
+			while (!placements.isEmpty() && now - placements.peekFirst() > PLACEMENT_WINDOW.toNanos()) {
+				placements.pollFirst();
+			}
+		});
+		recentPlacements.values().removeIf(Deque::isEmpty);
+		var eligible = loads
+				.stream()
+				.filter(load -> !load.draining() && !load.overloaded())
+				.filter(load -> load.heapUsage() < MAX_HEAP_USAGE)
+				.filter(load -> !load.nodeId().equals(excludedNodeId))
+				.collect(Collectors.toList());
+		int maxDeployments = 1;
+		for (NodeLoad load : eligible) {
+			maxDeployments = Math.max(maxDeployments, getExpectedDeployments(load));
+		}
+		int finalMaxDeployments = maxDeployments;
+		var chosen = eligible
+				.stream()
+				.min(Comparator.comparingDouble(load -> score(load, getExpectedDeployments(load), finalMaxDeployments)))
+				.map(NodeLoad::nodeId);
+		chosen.ifPresent(nodeId -> recentPlacements.computeIfAbsent(nodeId, id -> new ArrayDeque<>()).addLast(now));
+		if (logger.isDebugEnabled()) {
+			logger.debug("Chosen node {} between {} eligible nodes", chosen.orElse("<any>"), eligible.size());
+		}
+		return chosen;
+	}
+
+	/**
+	 * @return deployments of the node, including the bots that are starting and the ones placed on it recently
+	 */
+	private int getExpectedDeployments(NodeLoad load) {
+		var placements = recentPlacements.get(load.nodeId());
+		return load.activeDeployments() + load.startQueueDepth() + load.runningStarts()
+				+ (placements == null ? 0 : placements.size());
+	}
+
+	/**
+	 * @return a value between 0 and 1, lower is better
+	 */
+	static double score(NodeLoad load, int expectedDeployments, int maxDeployments) {
+		return 0.4 * load.cpuLoad() + 0.3 * load.heapUsage() + 0.3 * ((double) expectedDeployments / maxDeployments);
+	}
+}
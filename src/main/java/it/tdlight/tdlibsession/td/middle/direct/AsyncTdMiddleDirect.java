@@ -16,6 +16,7 @@ import it.tdlight.tdlibsession.td.direct.TelegramClientFactory;
 import it.tdlight.tdlibsession.td.middle.AsyncTdMiddle;
 import it.tdlight.tdlibsession.td.middle.TdClusterManager;
 import it.tdlight.utils.MonoUtils;
+import java.util.concurrent.CompletionStage;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
 import reactor.core.publisher.Flux;
@@ -106,4 +107,10 @@ public class AsyncTdMiddleDirect extends AbstractVerticle implements AsyncTdMidd
 				.<T>execute(requestFunction, executeDirectly)
 				.onErrorMap(error -> ResponseError.newResponseError(requestFunction, botAlias, error));
 	}
+
+	@Override
+	public <T extends Object> CompletionStage<TdResult<T>> executeAsync(Function requestFunction) {
+		// The direct client is reactive by itself, there is no event bus request to bypass
+		return this.<T>execute(requestFunction, false).toFuture();
+	}
 }
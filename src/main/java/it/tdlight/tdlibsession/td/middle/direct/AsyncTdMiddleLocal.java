@@ -6,6 +6,7 @@ import io.vertx.reactivex.core.Vertx;
 import it.tdlight.jni.TdApi;
 import it.tdlight.jni.TdApi.Function;
 import it.tdlight.jni.TdApi.Object;
+import it.tdlight.tdlibsession.remoteclient.BinlogManager;
 import it.tdlight.tdlibsession.td.TdResult;
 import it.tdlight.tdlibsession.td.middle.AsyncTdMiddle;
 import it.tdlight.tdlibsession.td.middle.TdClusterManager;
@@ -13,6 +14,9 @@ import it.tdlight.tdlibsession.td.middle.client.AsyncTdMiddleEventBusClient;
 import it.tdlight.tdlibsession.td.middle.server.AsyncTdMiddleEventBusServer;
 import it.tdlight.utils.MonoUtils;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.warp.commonutils.error.InitializationException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -29,6 +33,7 @@ public class AsyncTdMiddleLocal implements AsyncTdMiddle {
 
 	private final AsyncTdMiddleEventBusServer srv;
 	private final One<AsyncTdMiddle> cli = Sinks.one();
+	private final CompletableFuture<AsyncTdMiddle> cliFuture = new CompletableFuture<>();
 	private final JsonObject implementationDetails;
 
 
@@ -57,14 +62,14 @@ public class AsyncTdMiddleLocal implements AsyncTdMiddle {
 				.rxDeployVerticle(srv, deploymentOptions).as(MonoUtils::toMono)
 				.single()
 				.then(Mono.fromSupplier(() -> new AsyncTdMiddleEventBusClient(masterClusterManager)))
-				.zipWith(AsyncTdMiddleEventBusClient.retrieveBinlog(vertx, Path.of("binlogs"), botId))
-				.flatMap(tuple -> tuple
-						.getT1()
-						.start(botId, botAlias, true, implementationDetails, tuple.getT2())
-						.thenReturn(tuple.getT1()))
+				.flatMap(client -> client
+						.start(botId, botAlias, true, implementationDetails, BinlogManager.of(vertx, Path.of("binlogs")))
+						.thenReturn(client))
 				.onErrorMap(InitializationException::new)
 				.doOnNext(this.cli::tryEmitValue)
+				.doOnNext(this.cliFuture::complete)
 				.doOnError(this.cli::tryEmitError)
+				.doOnError(this.cliFuture::completeExceptionally)
 				.thenReturn(this);
 	}
 
@@ -78,8 +83,18 @@ public class AsyncTdMiddleLocal implements AsyncTdMiddle {
 		return cli.asMono().single().flatMapMany(AsyncTdMiddle::receive);
 	}
 
+	@Override
+	public Flux<List<TdApi.Object>> receiveBatches() {
+		return cli.asMono().single().flatMapMany(AsyncTdMiddle::receiveBatches);
+	}
+
 	@Override
 	public <T extends Object> Mono<TdResult<T>> execute(Function request, boolean executeDirectly) {
 		return cli.asMono().single().flatMap(c -> c.execute(request, executeDirectly));
 	}
+
+	@Override
+	public <T extends Object> CompletionStage<TdResult<T>> executeAsync(Function request) {
+		return cliFuture.thenCompose(c -> c.<T>executeAsync(request));
+	}
 }
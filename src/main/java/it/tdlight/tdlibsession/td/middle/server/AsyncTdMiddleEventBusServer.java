@@ -1,6 +1,7 @@
 package it.tdlight.tdlibsession.td.middle.server;
 
 import io.reactivex.Completable;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.eventbus.ReplyFailure;
@@ -9,12 +10,8 @@ import io.vertx.reactivex.core.eventbus.Message;
 import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import io.vertx.reactivex.core.eventbus.MessageProducer;
 import it.tdlight.jni.TdApi;
-import it.tdlight.jni.TdApi.AuthorizationStateClosed;
-import it.tdlight.jni.TdApi.Error;
 import it.tdlight.jni.TdApi.Function;
 import it.tdlight.jni.TdApi.SetTdlibParameters;
-import it.tdlight.jni.TdApi.Update;
-import it.tdlight.jni.TdApi.UpdateAuthorizationState;
 import it.tdlight.tdlibsession.remoteclient.TDLibRemoteClient;
 import it.tdlight.tdlibsession.td.TdError;
 import it.tdlight.tdlibsession.td.direct.AsyncTdDirectImpl;
@@ -25,15 +22,23 @@ import it.tdlight.tdlibsession.td.middle.TdResultList;
 import it.tdlight.tdlibsession.td.middle.TdResultListMessageCodec;
 import it.tdlight.tdlibsession.td.middle.TdResultMessage;
 import it.tdlight.utils.BinlogUtils;
-import it.tdlight.utils.BufferTimeOutPublisher;
+import it.tdlight.utils.BufferUtils;
+import it.tdlight.utils.EventBusUtils;
 import it.tdlight.utils.MonoUtils;
 import java.net.ConnectException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.Nullable;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.Empty;
+import reactor.core.publisher.Sinks.Many;
 import reactor.core.publisher.Sinks.One;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuples;
@@ -44,6 +49,9 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 	protected static final Logger logger = LoggerFactory.getLogger("TdMiddleServer");
 	public static final byte[] EMPTY = new byte[0];
 	public static final Duration WAIT_DURATION = Duration.ofSeconds(1);
+	public static final Duration BINLOG_CHECKPOINT_POLL_INTERVAL = Duration.ofSeconds(10);
+	public static final Duration BINLOG_CHECKPOINT_INTERVAL = Duration.ofMinutes(5);
+	public static final long BINLOG_CHECKPOINT_BYTES = 4L * 1024 * 1024;
 
 	// Values configured from constructor
 	private final AsyncTdDirectOptions tdOptions;
@@ -58,14 +66,33 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 	// Variables configured at startup
 	private final One<AsyncTdDirectImpl> td = Sinks.one();
 	private final One<MessageConsumer<ExecuteObject>> executeConsumer = Sinks.one();
-	private final One<MessageConsumer<byte[]>> readBinlogConsumer = Sinks.one();
 	private final One<MessageConsumer<byte[]>> readyToReceiveConsumer = Sinks.one();
-	private final One<MessageConsumer<byte[]>> pingConsumer = Sinks.one();
 	private final One<Flux<Void>> pipeFlux = Sinks.one();
+	// This will only result in a successful completion, never completes in other ways
+	private final Empty<Void> stopping = Sinks.one();
+	// This will only result in a successful completion, never completes in other ways
+	private final Empty<Void> stopped = Sinks.one();
+	private final AtomicLong receivedUpdates = new AtomicLong();
+	// When the bot is being migrated or hibernated, the client must not see the session closing
+	private volatile CloseReason closeReason = CloseReason.CLOSE;
+	private final AtomicBoolean closeRequested = new AtomicBoolean();
+	// Time of the last execute request or meaningful update, in milliseconds
+	private volatile long lastActivityTime = System.currentTimeMillis();
+	// Each request is completed when the binlog has been synchronized with the client
+	private final Many<Empty<Void>> binlogSyncRequests = Sinks.many().unicast().onBackpressureBuffer();
+	// Requests that set up the session, replayed when the bot is started again on a new verticle
+	private volatile SetTdlibParameters tdlibParameters;
+	private volatile byte[] databaseEncryptionKey;
+	// True while a replayed session is loading, the client already saw its authorization states
+	private volatile boolean resuming;
 
 	public AsyncTdMiddleEventBusServer() {
+		this(new TelegramClientFactory());
+	}
+
+	public AsyncTdMiddleEventBusServer(TelegramClientFactory clientFactory) {
 		this.tdOptions = new AsyncTdDirectOptions(WAIT_DURATION, 100);
-		this.clientFactory = new TelegramClientFactory();
+		this.clientFactory = clientFactory;
 	}
 
 	@Override
@@ -105,18 +132,28 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 							if (this.td.tryEmitValue(td).isFailure()) {
 								throw new IllegalStateException("Failed to set td instance");
 							}
-							return onSuccessfulStartRequest(td, botAddress, botAlias, botId, local);
+							var migrated = config().getBoolean("migrated", false);
+							var sessionSetup = config().getBinary("sessionSetup");
+							return onSuccessfulStartRequest(td, botAddress, botAlias, botId, local, migrated, sessionSetup);
 						})
 						.flatMap(voidMono -> voidMono.hide().subscribeOn(Schedulers.boundedElastic()))
 						.doOnSuccess(s -> logger.trace("Stated verticle"))
 				);
 	}
 
-	private Mono<Void> onSuccessfulStartRequest(AsyncTdDirectImpl td, String botAddress, String botAlias, int botId, boolean local) {
+	private Mono<Void> onSuccessfulStartRequest(AsyncTdDirectImpl td,
+			String botAddress,
+			String botAlias,
+			int botId,
+			boolean local,
+			boolean migrated,
+			@Nullable byte[] sessionSetup) {
 		return td
 				.initialize()
 				.then(this.pipe(td, botAddress, botAlias, botId, local))
-				.then(this.listen(td, botAddress, botAlias, botId, local))
+				// The requests are received only after the session has been loaded again
+				.then(this.replaySessionSetup(td, sessionSetup, botId))
+				.then(this.listen(td, botAddress, botAlias, botId, local, migrated))
 				.doOnSuccess(s -> {
 					logger.info("Deploy and start of bot \"" + botAlias + "\": ✅ Succeeded");
 				})
@@ -125,7 +162,12 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 				});
 	}
 
-	private Mono<Void> listen(AsyncTdDirectImpl td, String botAddress, String botAlias, int botId, boolean local) {
+	private Mono<Void> listen(AsyncTdDirectImpl td,
+			String botAddress,
+			String botAlias,
+			int botId,
+			boolean local,
+			boolean migrated) {
 		return Mono.<Void>create(registrationSink -> {
 			logger.trace("Preparing listeners");
 
@@ -140,6 +182,7 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 						executeConsumer.endHandler(h -> sink.complete());
 					})
 					.flatMap(msg -> {
+						lastActivityTime = System.currentTimeMillis();
 						var body = msg.body();
 						var request = overrideRequest(body.getRequest(), botId);
 						if (logger.isTraceEnabled()) {
@@ -154,6 +197,9 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 									msg.fail(500, ex.getLocalizedMessage());
 								}))
 								.flatMap(response -> Mono.fromCallable(() -> {
+									if (response.succeeded()) {
+										rememberSessionSetup(request);
+									}
 									var replyOpts = new DeliveryOptions().setLocalOnly(local);
 									var replyValue = new TdResultMessage(response.result(), response.cause());
 									try {
@@ -175,15 +221,19 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 							() -> logger.trace("Finished handling execute requests")
 					);
 
-			MessageConsumer<byte[]> readBinlogConsumer = vertx.eventBus().consumer(botAddress + ".read-binlog");
-			if (this.readBinlogConsumer.tryEmitValue(readBinlogConsumer).isFailure()) {
-				registrationSink.error(new IllegalStateException("Failed to set readBinlogConsumer"));
-				return;
-			}
+			var binlogCheckpoints = BinlogUtils
+					.checkpointTriggers(vertx.fileSystem(),
+							TDLibRemoteClient.getSessionBinlogDirectory(botId),
+							BINLOG_CHECKPOINT_POLL_INTERVAL,
+							BINLOG_CHECKPOINT_INTERVAL,
+							BINLOG_CHECKPOINT_BYTES
+					)
+					.takeUntilOther(stopping.asMono())
+					.map(size -> Sinks.<Void>empty());
 			BinlogUtils
-					.readBinlogConsumer(vertx, readBinlogConsumer, botId, local)
+					.serveBinlogSyncs(vertx, Flux.merge(binlogCheckpoints, binlogSyncRequests.asFlux()), botId, botAddress, local)
 					.subscribeOn(Schedulers.parallel())
-					.subscribe(v -> {}, ex -> logger.error("Error when processing a read-binlog request", ex));
+					.subscribe(v -> {}, ex -> logger.error("Error when processing a binlog synchronization", ex));
 
 			MessageConsumer<byte[]> readyToReceiveConsumer = vertx.eventBus().consumer(botAddress + ".ready-to-receive");
 			if (this.readyToReceiveConsumer.tryEmitValue(readyToReceiveConsumer).isFailure()) {
@@ -191,68 +241,63 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 				return;
 			}
 
-			// Pipe the data
-			var pipeSubscription = Flux
-					.<Message<byte[]>>create(sink -> {
-						readyToReceiveConsumer.handler(sink::next);
-						readyToReceiveConsumer.endHandler(h -> sink.complete());
-					})
-					.take(1, true)
-					.single()
-					.doOnNext(s -> logger.trace("Received ready-to-receive request from client"))
-					.flatMap(msg -> this.pipeFlux
-							.asMono()
-							.timeout(Duration.ofSeconds(5))
-							.map(pipeFlux -> Tuples.of(msg, pipeFlux)))
-					.doOnError(ex -> logger.error("Error when processing a ready-to-receive request", ex))
-					.doOnNext(s -> logger.trace("Replying to ready-to-receive request"))
-					.flatMapMany(tuple -> {
-						var opts = new DeliveryOptions().setLocalOnly(local).setSendTimeout(Duration.ofSeconds(10).toMillis());
-
-						tuple.getT1().reply(EMPTY, opts);
-						logger.trace("Replied to ready-to-receive");
-
-						logger.trace("Start piping data");
-
-						// Start piping the data
-						return tuple.getT2().doOnSubscribe(s -> {
-							logger.trace("Subscribed to updates pipe");
-						});
-					})
-					.then()
-					.doOnSuccess(s -> logger.trace("Finished handling ready-to-receive requests (updates pipe ended)"))
-					.subscribeOn(Schedulers.boundedElastic())
-					// Don't handle errors here. Handle them in pipeFlux
-					.subscribe(v -> {});
-
-			MessageConsumer<byte[]> pingConsumer = vertx.eventBus().consumer(botAddress + ".ping");
-			if (this.pingConsumer.tryEmitValue(pingConsumer).isFailure()) {
-				registrationSink.error(new IllegalStateException("Failed to set pingConsumer"));
-				return;
+			if (migrated) {
+				// The client is already receiving the updates of this bot from the previous node
+				readyToReceiveConsumer.handler(msg -> msg.reply(EMPTY));
+				this.pipeFlux
+						.asMono()
+						.timeout(Duration.ofSeconds(5))
+						.doOnError(ex -> logger.error("Error when piping the updates of a migrated bot", ex))
+						.flatMapMany(pipeFlux -> pipeFlux)
+						.then()
+						.doOnSuccess(s -> logger.trace("Finished piping the updates of a migrated bot"))
+						.subscribeOn(Schedulers.boundedElastic())
+						// Don't handle errors here. Handle them in pipeFlux
+						.subscribe(v -> {});
+				// The client archive may not contain the last binlog of the previous node
+				requestBinlogSync()
+						.subscribeOn(Schedulers.boundedElastic())
+						.subscribe(v -> {}, ex -> logger.warn("Failed to synchronize the binlog of a migrated bot", ex));
+			} else {
+				// Pipe the data
+				Flux
+						.<Message<byte[]>>create(sink -> {
+							readyToReceiveConsumer.handler(sink::next);
+							readyToReceiveConsumer.endHandler(h -> sink.complete());
+						})
+						.take(1, true)
+						.single()
+						.doOnNext(s -> logger.trace("Received ready-to-receive request from client"))
+						.flatMap(msg -> this.pipeFlux
+								.asMono()
+								.timeout(Duration.ofSeconds(5))
+								.map(pipeFlux -> Tuples.of(msg, pipeFlux)))
+						.doOnError(ex -> logger.error("Error when processing a ready-to-receive request", ex))
+						.doOnNext(s -> logger.trace("Replying to ready-to-receive request"))
+						.flatMapMany(tuple -> {
+							var opts = new DeliveryOptions().setLocalOnly(local).setSendTimeout(Duration.ofSeconds(10).toMillis());
+
+							tuple.getT1().reply(EMPTY, opts);
+							logger.trace("Replied to ready-to-receive");
+
+							logger.trace("Start piping data");
+
+							// Start piping the data
+							return tuple.getT2().doOnSubscribe(s -> {
+								logger.trace("Subscribed to updates pipe");
+							});
+						})
+						.then()
+						.doOnSuccess(s -> logger.trace("Finished handling ready-to-receive requests (updates pipe ended)"))
+						.subscribeOn(Schedulers.boundedElastic())
+						// Don't handle errors here. Handle them in pipeFlux
+						.subscribe(v -> {});
 			}
-			Flux
-					.<Message<byte[]>>create(sink -> {
-						pingConsumer.handler(sink::next);
-						pingConsumer.endHandler(h -> sink.complete());
-					})
-					.concatMap(msg -> Mono.fromCallable(() -> {
-						var opts = new DeliveryOptions().setLocalOnly(local).setSendTimeout(Duration.ofSeconds(10).toMillis());
-						msg.reply(EMPTY, opts);
-						return null;
-					}))
-					.then()
-					.subscribeOn(Schedulers.boundedElastic())
-					.subscribe(v -> {},
-							ex -> logger.error("Error when processing a ping request", ex),
-							() -> logger.trace("Finished handling ping requests")
-					);
 
-			executeConsumer
-					.rxCompletionHandler()
-					.andThen(readBinlogConsumer.rxCompletionHandler())
-					.andThen(readyToReceiveConsumer.rxCompletionHandler())
-					.andThen(pingConsumer.rxCompletionHandler())
-					.as(MonoUtils::toMono)
+			// The liveness of the bot is published by the node heartbeat, see NodeHeartbeat
+			EventBusUtils
+					.completion(executeConsumer)
+					.then(EventBusUtils.completion(readyToReceiveConsumer))
 					.doOnSuccess(s -> logger.trace("Finished preparing listeners"))
 					.subscribeOn(Schedulers.parallel())
 					.subscribe(v -> {}, registrationSink::error, registrationSink::success);
@@ -283,68 +328,283 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 				.timeout(Duration.ofSeconds(1), Mono.just("???"))
 				.flatMap(botAlias -> Mono
 						.fromRunnable(() -> logger.info("Undeploy of bot \"" + botAlias + "\": stopping"))
+						.then(MonoUtils.emitEmpty(stopping).onErrorResume(ex -> Mono.empty()))
 						.then(executeConsumer
 								.asMono()
 								.timeout(Duration.ofSeconds(5), Mono.empty())
-								.flatMap(ec -> ec.rxUnregister().as(MonoUtils::toMono))
+								.flatMap(EventBusUtils::unregister)
 								.doOnSuccess(s -> logger.trace("Unregistered execute consumer"))
 						)
-						.then(readBinlogConsumer
-								.asMono()
-								.timeout(Duration.ofSeconds(10), Mono.empty())
-								.flatMap(ec -> Mono.fromCallable(() -> {
-									Mono
-											// ReadBinLog will live for another 30 minutes.
-											// Since every consumer of ReadBinLog is identical, this should not pose a problem.
-											.delay(Duration.ofMinutes(30))
-											.then(ec.rxUnregister().as(MonoUtils::toMono))
-											.subscribe();
-									return null;
-								}).subscribeOn(Schedulers.boundedElastic()))
-						)
+						.then(Mono.fromRunnable(binlogSyncRequests::tryEmitComplete))
 						.then(readyToReceiveConsumer
 								.asMono()
 								.timeout(Duration.ofSeconds(5), Mono.empty())
-								.flatMap(ec -> ec.rxUnregister().as(MonoUtils::toMono)))
-						.then(pingConsumer
-								.asMono()
-								.timeout(Duration.ofSeconds(5), Mono.empty())
-								.flatMap(ec -> ec.rxUnregister().as(MonoUtils::toMono)))
+								.flatMap(EventBusUtils::unregister))
 						.doOnError(ex -> logger.error("Undeploy of bot \"" + botAlias + "\": stop failed", ex))
 						.doOnTerminate(() -> logger.info("Undeploy of bot \"" + botAlias + "\": stopped"))
+						.doOnTerminate(stopped::tryEmitEmpty)
 				)
 		);
 	}
 
+	/**
+	 * @return a Mono that completes when the verticle has been stopped
+	 */
+	public Mono<Void> onStopped() {
+		return stopped.asMono();
+	}
+
+	/**
+	 * Close TDLib to migrate the bot to another node.
+	 * The client doesn't receive the closing authorization states and the final binlog,
+	 * the node that receives the bot continues sending the updates to the same client.
+	 *
+	 * @return a Mono that completes when TDLib has been closed and the verticle has been stopped
+	 */
+	public Mono<Void> closeForMigration() {
+		return close(CloseReason.MIGRATION);
+	}
+
+	/**
+	 * Close TDLib cleanly. The final binlog is sent to the client before the closing updates,
+	 * then the verticle stops itself.
+	 *
+	 * @return a Mono that completes when TDLib has been closed and the verticle has been stopped
+	 */
+	public Mono<Void> closeGracefully() {
+		return close(CloseReason.CLOSE);
+	}
+
+	/**
+	 * Close TDLib to hibernate an idle bot. The final binlog is sent to the client,
+	 * but the client doesn't receive the closing authorization states, because the bot will be started again
+	 * on the next request.
+	 *
+	 * @return a Mono that completes when TDLib has been closed and the verticle has been stopped
+	 */
+	public Mono<Void> hibernate() {
+		return close(CloseReason.HIBERNATION);
+	}
+
+	/**
+	 * Close TDLib without sending anything to the client, because the bot failed to start.
+	 * The verticle must be undeployed after this.
+	 */
+	public Mono<Void> discard() {
+		return td
+				.asMono()
+				.timeout(Duration.ofSeconds(5), Mono.empty())
+				.flatMap(td -> td.execute(new TdApi.Close(), false))
+				.onErrorResume(ex -> {
+					logger.warn("Failed to close TDLib", ex);
+					return Mono.empty();
+				})
+				.then();
+	}
+
+	private Mono<Void> close(CloseReason reason) {
+		return Mono.defer(() -> {
+			if (!closeRequested.compareAndSet(false, true)) {
+				return Mono.error(new IllegalStateException("The bot is already closing"));
+			}
+			return td
+					.asMono()
+					.single()
+					.flatMap(td -> {
+						closeReason = reason;
+						return td.execute(new TdApi.Close(), false);
+					})
+					.then(onStopped());
+		});
+	}
+
+	/**
+	 * @return time of the last execute request or meaningful update, in milliseconds
+	 */
+	public long getLastActivityTime() {
+		return lastActivityTime;
+	}
+
+	/**
+	 * @return number of updates received from TDLib since the start
+	 */
+	public long getReceivedUpdates() {
+		return receivedUpdates.get();
+	}
+
+	/**
+	 * @return the requests that set up the session of this bot, to start it again on another verticle,
+	 * or null if the client didn't send the TDLib parameters yet
+	 */
+	@Nullable
+	public byte[] getSessionSetup() {
+		var parameters = tdlibParameters;
+		if (parameters == null) {
+			return null;
+		}
+		var requests = new ArrayList<Function>(2);
+		requests.add(parameters);
+		var encryptionKey = databaseEncryptionKey;
+		if (encryptionKey != null) {
+			requests.add(new TdApi.CheckDatabaseEncryptionKey(encryptionKey));
+		}
+		return encodeSessionSetup(requests);
+	}
+
+	public static byte[] encodeSessionSetup(List<Function> requests) {
+		var buffer = Buffer.buffer();
+		BufferUtils.encode(buffer, os -> {
+			os.writeInt(requests.size());
+			for (Function request : requests) {
+				request.serialize(os);
+			}
+		});
+		return buffer.getBytes();
+	}
+
+	public static List<Function> decodeSessionSetup(byte[] sessionSetup) {
+		return BufferUtils.decode(0, Buffer.buffer(sessionSetup), is -> {
+			int count = is.readInt();
+			var requests = new ArrayList<Function>(count);
+			for (int i = 0; i < count; i++) {
+				requests.add((Function) TdApi.Deserializer.deserialize(is));
+			}
+			return requests;
+		});
+	}
+
+	private void rememberSessionSetup(Function request) {
+		switch (request.getConstructor()) {
+			case SetTdlibParameters.CONSTRUCTOR:
+				tdlibParameters = (SetTdlibParameters) request;
+				break;
+			case TdApi.CheckDatabaseEncryptionKey.CONSTRUCTOR:
+				databaseEncryptionKey = ((TdApi.CheckDatabaseEncryptionKey) request).encryptionKey;
+				break;
+			case TdApi.SetDatabaseEncryptionKey.CONSTRUCTOR:
+				databaseEncryptionKey = ((TdApi.SetDatabaseEncryptionKey) request).newEncryptionKey;
+				break;
+		}
+	}
+
+	/**
+	 * Send the session setup of the previous verticle of this bot to TDLib,
+	 * then wait until TDLib has loaded the session. The client doesn't send it again,
+	 * because it doesn't know that the bot has been started again.
+	 */
+	private Mono<Void> replaySessionSetup(AsyncTdDirectImpl td, @Nullable byte[] sessionSetup, int botId) {
+		if (sessionSetup == null) {
+			return Mono.empty();
+		}
+		return Mono
+				.fromCallable(() -> {
+					resuming = true;
+					return decodeSessionSetup(sessionSetup);
+				})
+				.flatMapMany(Flux::fromIterable)
+				.concatMap(request -> td
+						.execute(overrideRequest(request, botId), false)
+						.single()
+						.flatMap(result -> {
+							if (result.failed()) {
+								return Mono.error(new TdError(result.cause().code,
+										"Failed to replay the session setup: " + result.cause().message
+								));
+							}
+							rememberSessionSetup(request);
+							return Mono.just(result);
+						}))
+				.then(td
+						.<TdApi.AuthorizationState>execute(new TdApi.GetAuthorizationState(), false)
+						.single()
+						.filter(state -> state.succeeded() && !isSessionSetupState(state.result().getConstructor()))
+						.repeatWhenEmpty(300, repeats -> repeats.delayElements(Duration.ofMillis(100))))
+				.doOnSuccess(state -> logger.debug("Replayed the session setup of bot {}", botId))
+				.then();
+	}
+
+	private static boolean isSessionSetupState(int authorizationState) {
+		return authorizationState == TdApi.AuthorizationStateWaitTdlibParameters.CONSTRUCTOR
+				|| authorizationState == TdApi.AuthorizationStateWaitEncryptionKey.CONSTRUCTOR;
+	}
+
+	/**
+	 * @return a Mono that completes when the binlog has been synchronized with the client
+	 */
+	private Mono<Void> requestBinlogSync() {
+		return Mono.defer(() -> {
+			Empty<Void> syncRequest = Sinks.empty();
+			if (binlogSyncRequests.tryEmitNext(syncRequest).isFailure()) {
+				return Mono.error(new IllegalStateException("The binlog synchronization has already been stopped"));
+			}
+			return syncRequest.asMono();
+		});
+	}
+
+	/**
+	 * Send the updates to the client, without the authorization states it must not see
+	 *
+	 * @param hideClosingStates true if the client must not see the session closing
+	 */
+	private Mono<Void> sendUpdates(MessageProducer<TdResultList> updatesSender,
+			TdResultList updatesList,
+			boolean hideClosingStates) {
+		if (!updatesList.succeeded() || (!hideClosingStates && !resuming)) {
+			return EventBusUtils.write(updatesSender, updatesList);
+		}
+		var updates = new ArrayList<TdApi.Object>(updatesList.value().size());
+		for (TdApi.Object update : updatesList.value()) {
+			if (hideClosingStates && isClosingState(update)) {
+				continue;
+			}
+			if (resuming && update.getConstructor() == TdApi.UpdateAuthorizationState.CONSTRUCTOR) {
+				var authorizationState = ((TdApi.UpdateAuthorizationState) update).authorizationState.getConstructor();
+				if (isSessionSetupState(authorizationState)) {
+					continue;
+				}
+				// The first state after the session setup is the state that the client already knows
+				resuming = false;
+				if (authorizationState == TdApi.AuthorizationStateReady.CONSTRUCTOR) {
+					continue;
+				}
+			}
+			updates.add(update);
+		}
+		if (updates.isEmpty()) {
+			return Mono.empty();
+		}
+		return EventBusUtils.write(updatesSender, new TdResultList(updates));
+	}
+
+	/**
+	 * @return false for the updates that TDLib sends periodically even if the bot is not used
+	 */
+	private static boolean isMeaningfulUpdate(TdApi.Object update) {
+		switch (update.getConstructor()) {
+			case TdApi.UpdateConnectionState.CONSTRUCTOR:
+			case TdApi.UpdateOption.CONSTRUCTOR:
+			case TdApi.UpdateUserStatus.CONSTRUCTOR:
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	private static boolean isClosingState(TdApi.Object update) {
+		if (update.getConstructor() != TdApi.UpdateAuthorizationState.CONSTRUCTOR) {
+			return false;
+		}
+		var authorizationState = ((TdApi.UpdateAuthorizationState) update).authorizationState.getConstructor();
+		return authorizationState == TdApi.AuthorizationStateClosing.CONSTRUCTOR
+				|| authorizationState == TdApi.AuthorizationStateClosed.CONSTRUCTOR;
+	}
+
 	private Mono<Void> pipe(AsyncTdDirectImpl td, String botAddress, String botAlias, int botId, boolean local) {
 		logger.trace("Preparing to pipe requests");
-		Flux<TdResultList> updatesFlux = td.receive(tdOptions)
-				.takeUntil(item -> {
-					if (item instanceof Update) {
-						var tdUpdate = (Update) item;
-						if (tdUpdate.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR) {
-							var updateAuthorizationState = (UpdateAuthorizationState) tdUpdate;
-							return updateAuthorizationState.authorizationState.getConstructor()
-									== AuthorizationStateClosed.CONSTRUCTOR;
-						}
-					} else
-						return item instanceof Error;
-					return false;
-				})
-				.flatMap(update -> Mono.fromCallable(() -> {
-					if (update.getConstructor() == TdApi.Error.CONSTRUCTOR) {
-						var error = (Error) update;
-						throw new TdError(error.code, error.message);
-					} else {
-						return update;
-					}
-				}))
-				.limitRate(Math.max(1, tdOptions.getEventsSize()))
-				.transform(normal -> new BufferTimeOutPublisher<>(normal, Math.max(1, tdOptions.getEventsSize()), local ? Duration.ofMillis(1) : Duration.ofMillis(100)))
-				//.bufferTimeout(Math.max(1, tdOptions.getEventsSize()), local ? Duration.ofMillis(1) : Duration.ofMillis(100))
-				//.map(List::of)
-				.limitRate(Math.max(1, tdOptions.getEventsSize()))
-				.map(TdResultList::new);
+		Flux<TdResultList> updatesFlux = TdUpdatesBatcher.batch(td.receive(tdOptions),
+				Math.max(1, tdOptions.getEventsSize()),
+				local ? Duration.ofMillis(1) : Duration.ofMillis(100)
+		);
 
 		var fluxCodec = new TdResultListMessageCodec();
 		var opts = new DeliveryOptions()
@@ -357,33 +617,39 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 				.sender(botAddress + ".updates", opts);
 
 		var pipeFlux = updatesFlux
-				.concatMap(updatesList -> updatesSender
-						.rxWrite(updatesList)
-						.as(MonoUtils::toMono)
-						.thenReturn(updatesList)
-				)
-				.concatMap(updatesList -> Flux
-						.fromIterable(updatesList.value())
-						.concatMap(item -> {
-							if (item instanceof Update) {
-								var tdUpdate = (Update) item;
-								if (tdUpdate.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR) {
-									var tdUpdateAuthorizationState = (UpdateAuthorizationState) tdUpdate;
-									if (tdUpdateAuthorizationState.authorizationState.getConstructor()
-											== AuthorizationStateClosed.CONSTRUCTOR) {
-										logger.info("Undeploying after receiving AuthorizationStateClosed");
-										return rxStop().as(MonoUtils::toMono).thenReturn(item);
-									}
-								}
-							} else if (item instanceof Error) {
-								// An error in updates means that a fatal error occurred
-								logger.info("Undeploying after receiving a fatal error");
-								return rxStop().as(MonoUtils::toMono).thenReturn(item);
-							}
-							return Mono.just(item);
-						})
-						.then()
-				)
+				.concatMap(updatesList -> {
+					if (updatesList.succeeded()) {
+						receivedUpdates.addAndGet(updatesList.value().size());
+						if (updatesList.value().stream().anyMatch(AsyncTdMiddleEventBusServer::isMeaningfulUpdate)) {
+							lastActivityTime = System.currentTimeMillis();
+						}
+					}
+					boolean closing = TdUpdatesBatcher.isClosingBatch(updatesList);
+					var reason = closeReason;
+					var sendMono = sendUpdates(updatesSender, updatesList, reason != CloseReason.CLOSE);
+					if (closing) {
+						// Push the final binlog to the client before the last batch, the client won't request it.
+						// A migrated bot is synchronized by the node that receives it
+						var finalBinlogSync = reason == CloseReason.MIGRATION ? Mono.<Void>empty() : requestBinlogSync()
+								.doOnSubscribe(s -> logger.debug("Sending the final binlog"))
+								.onErrorResume(ex -> {
+									logger.error("Failed to send the final binlog", ex);
+									return Mono.empty();
+								});
+						return finalBinlogSync
+								.then(sendMono)
+								.doOnSuccess(s -> logger.info("Undeploying after receiving AuthorizationStateClosed"))
+								// TDLib has been closed cleanly, the session database can be reused with this binlog
+								.then(BinlogUtils
+										.writeSessionFingerprint(vertx.fileSystem(), TDLibRemoteClient.getSessionBinlogDirectory(botId))
+										.onErrorResume(ex -> {
+											logger.warn("Failed to write the session fingerprint", ex);
+											return Mono.empty();
+										}))
+								.then(rxStop().as(MonoUtils::<Void>toMono));
+					}
+					return sendMono;
+				})
 				.doOnTerminate(() -> updatesSender.close(h -> {
 					if (h.failed()) {
 						logger.error("Failed to close \"updates\" message sender");
@@ -413,4 +679,10 @@ public class AsyncTdMiddleEventBusServer extends AbstractVerticle {
 		return MonoUtils.emitValue(this.pipeFlux, pipeFlux)
 				.doOnSuccess(s -> logger.trace("Prepared piping requests successfully"));
 	}
+
+	private enum CloseReason {
+		CLOSE,
+		MIGRATION,
+		HIBERNATION
+	}
 }
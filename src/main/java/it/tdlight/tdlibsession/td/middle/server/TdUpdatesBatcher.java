@@ -0,0 +1,68 @@
+package it.tdlight.tdlibsession.td.middle.server;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.jni.TdApi.AuthorizationStateClosed;
+import it.tdlight.jni.TdApi.Error;
+import it.tdlight.jni.TdApi.UpdateAuthorizationState;
+import it.tdlight.tdlibsession.td.TdError;
+import it.tdlight.tdlibsession.td.middle.TdResultList;
+import java.time.Duration;
+import java.util.List;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Batches the updates received from TDLib.
+ * <p>
+ * Updates are grouped in batches of at most {@code size} elements, a partial batch is emitted after {@code duration}.
+ * A {@link TdApi.Error} terminates the batches with a {@link TdError}.
+ * An {@link AuthorizationStateClosed} update terminates the batches after being emitted:
+ * it is always the last element of the last batch, see {@link #isClosingBatch(TdResultList)}.
+ * <p>
+ * The partial batches are emitted by a worker of {@link reactor.core.scheduler.Schedulers#parallel()}
+ * owned by the subscription, so the timers of the bots don't share a thread.
+ * TDLib can't be paused, so the batches that have not been requested yet are buffered.
+ */
+public class TdUpdatesBatcher {
+
+	public static Flux<TdResultList> batch(Publisher<TdApi.Object> updates, int size, Duration duration) {
+		return Flux
+				.from(updates)
+				.handle((TdApi.Object item, SynchronousSink<TdApi.Object> sink) -> {
+					if (item.getConstructor() == Error.CONSTRUCTOR) {
+						// An error in updates means that a fatal error occurred
+						var error = (Error) item;
+						sink.error(new TdError(error.code, error.message));
+						return;
+					}
+					sink.next(item);
+					if (isAuthorizationStateClosed(item)) {
+						// Nothing else will be received after AuthorizationStateClosed
+						sink.complete();
+					}
+				})
+				.bufferTimeout(Math.max(1, size), duration)
+				// bufferTimeout fails if a batch is ready while there is no demand
+				.onBackpressureBuffer()
+				// The batch is handed over as-is, without copying it
+				.map(TdResultList::new);
+	}
+
+	public static boolean isAuthorizationStateClosed(TdApi.Object item) {
+		return item.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR
+				&& ((UpdateAuthorizationState) item).authorizationState.getConstructor()
+				== AuthorizationStateClosed.CONSTRUCTOR;
+	}
+
+	/**
+	 * @return true if this batch has been terminated by an {@link AuthorizationStateClosed} update
+	 */
+	public static boolean isClosingBatch(TdResultList batch) {
+		if (!batch.succeeded()) {
+			return false;
+		}
+		List<TdApi.Object> values = batch.value();
+		return !values.isEmpty() && isAuthorizationStateClosed(values.get(values.size() - 1));
+	}
+}
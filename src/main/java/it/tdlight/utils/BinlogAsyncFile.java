@@ -1,13 +1,17 @@
 package it.tdlight.utils;
 
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.FileProps;
 import io.vertx.core.file.OpenOptions;
 import io.vertx.reactivex.core.buffer.Buffer;
-import io.vertx.reactivex.core.file.AsyncFile;
-import io.vertx.reactivex.core.file.FileProps;
 import io.vertx.reactivex.core.file.FileSystem;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 
 public class BinlogAsyncFile {
 
@@ -20,44 +24,72 @@ public class BinlogAsyncFile {
 	public BinlogAsyncFile(FileSystem fileSystem, String path) {
 		this.filesystem = fileSystem;
 		this.path = path;
-		this.openOptions = new OpenOptions().setWrite(true).setRead(true).setCreate(false).setDsync(true);
+		this.openOptions = new OpenOptions().setRead(true).setWrite(false).setCreate(false);
 	}
-	
-	private Mono<AsyncFile> openRW() {
-		return filesystem.rxOpen(path, openOptions).as(MonoUtils::toMono);
+
+	private Mono<AsyncFile> openRead() {
+		return FileSystemUtils.open(filesystem, path, openOptions);
 	}
 
+	/**
+	 * Read the whole binlog in memory, decompressing it if needed. Binlog transfers don't use this method, they stream the file in chunks,
+	 * see {@link BinlogUtils#sendChunks}
+	 */
 	public Mono<Buffer> readFully() {
-		return openRW()
-				.flatMap(asyncFile -> filesystem
-						.rxProps(path)
-						.map(props -> (int) props.size())
-						.as(MonoUtils::toMono)
+		return Mono.usingWhen(openRead(), asyncFile -> FileSystemUtils
+						.props(filesystem, path)
+						.handle((FileProps props, SynchronousSink<Integer> sink) -> {
+							if (props.size() > Integer.MAX_VALUE) {
+								sink.error(new IllegalStateException("The binlog " + path + " is too big to be read in memory: "
+										+ BinlogUtils.humanReadableByteCountBin(props.size())));
+							} else {
+								sink.next((int) props.size());
+							}
+						})
 						.flatMap(size -> {
-							var buf = Buffer.buffer(size);
+							var buf = io.vertx.core.buffer.Buffer.buffer(size);
 							logger.debug("Reading binlog from disk. Size: " + BinlogUtils.humanReadableByteCountBin(size));
-							return asyncFile.rxRead(buf, 0, 0, size).as(MonoUtils::toMono).thenReturn(buf);
+							return FileSystemUtils.read(asyncFile, buf, 0, 0, size);
+						})
+						// Compressed binlogs are decompressed transparently
+						.handle((io.vertx.core.buffer.Buffer data, SynchronousSink<io.vertx.core.buffer.Buffer> sink) -> {
+							try {
+								sink.next(BinlogCompression.decompress(data));
+							} catch (IOException ex) {
+								sink.error(ex);
+							}
 						})
-				);
+						.map(Buffer::newInstance),
+				FileSystemUtils::close
+		);
 	}
 
 	public Mono<byte[]> readFullyBytes() {
 		return this.readFully().map(Buffer::getBytes);
 	}
 
+	/**
+	 * Write the new data to a temporary file, sync it once, then replace the binlog atomically,
+	 * see {@link BinlogUtils#commitBinlog(Path, Path)}
+	 */
 	public Mono<Void> overwrite(Buffer newData) {
-		return openRW().flatMap(asyncFile -> this
+		var binlogPath = Paths.get(path);
+		var tempPath = BinlogUtils.getTempPath(binlogPath);
+		var tempOpenOptions = new OpenOptions().setWrite(true).setCreate(true).setTruncateExisting(true);
+		return this
 				.getSize()
 				.doOnNext(size -> logger.debug("Preparing to overwrite binlog. Initial size: " + BinlogUtils.humanReadableByteCountBin(size)))
-				.then(asyncFile.rxWrite(newData, 0)
-						.andThen(asyncFile.rxFlush())
-						.andThen(filesystem.rxTruncate(path, newData.length()))
-						.as(MonoUtils::toMono)
-				)
+				.then(Mono.usingWhen(FileSystemUtils.open(filesystem, tempPath.toString(), tempOpenOptions),
+						asyncFile -> FileSystemUtils
+								.write(asyncFile, newData.getDelegate(), 0)
+								// Sync the file only once, after writing all the data
+								.then(FileSystemUtils.flush(asyncFile)),
+						FileSystemUtils::close
+				))
+				.then(MonoUtils.fromBlockingEmpty(() -> BinlogUtils.commitBinlog(tempPath, binlogPath)))
 				.then(getSize())
 				.doOnNext(size -> logger.debug("Overwritten binlog. Final size: " + BinlogUtils.humanReadableByteCountBin(size)))
-				.then()
-		);
+				.then();
 	}
 
 	public Mono<Void> overwrite(byte[] newData) {
@@ -73,16 +105,14 @@ public class BinlogAsyncFile {
 	}
 
 	public Mono<Long> getLastModifiedTime() {
-		return filesystem
-				.rxProps(path)
-				.map(fileProps -> fileProps.size() == 0 ? 0 : fileProps.lastModifiedTime())
-				.as(MonoUtils::toMono);
+		return FileSystemUtils
+				.props(filesystem, path)
+				.map(fileProps -> fileProps.size() == 0 ? 0 : fileProps.lastModifiedTime());
 	}
 
 	public Mono<Long> getSize() {
-		return filesystem
-				.rxProps(path)
-				.map(FileProps::size)
-				.as(MonoUtils::toMono);
+		return FileSystemUtils
+				.props(filesystem, path)
+				.map(FileProps::size);
 	}
 }
@@ -0,0 +1,116 @@
+package it.tdlight.utils;
+
+import io.vertx.core.file.FileProps;
+import io.vertx.reactivex.core.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory copy of the session binlog of a bot, used to serve repeated binlog transfers.
+ * <p>
+ * The cached copy keeps the data together with the size and the date of the file it has been read from,
+ * and with its block checksums and hash, so an unchanged binlog is sent without reading or hashing it again.
+ * The copy is read again when TDLib changes the binlog.
+ * Binlogs bigger than the maximum size are not cached.
+ */
+public class BinlogCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinlogCache.class);
+
+	private final FileSystem fileSystem;
+	private final Path binlogPath;
+	private final long maxSize;
+
+	private volatile CachedBinlog cached;
+
+	public BinlogCache(FileSystem fileSystem, Path binlogPath, long maxSize) {
+		this.fileSystem = fileSystem;
+		this.binlogPath = binlogPath;
+		this.maxSize = maxSize;
+	}
+
+	public Path getBinlogPath() {
+		return binlogPath;
+	}
+
+	/**
+	 * @return the cached binlog, empty if the binlog is too big to be cached
+	 */
+	public Mono<Optional<CachedBinlog>> get() {
+		return FileSystemUtils
+				.props(fileSystem, binlogPath.toString())
+				.flatMap((FileProps props) -> {
+					var current = cached;
+					if (current != null && current.size() == props.size()
+							&& current.lastModifiedTime() == props.lastModifiedTime()) {
+						return Mono.just(Optional.of(current));
+					}
+					cached = null;
+					if (props.size() > maxSize) {
+						return Mono.just(Optional.<CachedBinlog>empty());
+					}
+					return MonoUtils.fromBlockingSingle(() -> {
+						// The date is read before the data, if the binlog changes meanwhile the copy is read again next time
+						var data = Files.readAllBytes(binlogPath);
+						var newCached = new CachedBinlog(data, props.lastModifiedTime());
+						cached = newCached;
+						logger.debug("Cached binlog {}. Size: {}", binlogPath, BinlogUtils.humanReadableByteCountBin(data.length));
+						return Optional.of(newCached);
+					});
+				});
+	}
+
+	public void invalidate() {
+		cached = null;
+	}
+
+	public static final class CachedBinlog {
+
+		private final byte[] data;
+		private final long lastModifiedTime;
+		private final int[] checksums;
+		private final byte[] hash;
+
+		private CachedBinlog(byte[] data, long lastModifiedTime) {
+			this.data = data;
+			this.lastModifiedTime = lastModifiedTime;
+			this.checksums = BinlogDeltaUtils.computeChecksums(data, BinlogDeltaUtils.BLOCK_SIZE);
+			var digest = BinlogDeltaUtils.newSha256();
+			digest.update(data);
+			this.hash = digest.digest();
+		}
+
+		/**
+		 * @return the binlog data, it must not be modified
+		 */
+		public byte[] data() {
+			return data;
+		}
+
+		public long size() {
+			return data.length;
+		}
+
+		public long lastModifiedTime() {
+			return lastModifiedTime;
+		}
+
+		/**
+		 * @return checksums of the blocks of size {@link BinlogDeltaUtils#BLOCK_SIZE}
+		 */
+		public int[] checksums() {
+			return checksums;
+		}
+
+		/**
+		 * @return SHA-256 of the binlog
+		 */
+		public byte[] hash() {
+			return hash;
+		}
+	}
+}
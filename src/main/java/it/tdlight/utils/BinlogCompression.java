@@ -0,0 +1,158 @@
+package it.tdlight.utils;
+
+import io.vertx.core.buffer.Buffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+
+/**
+ * Optional compressed binlog format.
+ * <p>
+ * Compressed binlogs start with {@link #MAGIC}, followed by the binlog compressed with deflate at the fastest level.
+ * Binlogs without the header are read as they are, so uncompressed binlogs are always supported.
+ * Compression is enabled with the {@code tdlight.binlog.compression} system property.
+ * <p>
+ * TDLib reads the binlog of the node directly, so the binlog of the session is never compressed.
+ * All the methods are blocking.
+ */
+public class BinlogCompression {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinlogCompression.class);
+
+	/**
+	 * "TDBZ" followed by the format version
+	 */
+	public static final byte[] MAGIC = {'T', 'D', 'B', 'Z', 1};
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("tdlight.binlog.compression", "false"));
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	public static boolean isCompressed(Buffer data) {
+		return data.length() >= MAGIC.length && Arrays.equals(data.getBytes(0, MAGIC.length), MAGIC);
+	}
+
+	public static boolean isCompressed(Path file) throws IOException {
+		if (Files.notExists(file)) {
+			return false;
+		}
+		try (var is = Files.newInputStream(file)) {
+			return Arrays.equals(is.readNBytes(MAGIC.length), MAGIC);
+		}
+	}
+
+	/**
+	 * @return the compressed data, including the header
+	 */
+	public static Buffer compress(Buffer data) {
+		var deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			var os = new ByteArrayOutputStream(data.length() / 2 + MAGIC.length);
+			os.writeBytes(MAGIC);
+			deflater.setInput(data.getByteBuf().nioBuffer());
+			deflater.finish();
+			var block = new byte[BinlogDeltaUtils.BLOCK_SIZE];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(block);
+				os.write(block, 0, length);
+			}
+			return Buffer.buffer(os.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @return the uncompressed data, or the data itself if it doesn't start with the header
+	 */
+	public static Buffer decompress(Buffer data) throws IOException {
+		if (!isCompressed(data)) {
+			return data;
+		}
+		var compressed = data.getBytes(MAGIC.length, data.length());
+		try (var is = newInflaterInputStream(new ByteArrayInputStream(compressed))) {
+			return Buffer.buffer(is.readAllBytes());
+		}
+	}
+
+	/**
+	 * @return a stream of the uncompressed content of a binlog, compressed or not
+	 */
+	public static InputStream newInputStream(Path file) throws IOException {
+		var is = Files.newInputStream(file);
+		try {
+			var header = is.readNBytes(MAGIC.length);
+			if (Arrays.equals(header, MAGIC)) {
+				return newInflaterInputStream(is);
+			}
+			is.close();
+			return Files.newInputStream(file);
+		} catch (IOException ex) {
+			is.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Compress a binlog into another file, streaming it
+	 */
+	public static void compressFile(Path source, Path target) throws IOException {
+		long startTime = System.nanoTime();
+		var deflater = new Deflater(Deflater.BEST_SPEED);
+		try (var is = Files.newInputStream(source);
+				OutputStream os = Files.newOutputStream(target)) {
+			os.write(MAGIC);
+			try (var dos = new DeflaterOutputStream(os, deflater, BinlogDeltaUtils.BLOCK_SIZE)) {
+				is.transferTo(dos);
+			}
+		} finally {
+			deflater.end();
+		}
+		logger.debug("Compressed binlog {}. {}", source, describe(Files.size(source), Files.size(target), System.nanoTime() - startTime));
+	}
+
+	/**
+	 * Decompress a binlog into another file, streaming it
+	 */
+	public static void decompressFile(Path source, Path target) throws IOException {
+		long startTime = System.nanoTime();
+		try (var is = newInputStream(source);
+				var os = Files.newOutputStream(target)) {
+			is.transferTo(os);
+		}
+		logger.debug("Decompressed binlog {}. {}", source, describe(Files.size(target), Files.size(source), System.nanoTime() - startTime));
+	}
+
+	public static String describe(long rawSize, long compressedSize, long nanos) {
+		return "Raw size: " + BinlogUtils.humanReadableByteCountBin(rawSize)
+				+ ", compressed size: " + BinlogUtils.humanReadableByteCountBin(compressedSize)
+				+ ", ratio: " + String.format("%.2f", rawSize == 0 ? 1d : (double) compressedSize / rawSize)
+				+ ", time: " + (nanos / 1_000_000) + "ms";
+	}
+
+	private static InflaterInputStream newInflaterInputStream(InputStream is) {
+		var inflater = new Inflater();
+		return new InflaterInputStream(is, inflater, BinlogDeltaUtils.BLOCK_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,328 @@
+package it.tdlight.utils;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.reactivex.core.buffer.Buffer;
+import it.tdlight.tdlibsession.td.middle.BinlogChecksums;
+import it.tdlight.tdlibsession.td.middle.BinlogChunk;
+import it.tdlight.utils.BinlogCache.CachedBinlog;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32C;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Block-level delta of binlogs.
+ * <p>
+ * The receiver of a binlog sends the checksums of the fixed-size blocks of its own copy,
+ * the sender replies with the blocks that don't match. TDLib appends to the binlog most of the time,
+ * so blocks are compared at the same offsets instead of using a rolling checksum.
+ * Every reassembled binlog is verified against the SHA-256 of the original one.
+ * <p>
+ * Files are read one block at a time, so the memory used doesn't depend on the binlog size.
+ * When {@link BinlogCompression} is enabled the chunks are compressed, if it makes them smaller.
+ * All the methods are blocking.
+ */
+public class BinlogDeltaUtils {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinlogDeltaUtils.class);
+
+	public static final int BLOCK_SIZE = 64 * 1024;
+	/**
+	 * Maximum size of the changed blocks sent in a single {@link BinlogChunk}
+	 */
+	public static final int CHUNK_SIZE = 16 * BLOCK_SIZE;
+
+	public static BinlogChecksums computeChecksums(Path file) throws IOException {
+		return computeChecksums(file, BLOCK_SIZE);
+	}
+
+	public static BinlogChecksums computeChecksums(Path file, int blockSize) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			var checksums = new int[blockCount(size, blockSize)];
+			var block = ByteBuffer.allocate(blockSize);
+			var crc = new CRC32C();
+			for (int i = 0; i < checksums.length; i++) {
+				readBlock(channel, block, (long) i * blockSize, blockLength(size, blockSize, i));
+				crc.reset();
+				crc.update(block);
+				checksums[i] = (int) crc.getValue();
+			}
+			return new BinlogChecksums(blockSize, size, checksums);
+		}
+	}
+
+	/**
+	 * Compute the checksums of a binlog that is already in memory
+	 */
+	public static int[] computeChecksums(byte[] data, int blockSize) {
+		var checksums = new int[blockCount(data.length, blockSize)];
+		var crc = new CRC32C();
+		for (int i = 0; i < checksums.length; i++) {
+			crc.reset();
+			crc.update(data, i * blockSize, blockLength(data.length, blockSize, i));
+			checksums[i] = (int) crc.getValue();
+		}
+		return checksums;
+	}
+
+	public static byte[] sha256(Path file) throws IOException {
+		var digest = newSha256();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			var block = ByteBuffer.allocate(BLOCK_SIZE);
+			int blocks = blockCount(size, BLOCK_SIZE);
+			for (int i = 0; i < blocks; i++) {
+				readBlock(channel, block, (long) i * BLOCK_SIZE, blockLength(size, BLOCK_SIZE, i));
+				digest.update(block);
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Read the blocks of a binlog that don't match the checksums of the receiver.
+	 * The blocks are read lazily, when the chunks are requested.
+	 *
+	 * @param file the binlog to send
+	 * @param remoteChecksums checksums of the binlog of the receiver
+	 * @return the changed blocks, grouped in chunks, followed by the {@link BinlogChunk#last(long, byte[])} chunk
+	 */
+	public static Flux<BinlogChunk> readChangedChunks(Path file, BinlogChecksums remoteChecksums) {
+		return readChangedChunks(() -> new ChangedChunksReader(file, remoteChecksums));
+	}
+
+	/**
+	 * Read the blocks of a cached binlog that don't match the checksums of the receiver.
+	 * The chunks are views of the cached data, the checksums and the hash of the cached binlog are reused.
+	 *
+	 * @param cachedBinlog the binlog to send
+	 * @param remoteChecksums checksums of the binlog of the receiver
+	 * @return the changed blocks, grouped in chunks, followed by the {@link BinlogChunk#last(long, byte[])} chunk
+	 */
+	public static Flux<BinlogChunk> readChangedChunks(CachedBinlog cachedBinlog, BinlogChecksums remoteChecksums) {
+		return readChangedChunks(() -> new ChangedChunksReader(cachedBinlog, remoteChecksums));
+	}
+
+	private static Flux<BinlogChunk> readChangedChunks(Callable<ChangedChunksReader> readerSupplier) {
+		return Flux
+				.<BinlogChunk, ChangedChunksReader>generate(readerSupplier,
+						(reader, sink) -> {
+							try {
+								var chunk = reader.next();
+								if (chunk != null) {
+									sink.next(chunk);
+								} else {
+									sink.complete();
+								}
+							} catch (IOException ex) {
+								sink.error(ex);
+							}
+							return reader;
+						},
+						ChangedChunksReader::close
+				)
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	public static String describeTransfer(long size, long transferred) {
+		return "Size: " + BinlogUtils.humanReadableByteCountBin(size)
+				+ ", transferred: " + BinlogUtils.humanReadableByteCountBin(transferred)
+				+ ", saved: " + BinlogUtils.humanReadableByteCountBin(size - transferred);
+	}
+
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read a block and flip the buffer, to make it ready to be consumed
+	 */
+	private static void readBlock(FileChannel channel, ByteBuffer block, long position, int length) throws IOException {
+		block.clear().limit(length);
+		while (block.hasRemaining()) {
+			if (channel.read(block, position + block.position()) < 0) {
+				throw new EOFException("The binlog has been truncated while reading it");
+			}
+		}
+		block.flip();
+	}
+
+	private static int blockCount(long size, int blockSize) {
+		return Math.toIntExact((size + blockSize - 1) / blockSize);
+	}
+
+	private static int blockLength(long size, int blockSize, int index) {
+		return (int) Math.max(0, Math.min(blockSize, size - (long) index * blockSize));
+	}
+
+	private static class ChangedChunksReader {
+
+		// Exactly one between channel and cachedData is set
+		private final FileChannel channel;
+		private final byte[] cachedData;
+		// Checksums and hash of the local binlog, null if they must be computed while reading
+		private final int[] localChecksums;
+		private final byte[] localHash;
+		private final BinlogChecksums remoteChecksums;
+		private final int blockSize;
+		private final long size;
+		private final int blockCount;
+		private final ByteBuffer block;
+		private final CRC32C crc = new CRC32C();
+		private final MessageDigest digest = newSha256();
+
+		private int blockIndex = 0;
+		private boolean finished = false;
+		private io.vertx.core.buffer.Buffer pending;
+		private long pendingOffset;
+		private int pendingLength;
+		private long rawBytes;
+		private long compressedBytes;
+		private long compressionNanos;
+
+		public ChangedChunksReader(Path file, BinlogChecksums remoteChecksums) throws IOException {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+			this.cachedData = null;
+			this.localChecksums = null;
+			this.localHash = null;
+			this.remoteChecksums = remoteChecksums;
+			this.blockSize = remoteChecksums.blockSize();
+			this.size = channel.size();
+			this.blockCount = blockCount(size, blockSize);
+			this.block = ByteBuffer.allocate(blockSize);
+		}
+
+		public ChangedChunksReader(CachedBinlog cachedBinlog, BinlogChecksums remoteChecksums) {
+			this.channel = null;
+			this.cachedData = cachedBinlog.data();
+			this.remoteChecksums = remoteChecksums;
+			this.blockSize = remoteChecksums.blockSize();
+			// The cached checksums can be used only if the receiver used the same block size
+			this.localChecksums = blockSize == BLOCK_SIZE ? cachedBinlog.checksums() : null;
+			this.localHash = cachedBinlog.hash();
+			this.size = cachedData.length;
+			this.blockCount = blockCount(size, blockSize);
+			this.block = null;
+		}
+
+		/**
+		 * @return the next chunk, or null if the last chunk has already been returned
+		 */
+		public BinlogChunk next() throws IOException {
+			while (blockIndex < blockCount) {
+				int index = blockIndex++;
+				long offset = (long) index * blockSize;
+				int length = blockLength(size, blockSize, index);
+				ByteBuffer current;
+				if (channel != null) {
+					readBlock(channel, block, offset, length);
+					current = block;
+				} else {
+					current = ByteBuffer.wrap(cachedData, (int) offset, length).slice();
+				}
+				if (localHash == null) {
+					digest.update(current.duplicate());
+				}
+				int checksum;
+				if (localChecksums != null) {
+					checksum = localChecksums[index];
+				} else {
+					crc.reset();
+					crc.update(current.duplicate());
+					checksum = (int) crc.getValue();
+				}
+
+				var remote = remoteChecksums.checksums();
+				boolean unchanged = index < remote.length
+						&& blockLength(remoteChecksums.size(), blockSize, index) == length
+						&& remote[index] == checksum;
+
+				BinlogChunk ready = null;
+				if (pendingLength > 0 && (unchanged || pendingLength + length > CHUNK_SIZE)) {
+					ready = flushPending();
+				}
+				if (!unchanged) {
+					if (pendingLength == 0) {
+						pendingOffset = offset;
+					}
+					if (channel != null) {
+						if (pending == null) {
+							pending = io.vertx.core.buffer.Buffer.buffer(CHUNK_SIZE);
+						}
+						pending.appendBytes(block.array(), 0, length);
+					}
+					pendingLength += length;
+				}
+				if (ready != null) {
+					return ready;
+				}
+			}
+			if (pendingLength > 0) {
+				return flushPending();
+			}
+			if (!finished) {
+				finished = true;
+				return BinlogChunk.last(size, localHash != null ? localHash : digest.digest());
+			}
+			return null;
+		}
+
+		private BinlogChunk flushPending() {
+			io.vertx.core.buffer.Buffer raw;
+			if (channel != null) {
+				raw = pending;
+			} else {
+				// Cached runs of blocks are sent without copying them
+				raw = io.vertx.core.buffer.Buffer.buffer(Unpooled.wrappedBuffer(cachedData, (int) pendingOffset, pendingLength));
+			}
+			pending = null;
+			pendingLength = 0;
+			BinlogChunk chunk;
+			if (BinlogCompression.isEnabled()) {
+				long startTime = System.nanoTime();
+				var compressed = BinlogCompression.compress(raw);
+				compressionNanos += System.nanoTime() - startTime;
+				rawBytes += raw.length();
+				if (compressed.length() < raw.length()) {
+					compressedBytes += compressed.length();
+					chunk = BinlogChunk.compressed(pendingOffset, Buffer.newInstance(compressed));
+				} else {
+					compressedBytes += raw.length();
+					chunk = BinlogChunk.of(pendingOffset, Buffer.newInstance(raw));
+				}
+			} else {
+				chunk = BinlogChunk.of(pendingOffset, Buffer.newInstance(raw));
+			}
+			return chunk;
+		}
+
+		public void close() {
+			if (rawBytes > 0) {
+				logger.debug("Compressed the changed blocks. {}",
+						BinlogCompression.describe(rawBytes, compressedBytes, compressionNanos));
+			}
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+}
@@ -1,39 +1,64 @@
 package it.tdlight.utils;
 
 import io.vertx.core.eventbus.DeliveryOptions;
-import io.vertx.core.file.OpenOptions;
+import io.vertx.core.file.FileProps;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.core.eventbus.Message;
-import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import io.vertx.reactivex.core.file.FileSystem;
 import it.tdlight.tdlibsession.remoteclient.TDLibRemoteClient;
-import it.tdlight.tdlibsession.td.middle.EndSessionMessage;
+import it.tdlight.tdlibsession.td.middle.BinlogChecksums;
+import it.tdlight.tdlibsession.td.middle.BinlogChunk;
+import it.tdlight.tdlibsession.td.middle.StartSessionMessage;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks.Empty;
 import reactor.core.scheduler.Schedulers;
-import reactor.util.function.Tuple2;
-import reactor.util.function.Tuples;
 
 public class BinlogUtils {
 
 	private static final Logger logger = LoggerFactory.getLogger(BinlogUtils.class);
+	private static final byte[] EMPTY = new byte[0];
+	/**
+	 * Session binlogs up to this size are kept in memory between transfers, see {@link BinlogCache}
+	 */
+	private static final long MAX_CACHED_BINLOG_SIZE = 64L * 1024 * 1024;
+	/**
+	 * Checksums of an empty binlog, the receiver of a binlog replies them to the last chunk
+	 * to request the whole binlog, when the binlog rebuilt from the changed blocks doesn't match the hash
+	 */
+	private static final BinlogChecksums FULL_TRANSFER_CHECKSUMS
+			= new BinlogChecksums(BinlogDeltaUtils.BLOCK_SIZE, 0, new int[0]);
 
 	public static Mono<BinlogAsyncFile> retrieveBinlog(FileSystem vertxFilesystem, Path binlogPath) {
 		var path = binlogPath.toString();
-		return vertxFilesystem
+		return FileSystemUtils
 				// Create file if not exist to avoid errors
-				.rxExists(path).filter(exists -> exists).as(MonoUtils::toMono)
-				.switchIfEmpty(Mono.defer(() -> vertxFilesystem.rxMkdirs(binlogPath.getParent().toString()).as(MonoUtils::toMono))
-						.then(vertxFilesystem.rxCreateFile(path).as(MonoUtils::toMono))
+				.exists(vertxFilesystem, path).filter(exists -> exists)
+				.switchIfEmpty(Mono.defer(() -> FileSystemUtils.mkdirs(vertxFilesystem, binlogPath.getParent().toString()))
+						.then(FileSystemUtils.createFile(vertxFilesystem, path))
 						.thenReturn(true)
 				)
 				// Open file
@@ -46,45 +71,455 @@ public class BinlogUtils {
 		return binlog.overwrite(data);
 	}
 
-	public static Mono<Void> chooseBinlog(FileSystem vertxFilesystem,
+	/**
+	 * Binlog handshake of a bot start request.
+	 * <p>
+	 * The start request carries the hash of the client binlog. The local binlog is used without any transfer
+	 * if it's identical, or if it's newer, which means that the last binlog synchronized with the client
+	 * has the same hash of the client binlog.
+	 * Otherwise the node replies with the checksums of its local binlog, then the client sends the changed blocks.
+	 *
+	 * @return the message that must be replied when the bot has been started
+	 */
+	public static Mono<io.vertx.core.eventbus.Message<?>> receiveBinlog(FileSystem vertxFilesystem,
 			Path binlogPath,
-			Buffer remoteBinlog,
-			long remoteBinlogDate) {
-		var path = binlogPath.toString();
+			Message<StartSessionMessage> startMessage,
+			DeliveryOptions deliveryOptions) {
+		var request = startMessage.body();
 		return retrieveBinlog(vertxFilesystem, binlogPath)
-				.flatMap(binlog -> Mono
-						.just(binlog)
-						.zipWith(binlog.getLastModifiedTime())
-				)
-				.doOnSuccess(s -> logger.info("Local binlog: " + binlogPath + ". Local date: " + Instant.ofEpochMilli(s == null ? 0 : s.getT2()).atZone(ZoneOffset.UTC).toString() + " Remote date: " + Instant.ofEpochMilli(remoteBinlogDate).atZone(ZoneOffset.UTC).toString()))
-				// Files older than the remote file will be overwritten
-				.filter(tuple -> tuple.getT2() >= remoteBinlogDate)
-				.doOnNext(v -> logger.info("Using local binlog: " + binlogPath))
-				.map(Tuple2::getT1)
-				.switchIfEmpty(Mono.defer(() -> Mono.fromRunnable(() -> logger.info("Using remote binlog. Overwriting " + binlogPath)))
-						.then(vertxFilesystem.rxWriteFile(path, remoteBinlog.copy()).as(MonoUtils::toMono))
-						.then(retrieveBinlog(vertxFilesystem, binlogPath))
-				)
-				.single()
-				.then()
+				.flatMap(binlog -> Mono.zip(binlog.getLastModifiedTime(),
+						MonoUtils.toOptional(readSyncedHash(vertxFilesystem, binlogPath)),
+						MonoUtils.fromBlockingSingle(() -> BinlogDeltaUtils.sha256(binlogPath))
+				))
+				.doOnSuccess(s -> logger.info("Local binlog: " + binlogPath + ". Local date: " + Instant.ofEpochMilli(s == null ? 0 : s.getT1()).atZone(ZoneOffset.UTC).toString() + " Remote date: " + Instant.ofEpochMilli(request.binlogDate()).atZone(ZoneOffset.UTC).toString()))
+				.<io.vertx.core.eventbus.Message<?>>flatMap(tuple -> {
+					long localBinlogDate = tuple.getT1();
+					var syncedHash = tuple.getT2();
+					var localHash = tuple.getT3();
+					if (Arrays.equals(localHash, request.binlogHash())) {
+						logger.info("Using local binlog: " + binlogPath + ". It's identical to the remote binlog");
+						return writeSyncedHash(vertxFilesystem, binlogPath, localHash).thenReturn(startMessage.getDelegate());
+					}
+					boolean localIsNewer = syncedHash
+							.map(hash -> Arrays.equals(hash, request.binlogHash()))
+							// Nodes that never synchronized this binlog can only compare the dates
+							.orElse(localBinlogDate >= request.binlogDate());
+					if (localIsNewer) {
+						logger.info("Using local binlog: " + binlogPath + ". It's newer than the remote binlog");
+						return Mono.just(startMessage.getDelegate());
+					}
+					logger.info("Using remote binlog. Overwriting " + binlogPath);
+					return MonoUtils
+							.fromBlockingSingle(() -> BinlogDeltaUtils.computeChecksums(binlogPath))
+							.flatMap(checksums -> receiveChunks(EventBusUtils
+									.<BinlogChunk>replyAndRequest(startMessage.getDelegate(), checksums, deliveryOptions), binlogPath, deliveryOptions))
+							.flatMap(lastMessage -> writeSyncedHash(vertxFilesystem, binlogPath, lastMessage.body().hash())
+									.thenReturn(lastMessage)
+									.onErrorResume(ex -> {
+										lastMessage.fail(500, "Failed to receive the binlog: " + ex.getMessage());
+										return Mono.error(ex);
+									}));
+				})
 				.publishOn(Schedulers.boundedElastic());
 	}
 
+	/**
+	 * Send the blocks of a binlog that don't match the checksums of the receiver.
+	 * <p>
+	 * The transfer is a chain of replies: every chunk is sent as a reply of the acknowledgement of the previous one,
+	 * so the conversation stays between the same two nodes and a chunk is read only when the receiver is ready.
+	 * If the receiver replies to the last chunk with new checksums, the binlog couldn't be rebuilt from the changed blocks,
+	 * and the whole binlog is sent again.
+	 *
+	 * @param request the message that started the transfer, the first chunk is sent as its reply
+	 * @return the last chunk, after it has been acknowledged
+	 */
+	public static Mono<BinlogChunk> sendChunks(io.vertx.core.eventbus.Message<?> request,
+			Path binlogPath,
+			BinlogChecksums remoteChecksums,
+			DeliveryOptions deliveryOptions) {
+		return sendChunks(request,
+				binlogPath,
+				checksums -> BinlogDeltaUtils.readChangedChunks(binlogPath, checksums),
+				remoteChecksums,
+				deliveryOptions
+		);
+	}
+
+	/**
+	 * Send the blocks of a binlog that don't match the checksums of the receiver, reading them from the cache
+	 * if the binlog can be cached.
+	 *
+	 * @see #sendChunks(io.vertx.core.eventbus.Message, Path, BinlogChecksums, DeliveryOptions)
+	 */
+	public static Mono<BinlogChunk> sendChunks(io.vertx.core.eventbus.Message<?> request,
+			BinlogCache binlogCache,
+			BinlogChecksums remoteChecksums,
+			DeliveryOptions deliveryOptions) {
+		var binlogPath = binlogCache.getBinlogPath();
+		return binlogCache
+				.get()
+				.doOnError(ex -> request.fail(500, "Failed to read the binlog: " + ex.getMessage()))
+				.flatMap(cachedBinlog -> sendChunks(request,
+						binlogPath,
+						checksums -> cachedBinlog
+								.map(cached -> BinlogDeltaUtils.readChangedChunks(cached, checksums))
+								.orElseGet(() -> BinlogDeltaUtils.readChangedChunks(binlogPath, checksums)),
+						remoteChecksums,
+						deliveryOptions
+				));
+	}
+
+	private static Mono<BinlogChunk> sendChunks(io.vertx.core.eventbus.Message<?> request,
+			Path binlogPath,
+			Function<BinlogChecksums, Flux<BinlogChunk>> changedChunks,
+			BinlogChecksums remoteChecksums,
+			DeliveryOptions deliveryOptions) {
+		return Mono.defer(() -> {
+			var currentMessage = new AtomicReference<io.vertx.core.eventbus.Message<?>>(request);
+			var transferred = new AtomicLong();
+			return changedChunks
+					.apply(remoteChecksums)
+					.concatMap(chunk -> EventBusUtils
+							.<Object>replyAndRequest(currentMessage.get(), chunk, deliveryOptions)
+							.doOnNext(ack -> {
+								currentMessage.set(ack);
+								transferred.addAndGet(chunk.data().length());
+							})
+							.thenReturn(chunk), 1)
+					.last()
+					.flatMap(last -> {
+						var lastAck = currentMessage.get();
+						if (!(lastAck.body() instanceof BinlogChecksums)) {
+							logger.info("Sent binlog " + binlogPath + ". "
+									+ BinlogDeltaUtils.describeTransfer(last.size(), transferred.get()));
+							return Mono.just(last);
+						}
+						if (remoteChecksums.checksums().length == 0) {
+							return Mono.error(new IllegalStateException("The receiver failed to verify the whole binlog"));
+						}
+						logger.warn("The receiver failed to rebuild binlog " + binlogPath
+								+ " from the changed blocks, sending the whole binlog");
+						return sendChunks(lastAck, binlogPath, changedChunks, (BinlogChecksums) lastAck.body(), deliveryOptions);
+					})
+					.doOnError(ex -> currentMessage.get().fail(500, "Failed to send the binlog: " + ex.getMessage()));
+		});
+	}
+
+	public static Path getTempPath(Path binlogPath) {
+		return binlogPath.resolveSibling(binlogPath.getFileName() + ".tmp");
+	}
+
+	public static Path getBackupPath(Path binlogPath) {
+		return binlogPath.resolveSibling(binlogPath.getFileName() + ".bak");
+	}
+
+	/**
+	 * Replace a binlog with a temporary file that has been completely written and synced.
+	 * <p>
+	 * The current binlog is kept as a ".bak" generation, then the temporary file is atomically renamed
+	 * and the directory is synced, so that a crash leaves either the old or the new binlog, never a partial one.
+	 * This method is blocking.
+	 */
+	public static void commitBinlog(Path tempPath, Path binlogPath) throws IOException {
+		if (Files.exists(binlogPath)) {
+			var backupPath = getBackupPath(binlogPath);
+			Files.deleteIfExists(backupPath);
+			try {
+				Files.createLink(backupPath, binlogPath);
+			} catch (UnsupportedOperationException | IOException ex) {
+				// Hard links are not supported by every filesystem
+				Files.copy(binlogPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.move(tempPath, binlogPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory(binlogPath.toAbsolutePath().getParent());
+	}
+
+	private static void syncDirectory(Path directory) {
+		try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException ex) {
+			// Directories can't be synced on every platform
+			logger.debug("Failed to sync the directory {}: {}", directory, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Receive a binlog sent with {@link #sendChunks(io.vertx.core.eventbus.Message, Path, BinlogChecksums, DeliveryOptions)}.
+	 * <p>
+	 * The chunks are written to a temporary binlog, that replaces the binlog
+	 * only when the transfer is complete and its hash has been verified.
+	 * If the hash doesn't match, the whole binlog is requested to the sender, once.
+	 *
+	 * @param firstChunk the reply containing the first chunk
+	 * @return the message containing the last chunk, it must be replied to complete the transfer
+	 */
+	public static Mono<io.vertx.core.eventbus.Message<BinlogChunk>> receiveChunks(
+			Mono<io.vertx.core.eventbus.Message<BinlogChunk>> firstChunk,
+			Path binlogPath,
+			DeliveryOptions deliveryOptions) {
+		return receiveChunks(firstChunk, binlogPath, deliveryOptions, false);
+	}
+
+	private static Mono<io.vertx.core.eventbus.Message<BinlogChunk>> receiveChunks(
+			Mono<io.vertx.core.eventbus.Message<BinlogChunk>> firstChunk,
+			Path binlogPath,
+			DeliveryOptions deliveryOptions,
+			boolean fullTransfer) {
+		var tempPath = getTempPath(binlogPath);
+		return Mono.defer(() -> {
+			var currentMessage = new AtomicReference<io.vertx.core.eventbus.Message<?>>();
+			var received = new AtomicLong();
+			var wholeBinlog = new AtomicBoolean(fullTransfer);
+			return Mono
+					.usingWhen(MonoUtils.fromBlockingSingle(() -> {
+								var writer = new DeltaWriter(tempPath, fullTransfer ? null : binlogPath);
+								wholeBinlog.set(!writer.hasUnchangedBlocks());
+								return writer;
+							}),
+							writer -> firstChunk
+									.flatMap(message -> writeChunk(writer, message, currentMessage, received))
+									.expand(message -> message.body().isLast() ? Mono.<io.vertx.core.eventbus.Message<BinlogChunk>>empty() : EventBusUtils
+											.<BinlogChunk>replyAndRequest(message, EMPTY, deliveryOptions)
+											.flatMap(next -> writeChunk(writer, next, currentMessage, received)))
+									.last(),
+							writer -> MonoUtils.fromBlockingEmpty(writer::close)
+					)
+					.flatMap(lastMessage -> MonoUtils.fromBlockingMaybe(() -> {
+						var last = lastMessage.body();
+						if (!Arrays.equals(BinlogDeltaUtils.sha256(tempPath), last.hash())) {
+							if (wholeBinlog.get()) {
+								throw new IllegalStateException("The received binlog doesn't match the hash of the original binlog");
+							}
+							// Request the whole binlog
+							return null;
+						}
+						commitBinlog(tempPath, binlogPath);
+						logger.info("Received binlog " + binlogPath + ". " + BinlogDeltaUtils.describeTransfer(last.size(), received.get()));
+						return lastMessage;
+					}))
+					.onErrorResume(ex -> {
+						var message = currentMessage.get();
+						if (message != null) {
+							message.fail(500, "Failed to receive the binlog: " + ex.getMessage());
+						}
+						return MonoUtils.fromBlockingEmpty(() -> Files.deleteIfExists(tempPath)).then(Mono.error(ex));
+					})
+					.switchIfEmpty(Mono.defer(() -> {
+						logger.warn("The binlog " + binlogPath + " rebuilt from the changed blocks doesn't match the hash"
+								+ " of the original binlog, requesting the whole binlog");
+						return receiveChunks(EventBusUtils.<BinlogChunk>replyAndRequest(currentMessage.get(),
+								FULL_TRANSFER_CHECKSUMS,
+								deliveryOptions
+						), binlogPath, deliveryOptions, true);
+					}));
+		});
+	}
+
+	private static Mono<io.vertx.core.eventbus.Message<BinlogChunk>> writeChunk(DeltaWriter writer,
+			io.vertx.core.eventbus.Message<BinlogChunk> message,
+			AtomicReference<io.vertx.core.eventbus.Message<?>> currentMessage,
+			AtomicLong received) {
+		return MonoUtils.fromBlockingSingle(() -> {
+			currentMessage.set(message);
+			var chunk = message.body();
+			if (chunk.isLast()) {
+				writer.finish(chunk.size());
+			} else {
+				var chunkData = chunk.isCompressed()
+						? BinlogCompression.decompress(chunk.data().getDelegate())
+						: chunk.data().getDelegate();
+				writer.write(chunk.offset(), chunkData.getByteBuf().nioBuffer());
+				received.addAndGet(chunk.data().length());
+			}
+			return message;
+		});
+	}
+
+	/**
+	 * Writes the received chunks to the temporary binlog. The unchanged blocks between the chunks
+	 * are copied from the current binlog, so a whole binlog transfer doesn't copy anything.
+	 * The chunks are sent in increasing offset order, see {@link BinlogDeltaUtils#readChangedChunks(Path, BinlogChecksums)}.
+	 * All the methods are blocking.
+	 */
+	private static final class DeltaWriter implements Closeable {
+
+		private final FileChannel target;
+		@Nullable
+		private final FileChannel source;
+		/**
+		 * The temporary binlog is complete up to this position
+		 */
+		private long writtenUpTo;
+
+		/**
+		 * @param binlogPath the current binlog, null if the whole binlog is being received
+		 */
+		public DeltaWriter(Path tempPath, @Nullable Path binlogPath) throws IOException {
+			this.target = FileChannel.open(tempPath,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING
+			);
+			FileChannel source = null;
+			try {
+				if (binlogPath != null && Files.exists(binlogPath) && Files.size(binlogPath) > 0) {
+					source = FileChannel.open(binlogPath, StandardOpenOption.READ);
+				}
+			} catch (IOException ex) {
+				closeQuietly(target);
+				throw ex;
+			}
+			this.source = source;
+		}
+
+		/**
+		 * @return false if the sender is sending the whole binlog, because this side has no blocks
+		 */
+		public boolean hasUnchangedBlocks() {
+			return source != null;
+		}
+
+		public void write(long offset, ByteBuffer data) throws IOException {
+			copyUnchangedBlocks(offset);
+			long position = offset;
+			while (data.hasRemaining()) {
+				position += target.write(data, position);
+			}
+			writtenUpTo = Math.max(writtenUpTo, position);
+		}
+
+		public void finish(long size) throws IOException {
+			copyUnchangedBlocks(size);
+			target.truncate(size);
+			target.force(true);
+		}
+
+		private void copyUnchangedBlocks(long end) throws IOException {
+			if (source == null) {
+				return;
+			}
+			long sourceEnd = Math.min(end, source.size());
+			while (writtenUpTo < sourceEnd) {
+				target.position(writtenUpTo);
+				long copied = source.transferTo(writtenUpTo, sourceEnd - writtenUpTo, target);
+				if (copied <= 0) {
+					throw new EOFException("The binlog has been truncated while copying it");
+				}
+				writtenUpTo += copied;
+			}
+		}
+
+		@Override
+		public void close() {
+			closeQuietly(target);
+			if (source != null) {
+				closeQuietly(source);
+			}
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			logger.warn("Failed to close a binlog file", ex);
+		}
+	}
+
+	private static Path getSyncedHashPath(Path binlogPath) {
+		return binlogPath.resolveSibling(binlogPath.getFileName() + ".synced");
+	}
+
+	/**
+	 * @return the hash of the last binlog content that has been synchronized with the client
+	 */
+	public static Mono<byte[]> readSyncedHash(FileSystem vertxFilesystem, Path binlogPath) {
+		var path = getSyncedHashPath(binlogPath).toString();
+		return FileSystemUtils
+				.exists(vertxFilesystem, path)
+				.filter(exists -> exists)
+				.flatMap(exists -> FileSystemUtils.readFile(vertxFilesystem, path))
+				.map(io.vertx.core.buffer.Buffer::getBytes);
+	}
+
+	public static Mono<Void> writeSyncedHash(FileSystem vertxFilesystem, Path binlogPath, byte[] hash) {
+		return FileSystemUtils.writeFile(vertxFilesystem,
+				getSyncedHashPath(binlogPath).toString(),
+				io.vertx.core.buffer.Buffer.buffer(hash)
+		);
+	}
+
+	private static Path getSessionFingerprintPath(Path binlogPath) {
+		return binlogPath.resolveSibling(binlogPath.getFileName() + ".session");
+	}
+
+	/**
+	 * Record that the session database is consistent with the current binlog.
+	 * This must be called only after TDLib has been closed cleanly.
+	 */
+	public static Mono<Void> writeSessionFingerprint(FileSystem vertxFilesystem, Path binlogPath) {
+		return MonoUtils
+				.fromBlockingMaybe(() -> Files.size(binlogPath) > 0 ? BinlogDeltaUtils.sha256(binlogPath) : null)
+				.flatMap(hash -> FileSystemUtils.writeFile(vertxFilesystem,
+						getSessionFingerprintPath(binlogPath).toString(),
+						io.vertx.core.buffer.Buffer.buffer(hash)
+				))
+				.doOnSuccess(s -> logger.debug("Written the session fingerprint of the binlog {}", binlogPath));
+	}
+
+	/**
+	 * Prepare the session directory before starting TDLib.
+	 * <p>
+	 * If the binlog matches the fingerprint written when TDLib has been closed the last time,
+	 * the session database is kept and TDLib doesn't need to rebuild it.
+	 * Otherwise the session is cleaned with {@link #cleanSessionPath(FileSystem, Path, Path, Path)}.
+	 * The fingerprint is always deleted, because TDLib is going to modify the session database.
+	 */
+	public static Mono<Void> prepareSessionPath(FileSystem vertxFilesystem,
+			Path binlogPath,
+			Path sessionPath,
+			Path mediaPath) {
+		var fingerprintPath = getSessionFingerprintPath(binlogPath).toString();
+		return FileSystemUtils
+				.exists(vertxFilesystem, fingerprintPath)
+				.filter(exists -> exists)
+				.flatMap(exists -> FileSystemUtils.readFile(vertxFilesystem, fingerprintPath))
+				.map(io.vertx.core.buffer.Buffer::getBytes)
+				.flatMap(fingerprint -> FileSystemUtils
+						.deleteRecursive(vertxFilesystem, fingerprintPath, false)
+						.then(MonoUtils.fromBlockingSingle(() -> Arrays.equals(fingerprint, BinlogDeltaUtils.sha256(binlogPath)))))
+				.onErrorResume(ex -> {
+					logger.warn("Failed to check the session fingerprint of the binlog " + binlogPath, ex);
+					return Mono.just(false);
+				})
+				.defaultIfEmpty(false)
+				.flatMap(warm -> {
+					if (warm) {
+						logger.info("Reusing the session database of the binlog " + binlogPath + ". The binlog is unchanged");
+						return Mono.empty();
+					}
+					return cleanSessionPath(vertxFilesystem, binlogPath, sessionPath, mediaPath);
+				});
+	}
+
 	public static Mono<Void> cleanSessionPath(FileSystem vertxFilesystem,
 			Path binlogPath,
 			Path sessionPath,
 			Path mediaPath) {
-		return vertxFilesystem
-				.rxReadFile(binlogPath.toString()).as(MonoUtils::toMono)
-				.flatMap(buffer -> vertxFilesystem
-						.rxReadDir(sessionPath.toString(), "^(?!td.binlog$).*").as(MonoUtils::toMono)
+		return FileSystemUtils
+				.exists(vertxFilesystem, binlogPath.toString())
+				.filter(exists -> exists)
+				.flatMap(exists -> FileSystemUtils
+						.readDir(vertxFilesystem, sessionPath.toString(), "^(?!td\\.binlog(\\.synced|\\.bak)?$).*")
 						.flatMapMany(Flux::fromIterable)
 						.doOnNext(file -> logger.debug("Deleting session file {}", file))
-						.flatMap(file -> vertxFilesystem.rxDeleteRecursive(file, true).as(MonoUtils::toMono))
-						.then(vertxFilesystem.rxReadDir(mediaPath.toString(), "^(?!td.binlog$).*").as(MonoUtils::toMono))
+						.flatMap(file -> FileSystemUtils.deleteRecursive(vertxFilesystem, file, true))
+						.then(FileSystemUtils.readDir(vertxFilesystem, mediaPath.toString(), "^(?!td.binlog$).*"))
 						.flatMapMany(Flux::fromIterable)
 						.doOnNext(file -> logger.debug("Deleting media file {}", file))
-						.flatMap(file -> vertxFilesystem.rxDeleteRecursive(file, true).as(MonoUtils::toMono))
+						.flatMap(file -> FileSystemUtils.deleteRecursive(vertxFilesystem, file, true))
 						.onErrorResume(ex -> Mono.empty())
 						.then()
 				)
@@ -106,26 +541,78 @@ public class BinlogUtils {
 		return String.format("%.1f %ciB", value / 1024.0, ci.current());
 	}
 
-	public static Mono<Void> readBinlogConsumer(Vertx vertx,
-			MessageConsumer<byte[]> readBinlogConsumer,
+	/**
+	 * Emits when the binlog must be checkpointed, after {@code interval} has passed
+	 * or after {@code bytes} have been appended since the last checkpoint.
+	 * The binlog content at subscription time is assumed to be already synchronized.
+	 */
+	public static Flux<Long> checkpointTriggers(FileSystem vertxFilesystem,
+			Path binlogPath,
+			Duration pollInterval,
+			Duration interval,
+			long bytes) {
+		var path = binlogPath.toString();
+		return Flux.defer(() -> {
+			var lastSize = new AtomicLong(-1);
+			var lastModifiedTime = new AtomicLong(-1);
+			var lastCheckpointTime = new AtomicLong(System.currentTimeMillis());
+			return Flux
+					.interval(pollInterval)
+					.onBackpressureDrop()
+					.concatMap(tick -> FileSystemUtils.props(vertxFilesystem, path).onErrorResume(ex -> Mono.empty()))
+					.filter(props -> {
+						if (lastSize.get() < 0) {
+							lastSize.set(props.size());
+							lastModifiedTime.set(props.lastModifiedTime());
+							return false;
+						}
+						if (props.size() == lastSize.get() && props.lastModifiedTime() == lastModifiedTime.get()) {
+							return false;
+						}
+						long now = System.currentTimeMillis();
+						boolean due = Math.abs(props.size() - lastSize.get()) >= bytes
+								|| now - lastCheckpointTime.get() >= interval.toMillis();
+						if (due) {
+							lastSize.set(props.size());
+							lastModifiedTime.set(props.lastModifiedTime());
+							lastCheckpointTime.set(now);
+						}
+						return due;
+					})
+					.map(FileProps::size);
+		});
+	}
+
+	/**
+	 * Synchronize the session binlog with the client archive, one transfer at a time.
+	 * <p>
+	 * For every request the server asks the client for the checksums of its archive
+	 * on {@code .binlog-checkpoint}, then it sends the changed blocks.
+	 * The request sink is completed when the binlog has been synchronized.
+	 * The binlog is kept in memory between the transfers while it doesn't change.
+	 */
+	public static Mono<Void> serveBinlogSyncs(Vertx vertx,
+			Flux<Empty<Void>> syncRequests,
 			int botId,
+			String botAddress,
 			boolean local) {
-		return Flux
-				.<Message<byte[]>>create(sink -> {
-					readBinlogConsumer.handler(sink::next);
-					readBinlogConsumer.endHandler(h -> sink.complete());
-				})
-				.flatMapSequential(req -> BinlogUtils
-						.retrieveBinlog(vertx.fileSystem(), TDLibRemoteClient.getSessionBinlogDirectory(botId))
-						.flatMap(BinlogAsyncFile::readFully)
-						.map(Buffer::copy)
-						.single()
-						.map(binlog -> Tuples.of(req, binlog))
+		var binlogPath = TDLibRemoteClient.getSessionBinlogDirectory(botId);
+		var binlogCache = new BinlogCache(vertx.fileSystem(), binlogPath, MAX_CACHED_BINLOG_SIZE);
+		var opts = new DeliveryOptions().setLocalOnly(local).setSendTimeout(Duration.ofSeconds(10).toMillis());
+		return syncRequests
+				.concatMap(syncRequest -> EventBusUtils
+						.<BinlogChecksums>request(vertx.eventBus(), botAddress + ".binlog-checkpoint", EMPTY, opts)
+						.doOnSubscribe(s -> logger.debug("Sending a checkpoint of the binlog " + binlogPath))
+						.flatMap(reply -> sendChunks(reply, binlogCache, reply.body(), opts))
+						.flatMap(last -> writeSyncedHash(vertx.fileSystem(), binlogPath, last.hash()))
+						.doOnSuccess(s -> syncRequest.tryEmitEmpty())
+						.onErrorResume(ex -> {
+							logger.error("Failed to send the binlog " + binlogPath, ex);
+							syncRequest.tryEmitError(ex);
+							return Mono.empty();
+						})
 				)
-				.doOnNext(tuple -> {
-					var opts = new DeliveryOptions().setLocalOnly(local).setSendTimeout(Duration.ofSeconds(10).toMillis());
-					tuple.getT1().reply(new EndSessionMessage(botId, tuple.getT2()), opts);
-				})
+				.doFinally(signalType -> binlogCache.invalidate())
 				.then()
 				.publishOn(Schedulers.boundedElastic());
 	}
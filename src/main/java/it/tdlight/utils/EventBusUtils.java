@@ -0,0 +1,59 @@
+package it.tdlight.utils;
+
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.reactivex.core.eventbus.EventBus;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.core.eventbus.MessageProducer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactor adapters for the Vert.x event bus.
+ * <p>
+ * They call the core Vert.x API directly, instead of converting the RxJava2 types to Reactor.
+ */
+public class EventBusUtils {
+
+	public static <T> Mono<Message<T>> request(EventBus eventBus, String address, Object message) {
+		return MonoUtils.fromFuture(() -> eventBus.getDelegate().<T>request(address, message));
+	}
+
+	public static <T> Mono<Message<T>> request(EventBus eventBus,
+			String address,
+			Object message,
+			DeliveryOptions options) {
+		return MonoUtils.fromFuture(() -> eventBus.getDelegate().<T>request(address, message, options));
+	}
+
+	/**
+	 * Reply to a message and wait for the reply of the sender, keeping the conversation on the same nodes
+	 */
+	public static <T> Mono<Message<T>> replyAndRequest(Message<?> message, Object reply, DeliveryOptions options) {
+		return MonoUtils.fromFuture(() -> message.<T>replyAndRequest(reply, options));
+	}
+
+	public static <T> Mono<Void> write(MessageProducer<T> messageProducer, T body) {
+		return MonoUtils.fromFuture(() -> messageProducer.getDelegate().write(body));
+	}
+
+	public static Mono<Void> close(MessageProducer<?> messageProducer) {
+		return MonoUtils.fromFuture(() -> messageProducer.getDelegate().close());
+	}
+
+	/**
+	 * @return a Mono that completes when the consumer registration has been propagated across the cluster
+	 */
+	public static Mono<Void> completion(MessageConsumer<?> messageConsumer) {
+		return Mono.create(sink -> messageConsumer.getDelegate().completionHandler(result -> {
+			if (result.succeeded()) {
+				sink.success();
+			} else {
+				sink.error(result.cause());
+			}
+		}));
+	}
+
+	public static Mono<Void> unregister(MessageConsumer<?> messageConsumer) {
+		return MonoUtils.fromFuture(() -> messageConsumer.getDelegate().unregister());
+	}
+}
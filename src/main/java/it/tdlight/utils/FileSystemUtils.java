@@ -0,0 +1,73 @@
+package it.tdlight.utils;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.FileProps;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.reactivex.core.file.FileSystem;
+import java.util.List;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactor adapters for the Vert.x filesystem.
+ * <p>
+ * They call the core Vert.x API directly, instead of converting the RxJava2 types to Reactor.
+ */
+public class FileSystemUtils {
+
+	public static Mono<Boolean> exists(FileSystem fileSystem, String path) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().exists(path));
+	}
+
+	public static Mono<Void> mkdirs(FileSystem fileSystem, String path) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().mkdirs(path));
+	}
+
+	public static Mono<Void> createFile(FileSystem fileSystem, String path) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().createFile(path));
+	}
+
+	public static Mono<FileProps> props(FileSystem fileSystem, String path) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().props(path));
+	}
+
+	public static Mono<Buffer> readFile(FileSystem fileSystem, String path) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().readFile(path));
+	}
+
+	public static Mono<Void> writeFile(FileSystem fileSystem, String path, Buffer data) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().writeFile(path, data));
+	}
+
+	public static Mono<List<String>> readDir(FileSystem fileSystem, String path, String filter) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().readDir(path, filter));
+	}
+
+	public static Mono<Void> deleteRecursive(FileSystem fileSystem, String path, boolean recursive) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().deleteRecursive(path, recursive));
+	}
+
+	public static Mono<Void> truncate(FileSystem fileSystem, String path, long len) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().truncate(path, len));
+	}
+
+	public static Mono<AsyncFile> open(FileSystem fileSystem, String path, OpenOptions options) {
+		return MonoUtils.fromFuture(() -> fileSystem.getDelegate().open(path, options));
+	}
+
+	public static Mono<Buffer> read(AsyncFile asyncFile, Buffer buffer, int offset, long position, int length) {
+		return MonoUtils.fromFuture(() -> asyncFile.read(buffer, offset, position, length));
+	}
+
+	public static Mono<Void> write(AsyncFile asyncFile, Buffer buffer, long position) {
+		return MonoUtils.fromFuture(() -> asyncFile.write(buffer, position));
+	}
+
+	public static Mono<Void> flush(AsyncFile asyncFile) {
+		return MonoUtils.fromFuture(asyncFile::flush);
+	}
+
+	public static Mono<Void> close(AsyncFile asyncFile) {
+		return MonoUtils.fromFuture(asyncFile::close);
+	}
+}
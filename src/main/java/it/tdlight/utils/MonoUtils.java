@@ -141,6 +141,20 @@ public class MonoUtils {
 		}));
 	}
 
+	/**
+	 * Convert a Vert.x future to a Mono without passing through RxJava.
+	 * The future is created only when the Mono is subscribed
+	 */
+	public static <T> Mono<T> fromFuture(Supplier<? extends Future<T>> futureSupplier) {
+		return Mono.create(sink -> futureSupplier.get().onComplete(result -> {
+			if (result.succeeded()) {
+				sink.success(result.result());
+			} else {
+				sink.error(result.cause());
+			}
+		}));
+	}
+
 	@NotNull
 	public static <T> Mono<T> toMono(Single<T> single) {
 		return Mono.from(single.toFlowable());
@@ -241,7 +255,7 @@ public class MonoUtils {
 
 		Mono<MessageConsumer<T>> registrationCompletionMono = Mono
 				.fromRunnable(() -> logger.trace("Waiting for consumer registration completion..."))
-				.<Void>then(messageConsumer.rxCompletionHandler().as(MonoUtils::toMono))
+				.then(EventBusUtils.completion(messageConsumer))
 				.doOnSuccess(s -> logger.trace("Consumer registered"))
 				.then(onRegistered)
 				.thenReturn(messageConsumer);
@@ -253,9 +267,8 @@ public class MonoUtils {
 		Flux<Message<T>> dataFlux = Flux
 				.push(sink -> sink.onRequest(n -> messageConsumer.handler(sink::next)), OverflowStrategy.ERROR);
 
-		Mono<Void> disposeMono = messageConsumer
-				.rxUnregister()
-				.as(MonoUtils::<Message<T>>toMono)
+		Mono<Void> disposeMono = EventBusUtils
+				.unregister(messageConsumer)
 				.doOnSuccess(s -> logger.trace("Unregistered message consumer"))
 				.then();
 
@@ -0,0 +1,143 @@
+package it.tdlight.tdlibsession.remoteclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.Empty;
+
+public class BotStartQueueTest {
+
+	/**
+	 * A start that runs until it's completed by the test
+	 */
+	private static final class ControlledStart {
+
+		private final Empty<Void> completion = Sinks.empty();
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		private Mono<Void> mono(List<Long> startOrder, long botId) {
+			return Mono.defer(() -> {
+				started.set(true);
+				startOrder.add(botId);
+				return completion.asMono();
+			});
+		}
+	}
+
+	@Test
+	public void queuedStartsRunByPriorityThenByArrival() {
+		var queue = new BotStartQueue(1);
+		var startOrder = new CopyOnWriteArrayList<Long>();
+		var blocker = new ControlledStart();
+		queue.enqueue(0, 0, blocker.mono(startOrder, 0)).subscribe();
+		queue.enqueue(1, 0, Mono.fromRunnable(() -> startOrder.add(1L))).subscribe();
+		queue.enqueue(2, 5, Mono.fromRunnable(() -> startOrder.add(2L))).subscribe();
+		queue.enqueue(3, 0, Mono.fromRunnable(() -> startOrder.add(3L))).subscribe();
+		queue.enqueue(4, 5, Mono.fromRunnable(() -> startOrder.add(4L))).subscribe();
+		assertEquals(4, queue.getQueueDepth());
+
+		blocker.completion.tryEmitEmpty();
+		assertEquals(List.of(0L, 2L, 4L, 1L, 3L), startOrder);
+		assertEquals(0, queue.getQueueDepth());
+		assertEquals(5, queue.getCompletedStarts());
+	}
+
+	@Test
+	public void runningStartsAreBoundedByTheConcurrency() {
+		var queue = new BotStartQueue(2);
+		var startOrder = new CopyOnWriteArrayList<Long>();
+		var starts = List.of(new ControlledStart(), new ControlledStart(), new ControlledStart(), new ControlledStart());
+		for (int i = 0; i < starts.size(); i++) {
+			queue.enqueue(i, 0, starts.get(i).mono(startOrder, i)).subscribe();
+		}
+		assertEquals(2, queue.getRunningStarts());
+		assertEquals(2, queue.getQueueDepth());
+		assertEquals(List.of(0L, 1L), startOrder);
+
+		starts.get(1).completion.tryEmitEmpty();
+		assertEquals(2, queue.getRunningStarts());
+		assertEquals(1, queue.getQueueDepth());
+		assertEquals(List.of(0L, 1L, 2L), startOrder);
+
+		starts.get(0).completion.tryEmitEmpty();
+		starts.get(2).completion.tryEmitEmpty();
+		assertEquals(1, queue.getRunningStarts());
+		assertEquals(0, queue.getQueueDepth());
+		starts.get(3).completion.tryEmitEmpty();
+		assertEquals(0, queue.getRunningStarts());
+		assertEquals(4, queue.getCompletedStarts());
+	}
+
+	@Test
+	public void failedStartsAreCountedAndReleaseTheirSlot() {
+		var queue = new BotStartQueue(1);
+		var error = new AtomicReference<Throwable>();
+		var failure = new IllegalStateException("start failed");
+		queue.enqueue(1, 0, Mono.error(failure)).subscribe(v -> {}, error::set);
+		assertSame(failure, error.get());
+		assertEquals(1, queue.getFailedStarts());
+		assertEquals(0, queue.getCompletedStarts());
+		assertEquals(0, queue.getRunningStarts());
+
+		var completed = new AtomicBoolean();
+		queue.enqueue(2, 0, Mono.empty()).subscribe(v -> {}, ex -> {}, () -> completed.set(true));
+		assertTrue(completed.get());
+		assertEquals(1, queue.getCompletedStarts());
+	}
+
+	@Test
+	public void cancelledStartsAreRemovedFromTheQueue() {
+		var queue = new BotStartQueue(1);
+		var startOrder = new CopyOnWriteArrayList<Long>();
+		var blocker = new ControlledStart();
+		var cancelled = new ControlledStart();
+		queue.enqueue(0, 0, blocker.mono(startOrder, 0)).subscribe();
+		Disposable subscription = queue.enqueue(1, 0, cancelled.mono(startOrder, 1)).subscribe();
+		assertEquals(1, queue.getQueueDepth());
+
+		subscription.dispose();
+		assertEquals(0, queue.getQueueDepth());
+		blocker.completion.tryEmitEmpty();
+		assertFalse(cancelled.started.get());
+		assertEquals(0, queue.getRunningStarts());
+	}
+
+	@Test
+	public void rejectPendingFailsQueuedAndNewStarts() {
+		var queue = new BotStartQueue(1);
+		var startOrder = new CopyOnWriteArrayList<Long>();
+		var running = new ControlledStart();
+		var runningCompleted = new AtomicBoolean();
+		queue.enqueue(0, 0, running.mono(startOrder, 0)).subscribe(v -> {}, ex -> {}, () -> runningCompleted.set(true));
+		var queuedError = new AtomicReference<Throwable>();
+		queue.enqueue(1, 0, Mono.fromRunnable(() -> startOrder.add(1L))).subscribe(v -> {}, queuedError::set);
+
+		var rejection = new IllegalStateException("draining");
+		queue.rejectPending(rejection);
+		assertSame(rejection, queuedError.get());
+		assertEquals(0, queue.getQueueDepth());
+
+		var newError = new AtomicReference<Throwable>();
+		queue.enqueue(2, 0, Mono.fromRunnable(() -> startOrder.add(2L))).subscribe(v -> {}, newError::set);
+		assertSame(rejection, newError.get());
+
+		var awaited = new AtomicInteger();
+		queue.awaitRunningStarts().subscribe(v -> {}, ex -> {}, awaited::incrementAndGet);
+		assertEquals(0, awaited.get());
+		running.completion.tryEmitEmpty();
+		assertTrue(runningCompleted.get());
+		assertEquals(1, awaited.get());
+		assertEquals(List.of(0L), startOrder);
+	}
+}
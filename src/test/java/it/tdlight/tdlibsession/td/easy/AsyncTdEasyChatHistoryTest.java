@@ -0,0 +1,144 @@
+package it.tdlight.tdlibsession.td.easy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.TdResult;
+import it.tdlight.tdlibsession.td.middle.AsyncTdMiddle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class AsyncTdEasyChatHistoryTest {
+
+	private static final long CHAT_ID = 1234;
+
+	/**
+	 * Chat with the messages from 1 to messageCount, that answers like TDLib:
+	 * the pages can be shorter than the limit, and they can include the message the page starts from
+	 */
+	private static final class FakeChat implements AsyncTdMiddle {
+
+		private final long messageCount;
+		private final int maxPageSize;
+		private final boolean includeFromMessage;
+		private final AtomicInteger requests = new AtomicInteger();
+		private volatile long failAfterMessageId = -1;
+
+		private FakeChat(long messageCount, int maxPageSize, boolean includeFromMessage) {
+			this.messageCount = messageCount;
+			this.maxPageSize = maxPageSize;
+			this.includeFromMessage = includeFromMessage;
+		}
+
+		@Override
+		public Mono<Void> initialize() {
+			return Mono.empty();
+		}
+
+		@Override
+		public Flux<TdApi.Object> receive() {
+			return Flux.never();
+		}
+
+		@Override
+		public <T extends TdApi.Object> Mono<TdResult<T>> execute(TdApi.Function request, boolean executeDirectly) {
+			return Mono.fromCompletionStage(executeAsync(request));
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T extends TdApi.Object> CompletionStage<TdResult<T>> executeAsync(TdApi.Function request) {
+			requests.incrementAndGet();
+			var getChatHistory = (TdApi.GetChatHistory) request;
+			assertEquals(CHAT_ID, getChatHistory.chatId);
+			long from = getChatHistory.fromMessageId;
+			if (from != 0 && from <= failAfterMessageId) {
+				return CompletableFuture.completedFuture(TdResult.failed(new TdApi.Error(500, "Request failed")));
+			}
+			long newest = from == 0 ? messageCount : (includeFromMessage ? from : from - 1);
+			int size = Math.min(getChatHistory.limit, maxPageSize);
+			var messages = new ArrayList<TdApi.Message>();
+			for (long id = newest; id >= 1 && messages.size() < size; id--) {
+				var message = new TdApi.Message();
+				message.id = id;
+				message.chatId = CHAT_ID;
+				messages.add(message);
+			}
+			var result = new TdApi.Messages();
+			result.totalCount = messages.size();
+			result.messages = messages.toArray(TdApi.Message[]::new);
+			return CompletableFuture.completedFuture((TdResult<T>) TdResult.succeeded(result));
+		}
+	}
+
+	private static List<Long> messageIds(List<TdApi.Message> messages) {
+		return messages.stream().map(message -> message.id).collect(Collectors.toList());
+	}
+
+	private static List<Long> descendingIds(long from, long to) {
+		return LongStream.rangeClosed(to, from).map(id -> from + to - id).boxed().collect(Collectors.toList());
+	}
+
+	@Test
+	public void partialPagesDontEndTheHistory() {
+		var chat = new FakeChat(25, 3, false);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 10, false).collectList().block();
+		assertEquals(descendingIds(25, 1), messageIds(messages));
+	}
+
+	@Test
+	public void messagesOfThePreviousPageAreNotRepeated() {
+		var chat = new FakeChat(25, 10, true);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 10, false).collectList().block();
+		assertEquals(descendingIds(25, 1), messageIds(messages));
+	}
+
+	@Test
+	public void historyStartsFromTheGivenMessage() {
+		var chat = new FakeChat(25, 10, true);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 12, 5, false).collectList().block();
+		assertEquals(descendingIds(12, 1), messageIds(messages));
+	}
+
+	@Test
+	public void singleMessagePagesReachTheEndOfTheHistory() {
+		var chat = new FakeChat(25, 100, true);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 1, false).collectList().block();
+		assertEquals(descendingIds(25, 1), messageIds(messages));
+	}
+
+	@Test
+	public void shortRepliesStartingWithThePreviousMessageDontEndTheHistory() {
+		// Every page after the first one holds the oldest message of the previous page and one older message
+		var chat = new FakeChat(25, 2, true);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 2, false).collectList().block();
+		assertEquals(descendingIds(25, 1), messageIds(messages));
+	}
+
+	@Test
+	public void pagesAreRequestedOnlyWhenConsumed() {
+		var chat = new FakeChat(100, 10, false);
+		var messages = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 10, false).take(15).collectList().block();
+		assertEquals(descendingIds(100, 86), messageIds(messages));
+		// At most the pages prefetched while consuming the second one, out of the 10 pages of the chat
+		assertTrue(chat.requests.get() <= 4, "Requested " + chat.requests.get() + " pages");
+	}
+
+	@Test
+	public void failedPagesFailTheHistory() {
+		var chat = new FakeChat(25, 10, false);
+		chat.failAfterMessageId = 15;
+		var history = new AsyncTdEasy(chat, "test").getChatHistory(CHAT_ID, 0, 10, false);
+		assertThrows(RuntimeException.class, () -> history.collectList().block());
+	}
+}
@@ -0,0 +1,107 @@
+package it.tdlight.tdlibsession.td.easy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.TdResult;
+import it.tdlight.tdlibsession.td.middle.AsyncTdMiddle;
+import it.tdlight.utils.AllocationMeter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the cost of the updates received by {@link AsyncTdEasy} one at a time, like before the batches
+ * were carried end to end, with the cost of the same updates received in batches.
+ * <p>
+ * The middle is a synchronous fake, so only the work done by AsyncTdEasy is measured,
+ * the event bus and the interception of the event bus client are not included.
+ */
+@EnabledIfSystemProperty(named = AllocationMeter.BENCHMARKS_PROPERTY, matches = "true")
+public class AsyncTdEasyUpdatesBenchmarkTest {
+
+	private static final int UPDATES = 100_000;
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * Emits the updates one at a time, {@link AsyncTdMiddle#receiveBatches()} wraps each of them in its own batch
+	 */
+	private static class SingleUpdatesMiddle implements AsyncTdMiddle {
+
+		protected final List<List<TdApi.Object>> batches;
+
+		private SingleUpdatesMiddle(List<List<TdApi.Object>> batches) {
+			this.batches = batches;
+		}
+
+		@Override
+		public Mono<Void> initialize() {
+			return Mono.empty();
+		}
+
+		@Override
+		public Flux<TdApi.Object> receive() {
+			return Flux.fromIterable(batches).flatMapIterable(batch -> batch);
+		}
+
+		@Override
+		public <T extends TdApi.Object> Mono<TdResult<T>> execute(TdApi.Function request, boolean executeDirectly) {
+			return Mono.error(new UnsupportedOperationException());
+		}
+
+		@Override
+		public <T extends TdApi.Object> CompletionStage<TdResult<T>> executeAsync(TdApi.Function request) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static final class BatchedUpdatesMiddle extends SingleUpdatesMiddle {
+
+		private BatchedUpdatesMiddle(List<List<TdApi.Object>> batches) {
+			super(batches);
+		}
+
+		@Override
+		public Flux<List<TdApi.Object>> receiveBatches() {
+			return Flux.fromIterable(batches);
+		}
+	}
+
+	/**
+	 * A batch with the ready authorization state, followed by the batches of plain updates
+	 */
+	private static List<List<TdApi.Object>> batches() {
+		var batches = new ArrayList<List<TdApi.Object>>();
+		batches.add(List.of(new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateReady())));
+		for (int i = 0; i < UPDATES; i += BATCH_SIZE) {
+			var batch = new ArrayList<TdApi.Object>(BATCH_SIZE);
+			for (int j = 0; j < BATCH_SIZE; j++) {
+				batch.add(new TdApi.UpdateOption("option" + j, new TdApi.OptionValueInteger(i + j)));
+			}
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	private static AllocationMeter.Measurement measure(String name, AsyncTdMiddle middle) {
+		var tdEasy = new AsyncTdEasy(middle, "benchmark");
+		return AllocationMeter.measure(name, UPDATES, () -> {
+			long received = tdEasy.getIncomingUpdates().count().block();
+			assertEquals(UPDATES, received);
+		});
+	}
+
+	@Test
+	public void batchedUpdatesAreCheaperThanSingleUpdates() {
+		var batches = batches();
+		var single = measure("AsyncTdEasy, single updates", new SingleUpdatesMiddle(batches));
+		var batched = measure("AsyncTdEasy, batches of " + BATCH_SIZE + " updates", new BatchedUpdatesMiddle(batches));
+		assertTrue(batched.bytesPerOperation() < single.bytesPerOperation(),
+				"Batched: " + batched + ", single: " + single);
+	}
+}
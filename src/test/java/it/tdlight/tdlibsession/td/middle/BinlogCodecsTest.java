@@ -0,0 +1,73 @@
+package it.tdlight.tdlibsession.td.middle;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+public class BinlogCodecsTest {
+
+	private static BinlogChunk roundTrip(BinlogChunk chunk) {
+		var codec = new BinlogChunkCodec();
+		var buffer = Buffer.buffer();
+		codec.encodeToWire(buffer, chunk);
+		return codec.decodeFromWire(0, buffer);
+	}
+
+	private static BinlogChecksums roundTrip(BinlogChecksums checksums) {
+		var codec = new BinlogChecksumsCodec();
+		var buffer = Buffer.buffer();
+		codec.encodeToWire(buffer, checksums);
+		return codec.decodeFromWire(0, buffer);
+	}
+
+	@Test
+	public void dataChunkRoundTrip() {
+		var data = new byte[]{1, 2, 3, 4, 5};
+		var decoded = roundTrip(BinlogChunk.of(65536, io.vertx.reactivex.core.buffer.Buffer.buffer(data)));
+		assertFalse(decoded.isLast());
+		assertFalse(decoded.isCompressed());
+		assertEquals(65536, decoded.offset());
+		assertArrayEquals(data, decoded.data().getBytes());
+	}
+
+	@Test
+	public void compressedChunkRoundTrip() {
+		var data = new byte[]{9, 8, 7};
+		var decoded = roundTrip(BinlogChunk.compressed(131072, io.vertx.reactivex.core.buffer.Buffer.buffer(data)));
+		assertFalse(decoded.isLast());
+		assertTrue(decoded.isCompressed());
+		assertEquals(131072, decoded.offset());
+		assertArrayEquals(data, decoded.data().getBytes());
+	}
+
+	@Test
+	public void lastChunkRoundTrip() {
+		var hash = new byte[32];
+		hash[0] = 42;
+		hash[31] = -1;
+		var decoded = roundTrip(BinlogChunk.last(123456789L, hash));
+		assertTrue(decoded.isLast());
+		assertEquals(123456789L, decoded.size());
+		assertArrayEquals(hash, decoded.hash());
+	}
+
+	@Test
+	public void checksumsRoundTrip() {
+		var checksums = new BinlogChecksums(65536, 200000, new int[]{0, -1, Integer.MIN_VALUE, 12345});
+		var decoded = roundTrip(checksums);
+		assertEquals(checksums.blockSize(), decoded.blockSize());
+		assertEquals(checksums.size(), decoded.size());
+		assertArrayEquals(checksums.checksums(), decoded.checksums());
+	}
+
+	@Test
+	public void emptyChecksumsRoundTrip() {
+		var decoded = roundTrip(new BinlogChecksums(65536, 0, new int[0]));
+		assertEquals(0, decoded.size());
+		assertEquals(0, decoded.checksums().length);
+	}
+}
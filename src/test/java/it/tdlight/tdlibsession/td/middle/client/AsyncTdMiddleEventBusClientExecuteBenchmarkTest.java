@@ -0,0 +1,88 @@
+package it.tdlight.tdlibsession.td.middle.client;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.reactivex.core.Vertx;
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.middle.ExecuteObject;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.tdlibsession.td.middle.TdResultMessage;
+import it.tdlight.utils.AllocationMeter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the cost of the fire-and-forget requests sent with {@link AsyncTdMiddleEventBusClient#execute}
+ * and with {@link AsyncTdMiddleEventBusClient#executeAsync}.
+ * <p>
+ * The requests are replied by a local consumer with {@link TdApi.Ok}, without TDLib and without a cluster.
+ * The allocations of all the threads are counted, because the replies are handled by the event loop.
+ */
+@EnabledIfSystemProperty(named = AllocationMeter.BENCHMARKS_PROPERTY, matches = "true")
+public class AsyncTdMiddleEventBusClientExecuteBenchmarkTest {
+
+	private static final int REQUESTS = 10_000;
+	private static final long BOT_ID = 1;
+
+	private static Vertx vertx;
+	private static AsyncTdMiddleEventBusClient client;
+
+	@BeforeAll
+	public static void setUp() throws ReflectiveOperationException {
+		vertx = Vertx.vertx();
+		var cluster = new TdClusterManager(null, new VertxOptions(), vertx);
+		var botAddress = "bots.bot." + BOT_ID;
+		cluster.getEventBus().getDelegate().<ExecuteObject>consumer(botAddress + ".execute",
+				msg -> msg.reply(new TdResultMessage(new TdApi.Ok(), null))
+		);
+		client = new AsyncTdMiddleEventBusClient(cluster);
+		// The bot is not started, only the fields used by the requests are set
+		setField("botAddress", botAddress);
+		setField("botAlias", "benchmark");
+	}
+
+	private static void setField(String name, Object value) throws ReflectiveOperationException {
+		var field = AsyncTdMiddleEventBusClient.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(client, value);
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		vertx.close();
+	}
+
+	private static void await(CountDownLatch replies) {
+		try {
+			assertTrue(replies.await(1, TimeUnit.MINUTES), "Not all the requests have been replied");
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void executeAsyncIsCheaperThanExecute() {
+		var request = new TdApi.GetOption("version");
+		var execute = AllocationMeter.measureAllThreads("execute", REQUESTS, () -> {
+			var replies = new CountDownLatch(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++) {
+				client.<TdApi.Object>execute(request, false).subscribe(result -> replies.countDown());
+			}
+			await(replies);
+		});
+		var executeAsync = AllocationMeter.measureAllThreads("executeAsync", REQUESTS, () -> {
+			var replies = new CountDownLatch(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++) {
+				client.<TdApi.Object>executeAsync(request).thenAccept(result -> replies.countDown());
+			}
+			await(replies);
+		});
+		assertTrue(executeAsync.bytesPerOperation() < execute.bytesPerOperation(),
+				"executeAsync: " + executeAsync + ", execute: " + execute);
+	}
+}
@@ -0,0 +1,68 @@
+package it.tdlight.tdlibsession.td.middle.client;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.reactivex.core.Vertx;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BotLivenessMonitorTest {
+
+	private TdClusterManager cluster;
+
+	@BeforeEach
+	public void setUp() {
+		cluster = new TdClusterManager(null, new VertxOptions(), Vertx.vertx());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cluster.close().block();
+	}
+
+	@Test
+	public void eachWatcherOfTheSameBotIsNotified() {
+		var monitor = BotLivenessMonitor.of(cluster);
+		var first = monitor.watch(1).toFuture();
+		var second = monitor.watch(1).toFuture();
+		var third = monitor.watch(1).subscribe();
+		third.dispose();
+
+		cluster.close().block();
+		assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.MINUTES));
+		assertThrows(ExecutionException.class, () -> second.get(1, TimeUnit.MINUTES));
+	}
+
+	@Test
+	public void cancellingAWatcherDoesntStopTheOthers() {
+		var monitor = BotLivenessMonitor.of(cluster);
+		var cancelled = monitor.watch(1).toFuture();
+		var watching = monitor.watch(1).toFuture();
+		cancelled.cancel(true);
+
+		assertFalse(watching.isDone());
+		cluster.close().block();
+		assertTrue(watching.isCompletedExceptionally());
+	}
+
+	@Test
+	public void closingTheClusterForgetsItsMonitor() {
+		var monitor = BotLivenessMonitor.of(cluster);
+		assertSame(monitor, BotLivenessMonitor.of(cluster));
+		monitor.watch(1).subscribe(v -> {}, ex -> {});
+
+		cluster.close().block();
+		var newMonitor = BotLivenessMonitor.of(cluster);
+		assertNotSame(monitor, newMonitor);
+		assertThrows(IllegalStateException.class, () -> newMonitor.watch(1).block());
+	}
+}
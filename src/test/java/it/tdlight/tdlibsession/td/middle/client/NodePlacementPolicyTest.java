@@ -0,0 +1,98 @@
+package it.tdlight.tdlibsession.td.middle.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.tdlibsession.td.middle.NodeLoad;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class NodePlacementPolicyTest {
+
+	private static NodeLoad load(String nodeId, int activeDeployments, int startQueueDepth, int runningStarts) {
+		return load(nodeId, activeDeployments, startQueueDepth, runningStarts, 0.1, 0.1, false, false);
+	}
+
+	private static NodeLoad load(String nodeId,
+			int activeDeployments,
+			int startQueueDepth,
+			int runningStarts,
+			double cpuLoad,
+			double heapUsage,
+			boolean draining,
+			boolean overloaded) {
+		return new NodeLoad(nodeId,
+				activeDeployments,
+				(long) (heapUsage * 1000),
+				1000,
+				0,
+				cpuLoad,
+				0,
+				draining,
+				overloaded,
+				startQueueDepth,
+				runningStarts,
+				0,
+				System.currentTimeMillis()
+		);
+	}
+
+	@Test
+	public void scoreGrowsWithTheLoad() {
+		double base = NodePlacementPolicy.score(load("a", 0, 0, 0, 0.2, 0.2, false, false), 2, 10);
+		assertTrue(NodePlacementPolicy.score(load("a", 0, 0, 0, 0.8, 0.2, false, false), 2, 10) > base);
+		assertTrue(NodePlacementPolicy.score(load("a", 0, 0, 0, 0.2, 0.8, false, false), 2, 10) > base);
+		assertTrue(NodePlacementPolicy.score(load("a", 0, 0, 0, 0.2, 0.2, false, false), 8, 10) > base);
+	}
+
+	@Test
+	public void queuedStartsAreCountedAsDeployments() {
+		var policy = new NodePlacementPolicy(null);
+		var loads = List.of(load("a", 2, 5, 0), load("b", 4, 0, 0));
+		assertEquals(Optional.of("b"), policy.chooseNode(loads, null));
+	}
+
+	@Test
+	public void runningStartsAreCountedAsDeployments() {
+		var policy = new NodePlacementPolicy(null);
+		var loads = List.of(load("a", 2, 0, 5), load("b", 4, 0, 0));
+		assertEquals(Optional.of("b"), policy.chooseNode(loads, null));
+	}
+
+	@Test
+	public void recentPlacementsSpreadTheBots() {
+		var policy = new NodePlacementPolicy(null);
+		// The load is not published again between the placements
+		var loads = List.of(load("a", 3, 0, 0), load("b", 3, 0, 0));
+		Map<String, Integer> placements = new HashMap<>();
+		for (int i = 0; i < 10; i++) {
+			policy.chooseNode(loads, null).ifPresent(nodeId -> placements.merge(nodeId, 1, Integer::sum));
+		}
+		assertEquals(Map.of("a", 5, "b", 5), placements);
+	}
+
+	@Test
+	public void recentPlacementsSurviveANewPublication() {
+		var policy = new NodePlacementPolicy(null);
+		assertEquals(Optional.of("a"), policy.chooseNode(List.of(load("a", 3, 0, 0), load("b", 4, 0, 0)), null));
+		assertEquals(Optional.of("a"), policy.chooseNode(List.of(load("a", 3, 0, 0), load("b", 4, 0, 0)), null));
+		// Node a published again before receiving the start requests
+		assertEquals(Optional.of("b"), policy.chooseNode(List.of(load("a", 3, 0, 0), load("b", 4, 0, 0)), null));
+	}
+
+	@Test
+	public void ineligibleNodesAreNotChosen() {
+		var policy = new NodePlacementPolicy(null);
+		var loads = List.of(load("draining", 0, 0, 0, 0, 0, true, false),
+				load("overloaded", 0, 0, 0, 0, 0, false, true),
+				load("full-heap", 0, 0, 0, 0, 0.95, false, false),
+				load("excluded", 0, 0, 0, 0, 0, false, false),
+				load("busy", 50, 0, 0, 0.9, 0.8, false, false)
+		);
+		assertEquals(Optional.of("busy"), policy.chooseNode(loads, "excluded"));
+		assertEquals(Optional.empty(), policy.chooseNode(loads.subList(0, 4), "excluded"));
+	}
+}
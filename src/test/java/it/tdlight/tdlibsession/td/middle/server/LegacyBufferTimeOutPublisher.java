@@ -1,8 +1,4 @@
-package it.tdlight.utils;
-
-/** Based on:
- * https://gist.github.com/glandais-sparklane/e38834aa9df0c56f23e2d8d2e6899c78
- */
+package it.tdlight.tdlibsession.td.middle.server;
 
 import java.time.Duration;
 import org.reactivestreams.Publisher;
@@ -17,8 +13,14 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * The BufferTimeOutPublisher removed from it.tdlight.utils, kept unchanged as the baseline of
+ * {@link TdUpdatesBatcherBenchmarkTest}.
+ * <p>
+ * Based on: https://gist.github.com/glandais-sparklane/e38834aa9df0c56f23e2d8d2e6899c78
+ */
 @SuppressWarnings("ReactiveStreamsPublisherImplementation")
-public class BufferTimeOutPublisher<T> implements Publisher<List<T>> {
+class LegacyBufferTimeOutPublisher<T> implements Publisher<List<T>> {
 
 	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
 
@@ -26,7 +28,7 @@ public class BufferTimeOutPublisher<T> implements Publisher<List<T>> {
 	private final int size;
 	private final long duration;
 
-	public BufferTimeOutPublisher(Publisher<T> source, int size, Duration duration) {
+	public LegacyBufferTimeOutPublisher(Publisher<T> source, int size, Duration duration) {
 		this.source = source;
 		this.size = size;
 		this.duration = duration.toMillis();
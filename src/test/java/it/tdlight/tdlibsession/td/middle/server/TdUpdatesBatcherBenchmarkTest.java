@@ -0,0 +1,124 @@
+package it.tdlight.tdlibsession.td.middle.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.jni.TdApi.AuthorizationStateClosed;
+import it.tdlight.jni.TdApi.Error;
+import it.tdlight.jni.TdApi.Update;
+import it.tdlight.jni.TdApi.UpdateAuthorizationState;
+import it.tdlight.tdlibsession.td.TdError;
+import it.tdlight.tdlibsession.td.middle.TdResultList;
+import it.tdlight.utils.AllocationMeter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the per-update cost of the updates pipeline of the server before {@link TdUpdatesBatcher},
+ * with the cost of TdUpdatesBatcher.
+ * <p>
+ * Both pipelines include the check for the closing batch done after the send, the send itself is not included.
+ * The timeout is long, so the batches are cut by size on the calling thread.
+ */
+@EnabledIfSystemProperty(named = AllocationMeter.BENCHMARKS_PROPERTY, matches = "true")
+public class TdUpdatesBatcherBenchmarkTest {
+
+	private static final int UPDATES = 100_000;
+	private static final int BATCH_SIZE = 100;
+	private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+	/**
+	 * The plain updates, followed by the closed authorization state
+	 */
+	private static List<TdApi.Object> updates() {
+		var updates = new ArrayList<TdApi.Object>(UPDATES + 1);
+		for (int i = 0; i < UPDATES; i++) {
+			updates.add(new TdApi.UpdateOption("option" + (i % BATCH_SIZE), new TdApi.OptionValueInteger(i)));
+		}
+		updates.add(new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateClosed()));
+		return updates;
+	}
+
+	/**
+	 * The pipeline of AsyncTdMiddleEventBusServer.pipe() before TdUpdatesBatcher
+	 */
+	private static Mono<Long> legacyPipeline(List<TdApi.Object> updates, AtomicInteger closingBatches) {
+		return Flux
+				.fromIterable(updates)
+				.takeUntil(item -> {
+					if (item instanceof Update) {
+						var tdUpdate = (Update) item;
+						if (tdUpdate.getConstructor() == UpdateAuthorizationState.CONSTRUCTOR) {
+							var updateAuthorizationState = (UpdateAuthorizationState) tdUpdate;
+							return updateAuthorizationState.authorizationState.getConstructor()
+									== AuthorizationStateClosed.CONSTRUCTOR;
+						}
+					} else
+						return item instanceof Error;
+					return false;
+				})
+				.flatMap(update -> Mono.fromCallable(() -> {
+					if (update.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+						var error = (Error) update;
+						throw new TdError(error.code, error.message);
+					} else {
+						return update;
+					}
+				}))
+				.limitRate(BATCH_SIZE)
+				.transform(normal -> new LegacyBufferTimeOutPublisher<>(normal, BATCH_SIZE, TIMEOUT))
+				.limitRate(BATCH_SIZE)
+				.map(TdResultList::new)
+				// The closed state was searched in every batch after sending it
+				.concatMap(updatesList -> Flux
+						.fromIterable(updatesList.value())
+						.concatMap(item -> {
+							if (TdUpdatesBatcher.isAuthorizationStateClosed(item)) {
+								closingBatches.incrementAndGet();
+							}
+							return Mono.just(item);
+						})
+						.then()
+						.thenReturn(updatesList)
+				)
+				.map(updatesList -> (long) updatesList.value().size())
+				.reduce(0L, Long::sum);
+	}
+
+	private static Mono<Long> batcherPipeline(List<TdApi.Object> updates, AtomicInteger closingBatches) {
+		return TdUpdatesBatcher
+				.batch(Flux.fromIterable(updates), BATCH_SIZE, TIMEOUT)
+				// The closed state can only be the last update of the last batch
+				.doOnNext(updatesList -> {
+					if (TdUpdatesBatcher.isClosingBatch(updatesList)) {
+						closingBatches.incrementAndGet();
+					}
+				})
+				.map(updatesList -> (long) updatesList.value().size())
+				.reduce(0L, Long::sum);
+	}
+
+	@Test
+	public void batcherIsCheaperThanTheLegacyPipeline() {
+		var updates = updates();
+		var legacy = AllocationMeter.measure("Legacy updates pipeline", UPDATES, () -> {
+			var closingBatches = new AtomicInteger();
+			assertEquals(UPDATES + 1L, legacyPipeline(updates, closingBatches).block());
+			assertEquals(1, closingBatches.get());
+		});
+		var batcher = AllocationMeter.measure("TdUpdatesBatcher", UPDATES, () -> {
+			var closingBatches = new AtomicInteger();
+			assertEquals(UPDATES + 1L, batcherPipeline(updates, closingBatches).block());
+			assertEquals(1, closingBatches.get());
+		});
+		assertTrue(batcher.bytesPerOperation() < legacy.bytesPerOperation(),
+				"TdUpdatesBatcher: " + batcher + ", legacy: " + legacy);
+	}
+}
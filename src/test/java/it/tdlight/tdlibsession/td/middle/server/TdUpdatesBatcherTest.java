@@ -0,0 +1,93 @@
+package it.tdlight.tdlibsession.td.middle.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.TdError;
+import it.tdlight.tdlibsession.td.middle.TdResultList;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+public class TdUpdatesBatcherTest {
+
+	private static final Duration LONG_DURATION = Duration.ofMinutes(1);
+
+	private static Flux<TdApi.Object> updates(int count) {
+		return Flux.range(0, count).map(i -> new TdApi.Ok());
+	}
+
+	private static TdApi.Object closedUpdate() {
+		return new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateClosed());
+	}
+
+	@Test
+	public void batchesAreNotLargerThanSize() {
+		var batches = TdUpdatesBatcher.batch(updates(25), 10, LONG_DURATION).collectList().block();
+		var sizes = batches.stream().map(batch -> batch.value().size()).collect(Collectors.toList());
+		assertEquals(List.of(10, 10, 5), sizes);
+	}
+
+	@Test
+	public void batchesAreEmittedOnlyWhenRequested() {
+		var received = new CopyOnWriteArrayList<TdResultList>();
+		var subscriber = new BaseSubscriber<TdResultList>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnNext(TdResultList value) {
+				received.add(value);
+			}
+		};
+		TdUpdatesBatcher.batch(updates(50), 10, LONG_DURATION).subscribe(subscriber);
+		assertEquals(1, received.size());
+		subscriber.request(2);
+		assertEquals(3, received.size());
+		subscriber.request(Long.MAX_VALUE);
+		assertEquals(5, received.size());
+		assertTrue(received.stream().allMatch(batch -> batch.value().size() == 10));
+	}
+
+	@Test
+	public void partialBatchIsEmittedAfterDuration() {
+		var source = Sinks.many().unicast().<TdApi.Object>onBackpressureBuffer();
+		var firstBatch = TdUpdatesBatcher.batch(source.asFlux(), 10, Duration.ofMillis(50)).next().toFuture();
+		source.tryEmitNext(new TdApi.Ok());
+		source.tryEmitNext(new TdApi.Ok());
+		source.tryEmitNext(new TdApi.Ok());
+		assertEquals(3, firstBatch.orTimeout(5, TimeUnit.SECONDS).join().value().size());
+	}
+
+	@Test
+	public void closedUpdateIsTheLastElement() {
+		var batches = TdUpdatesBatcher
+				.batch(Flux.concat(updates(3), Flux.just(closedUpdate()), updates(3)), 10, LONG_DURATION)
+				.collectList()
+				.block();
+		assertEquals(1, batches.size());
+		assertEquals(4, batches.get(0).value().size());
+		assertTrue(TdUpdatesBatcher.isClosingBatch(batches.get(0)));
+	}
+
+	@Test
+	public void errorUpdateFailsTheBatches() {
+		var batches = TdUpdatesBatcher.batch(Flux.concat(updates(3), Flux.just(new TdApi.Error(500, "Fatal"))),
+				10,
+				LONG_DURATION
+		);
+		var ex = assertThrows(TdError.class, batches::blockLast);
+		assertTrue(ex.getMessage().contains("Fatal"));
+	}
+}
@@ -0,0 +1,121 @@
+package it.tdlight.utils;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the time and the heap allocated per operation by a benchmark run.
+ * <p>
+ * The allocations are read from the HotSpot thread allocation counters. {@link #measure(String, long, Runnable)}
+ * counts only the allocations of the calling thread, so the measured code must run synchronously on it.
+ * {@link #measureAllThreads(String, long, Runnable)} counts the allocations of all the live threads,
+ * for the code that hops to the event loops, the threads started during a run are not counted.
+ * Each measurement keeps the best of its runs, after the warmup runs.
+ * <p>
+ * The benchmarks are skipped unless the {@link #BENCHMARKS_PROPERTY} system property is true:
+ * {@code mvn test -Dtdlight.benchmarks=true}
+ */
+public final class AllocationMeter {
+
+	public static final String BENCHMARKS_PROPERTY = "tdlight.benchmarks";
+
+	private static final int WARMUP_RUNS = 10;
+	private static final int RUNS = 10;
+
+	private AllocationMeter() {
+	}
+
+	/**
+	 * @param operations number of operations executed by a single run
+	 */
+	public static Measurement measure(String name, long operations, Runnable run) {
+		return measure(name, operations, false, run);
+	}
+
+	/**
+	 * @param operations number of operations executed by a single run
+	 */
+	public static Measurement measureAllThreads(String name, long operations, Runnable run) {
+		return measure(name, operations, true, run);
+	}
+
+	private static Measurement measure(String name, long operations, boolean allThreads, Runnable run) {
+		var threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean, "Thread allocation counters are not available");
+		var allocationCounters = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(allocationCounters.isThreadAllocatedMemorySupported(), "Thread allocation counters are not supported");
+		allocationCounters.setThreadAllocatedMemoryEnabled(true);
+
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			run.run();
+		}
+		long bestBytes = Long.MAX_VALUE;
+		long bestNanos = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long[] threadIds = allThreads ? allocationCounters.getAllThreadIds() : new long[] {Thread.currentThread().getId()};
+			long startBytes = sum(allocationCounters.getThreadAllocatedBytes(threadIds));
+			long startNanos = System.nanoTime();
+			run.run();
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = sum(allocationCounters.getThreadAllocatedBytes(threadIds)) - startBytes;
+			bestBytes = Math.min(bestBytes, bytes);
+			bestNanos = Math.min(bestNanos, nanos);
+		}
+		var measurement = new Measurement(name, (double) bestBytes / operations, (double) bestNanos / operations);
+		System.out.println(measurement);
+		return measurement;
+	}
+
+	/**
+	 * @param allocatedBytes allocated bytes of some threads, -1 for the threads that are not alive
+	 */
+	private static long sum(long[] allocatedBytes) {
+		long sum = 0;
+		for (long bytes : allocatedBytes) {
+			if (bytes > 0) {
+				sum += bytes;
+			}
+		}
+		return sum;
+	}
+
+	public static final class Measurement {
+
+		private final String name;
+		private final double bytesPerOperation;
+		private final double nanosPerOperation;
+
+		private Measurement(String name, double bytesPerOperation, double nanosPerOperation) {
+			this.name = name;
+			this.bytesPerOperation = bytesPerOperation;
+			this.nanosPerOperation = nanosPerOperation;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public double bytesPerOperation() {
+			return bytesPerOperation;
+		}
+
+		public double nanosPerOperation() {
+			return nanosPerOperation;
+		}
+
+		public double operationsPerSecond() {
+			return nanosPerOperation == 0 ? Double.POSITIVE_INFINITY : 1_000_000_000d / nanosPerOperation;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %.1f B/op, %.1f ns/op, %.0f ops/s",
+					name,
+					bytesPerOperation,
+					nanosPerOperation,
+					operationsPerSecond()
+			);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package it.tdlight.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.vertx.core.file.OpenOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.file.FileSystem;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the time spent overwriting a binlog in place with DSYNC, like before the atomic overwrite,
+ * with the time spent by {@link BinlogAsyncFile#overwrite(Buffer)}.
+ * <p>
+ * The binlogs are written to the temporary directory, so the results depend on its filesystem:
+ * set {@code java.io.tmpdir} to a directory on the disk to measure, a tmpfs doesn't sync anything.
+ * The heap must be at least twice the size of the binlog, otherwise that size is skipped.
+ */
+@EnabledIfSystemProperty(named = AllocationMeter.BENCHMARKS_PROPERTY, matches = "true")
+public class BinlogAsyncFileBenchmarkTest {
+
+	private static final int RUNS = 3;
+	private static final int MIB = 1024 * 1024;
+
+	private static Vertx vertx;
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeAll
+	public static void setUp() {
+		vertx = Vertx.vertx();
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		vertx.close();
+	}
+
+	/**
+	 * BinlogAsyncFile.overwrite before the atomic overwrite
+	 */
+	private static Mono<Void> overwriteInPlace(FileSystem fileSystem, String path, Buffer newData) {
+		var openOptions = new OpenOptions().setWrite(true).setRead(true).setCreate(false).setDsync(true);
+		return Mono.usingWhen(FileSystemUtils.open(fileSystem, path, openOptions),
+				asyncFile -> FileSystemUtils
+						.write(asyncFile, newData.getDelegate(), 0)
+						.then(FileSystemUtils.flush(asyncFile))
+						.then(FileSystemUtils.truncate(fileSystem, path, newData.length())),
+				FileSystemUtils::close
+		);
+	}
+
+	private static Duration bestOf(Supplier<Mono<Void>> overwrite) {
+		var best = Duration.ofDays(1);
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			overwrite.get().block();
+			var duration = Duration.ofNanos(System.nanoTime() - start);
+			if (duration.compareTo(best) < 0) {
+				best = duration;
+			}
+		}
+		return best;
+	}
+
+	private static String describe(String name, int size, Duration duration) {
+		double seconds = duration.toNanos() / 1_000_000_000d;
+		return String.format("%s, %dMiB: %dms, %.0fMiB/s", name, size / MIB, duration.toMillis(), size / (double) MIB / seconds);
+	}
+
+	private void benchmark(int size) throws IOException {
+		assumeTrue(Runtime.getRuntime().maxMemory() > 2L * size, "The heap is too small for a binlog of " + size / MIB + "MiB");
+		var data = new byte[size];
+		new Random(size).nextBytes(data);
+		var newData = Buffer.buffer(data);
+		var fileSystem = vertx.fileSystem();
+
+		var inPlacePath = tempDir.resolve("in-place").resolve("td.binlog");
+		Files.createDirectories(inPlacePath.getParent());
+		Files.write(inPlacePath, data);
+		var inPlace = bestOf(() -> overwriteInPlace(fileSystem, inPlacePath.toString(), newData));
+		assertEquals(size, Files.size(inPlacePath));
+		System.out.println(describe("In place with DSYNC", size, inPlace));
+		Files.delete(inPlacePath);
+
+		var atomicPath = tempDir.resolve("atomic").resolve("td.binlog");
+		Files.createDirectories(atomicPath.getParent());
+		Files.write(atomicPath, data);
+		var binlogFile = new BinlogAsyncFile(fileSystem, atomicPath.toString());
+		var atomic = bestOf(() -> binlogFile.overwrite(newData));
+		assertEquals(size, Files.size(atomicPath));
+		System.out.println(describe("Temporary file, fsync and rename", size, atomic));
+	}
+
+	@Test
+	public void overwrite1MiB() throws IOException {
+		benchmark(MIB);
+	}
+
+	@Test
+	public void overwrite50MiB() throws IOException {
+		benchmark(50 * MIB);
+	}
+
+	@Test
+	public void overwrite500MiB() throws IOException {
+		benchmark(500 * MIB);
+	}
+}
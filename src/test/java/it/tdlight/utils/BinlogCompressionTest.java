@@ -0,0 +1,98 @@
+package it.tdlight.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.buffer.Buffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinlogCompressionTest {
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Random bytes with repeated runs, so they can be compressed
+	 */
+	private static byte[] binlogLikeBytes(int length) {
+		var data = new byte[length];
+		var random = new Random(42);
+		for (int i = 0; i < length; i += 64) {
+			Arrays.fill(data, i, Math.min(length, i + 64), (byte) random.nextInt(4));
+		}
+		return data;
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		try (is) {
+			return is.readAllBytes();
+		}
+	}
+
+	@Test
+	public void bufferRoundTrip() throws IOException {
+		var data = binlogLikeBytes(3 * BinlogDeltaUtils.BLOCK_SIZE + 17);
+		var compressed = BinlogCompression.compress(Buffer.buffer(data));
+		assertTrue(BinlogCompression.isCompressed(compressed));
+		assertTrue(compressed.length() < data.length);
+		assertArrayEquals(data, BinlogCompression.decompress(compressed).getBytes());
+	}
+
+	@Test
+	public void emptyBufferRoundTrip() throws IOException {
+		var compressed = BinlogCompression.compress(Buffer.buffer());
+		assertTrue(BinlogCompression.isCompressed(compressed));
+		assertArrayEquals(new byte[0], BinlogCompression.decompress(compressed).getBytes());
+	}
+
+	@Test
+	public void rawBuffersAreNotDecompressed() throws IOException {
+		var raw = Buffer.buffer(binlogLikeBytes(1000));
+		assertFalse(BinlogCompression.isCompressed(raw));
+		assertSame(raw, BinlogCompression.decompress(raw));
+		// Shorter than the header, or a prefix of it
+		assertFalse(BinlogCompression.isCompressed(Buffer.buffer(new byte[]{'T', 'D'})));
+		assertFalse(BinlogCompression.isCompressed(Buffer.buffer(Arrays.copyOf(BinlogCompression.MAGIC,
+				BinlogCompression.MAGIC.length - 1))));
+	}
+
+	@Test
+	public void fileRoundTrip() throws IOException {
+		var data = binlogLikeBytes(5 * BinlogDeltaUtils.BLOCK_SIZE + 3);
+		var raw = Files.write(tempDir.resolve("raw"), data);
+		var compressed = tempDir.resolve("compressed");
+		var decompressed = tempDir.resolve("decompressed");
+
+		BinlogCompression.compressFile(raw, compressed);
+		assertTrue(BinlogCompression.isCompressed(compressed));
+		assertTrue(Files.size(compressed) < data.length);
+		assertArrayEquals(data, readAll(BinlogCompression.newInputStream(compressed)));
+
+		BinlogCompression.decompressFile(compressed, decompressed);
+		assertFalse(BinlogCompression.isCompressed(decompressed));
+		assertArrayEquals(data, Files.readAllBytes(decompressed));
+	}
+
+	@Test
+	public void rawFilesAreReadAsTheyAre() throws IOException {
+		var data = binlogLikeBytes(10000);
+		var raw = Files.write(tempDir.resolve("raw"), data);
+		assertFalse(BinlogCompression.isCompressed(raw));
+		assertArrayEquals(data, readAll(BinlogCompression.newInputStream(raw)));
+
+		var shortFile = Files.write(tempDir.resolve("short"), new byte[]{'T', 'D', 'B'});
+		assertFalse(BinlogCompression.isCompressed(shortFile));
+		assertArrayEquals(new byte[]{'T', 'D', 'B'}, readAll(BinlogCompression.newInputStream(shortFile)));
+
+		assertFalse(BinlogCompression.isCompressed(tempDir.resolve("missing")));
+	}
+}
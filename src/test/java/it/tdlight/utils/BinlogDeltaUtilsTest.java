@@ -0,0 +1,149 @@
+package it.tdlight.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.tdlight.tdlibsession.td.middle.BinlogChecksums;
+import it.tdlight.tdlibsession.td.middle.BinlogChunk;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinlogDeltaUtilsTest {
+
+	private static final int BLOCK_SIZE = BinlogDeltaUtils.BLOCK_SIZE;
+
+	@TempDir
+	Path tempDir;
+
+	private static byte[] randomBytes(int length, long seed) {
+		var data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private Path write(String name, byte[] data) throws IOException {
+		return Files.write(tempDir.resolve(name), data);
+	}
+
+	private static List<BinlogChunk> readChangedChunks(Path file, BinlogChecksums remoteChecksums) {
+		return BinlogDeltaUtils.readChangedChunks(file, remoteChecksums).collectList().block();
+	}
+
+	/**
+	 * Write the chunks over a copy of the old binlog, like the receiver of a transfer
+	 */
+	private Path apply(Path oldFile, List<BinlogChunk> chunks) throws IOException {
+		var target = tempDir.resolve("applied");
+		Files.copy(oldFile, target, StandardCopyOption.REPLACE_EXISTING);
+		try (var channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+			for (BinlogChunk chunk : chunks) {
+				if (chunk.isLast()) {
+					channel.truncate(chunk.size());
+				} else {
+					var data = chunk.isCompressed()
+							? BinlogCompression.decompress(chunk.data().getDelegate())
+							: chunk.data().getDelegate();
+					channel.write(ByteBuffer.wrap(data.getBytes()), chunk.offset());
+				}
+			}
+		}
+		return target;
+	}
+
+	private static long transferredBytes(List<BinlogChunk> chunks) {
+		return chunks.stream().filter(chunk -> !chunk.isLast()).mapToLong(chunk -> chunk.data().length()).sum();
+	}
+
+	@Test
+	public void checksumsOfFileAndMemoryMatch() throws IOException {
+		var data = randomBytes(3 * BLOCK_SIZE + 123, 1);
+		var checksums = BinlogDeltaUtils.computeChecksums(write("binlog", data));
+		assertEquals(BLOCK_SIZE, checksums.blockSize());
+		assertEquals(data.length, checksums.size());
+		assertEquals(4, checksums.checksums().length);
+		assertArrayEquals(BinlogDeltaUtils.computeChecksums(data, BLOCK_SIZE), checksums.checksums());
+	}
+
+	@Test
+	public void sha256MatchesTheWholeFile() throws IOException {
+		var data = randomBytes(2 * BLOCK_SIZE + 7, 2);
+		assertArrayEquals(BinlogDeltaUtils.newSha256().digest(data), BinlogDeltaUtils.sha256(write("binlog", data)));
+	}
+
+	@Test
+	public void identicalBinlogsTransferOnlyTheLastChunk() throws IOException {
+		var data = randomBytes(5 * BLOCK_SIZE, 3);
+		var file = write("binlog", data);
+		var chunks = readChangedChunks(file, BinlogDeltaUtils.computeChecksums(file));
+		assertEquals(1, chunks.size());
+		var last = chunks.get(0);
+		assertTrue(last.isLast());
+		assertEquals(data.length, last.size());
+		assertArrayEquals(BinlogDeltaUtils.sha256(file), last.hash());
+	}
+
+	@Test
+	public void onlyChangedBlocksAreTransferred() throws IOException {
+		var oldData = randomBytes(8 * BLOCK_SIZE, 4);
+		var newData = oldData.clone();
+		newData[BLOCK_SIZE + 10]++;
+		newData[6 * BLOCK_SIZE]++;
+		var oldFile = write("old", oldData);
+		var newFile = write("new", newData);
+
+		var chunks = readChangedChunks(newFile, BinlogDeltaUtils.computeChecksums(oldFile));
+		assertTrue(chunks.get(chunks.size() - 1).isLast());
+		for (BinlogChunk chunk : chunks) {
+			if (!chunk.isLast()) {
+				assertEquals(0, chunk.offset() % BLOCK_SIZE);
+			}
+		}
+		if (!BinlogCompression.isEnabled()) {
+			assertEquals(2L * BLOCK_SIZE, transferredBytes(chunks));
+		}
+		var applied = apply(oldFile, chunks);
+		assertArrayEquals(newData, Files.readAllBytes(applied));
+		assertArrayEquals(chunks.get(chunks.size() - 1).hash(), BinlogDeltaUtils.sha256(applied));
+	}
+
+	@Test
+	public void grownAndShrunkBinlogsAreRebuilt() throws IOException {
+		var oldData = randomBytes(4 * BLOCK_SIZE + 100, 5);
+		var oldFile = write("old", oldData);
+
+		var grownData = Arrays.copyOf(oldData, 6 * BLOCK_SIZE + 33);
+		System.arraycopy(randomBytes(grownData.length - oldData.length, 6), 0, grownData, oldData.length,
+				grownData.length - oldData.length);
+		var grownFile = write("grown", grownData);
+		var grownChunks = readChangedChunks(grownFile, BinlogDeltaUtils.computeChecksums(oldFile));
+		assertArrayEquals(grownData, Files.readAllBytes(apply(oldFile, grownChunks)));
+
+		var shrunkData = Arrays.copyOf(oldData, 2 * BLOCK_SIZE + 1);
+		var shrunkFile = write("shrunk", shrunkData);
+		var shrunkChunks = readChangedChunks(shrunkFile, BinlogDeltaUtils.computeChecksums(oldFile));
+		assertArrayEquals(shrunkData, Files.readAllBytes(apply(oldFile, shrunkChunks)));
+	}
+
+	@Test
+	public void emptyChecksumsTransferTheWholeBinlog() throws IOException {
+		var data = randomBytes(3 * BLOCK_SIZE + 5, 7);
+		var file = write("binlog", data);
+		var empty = write("empty", new byte[0]);
+		var chunks = readChangedChunks(file, new BinlogChecksums(BLOCK_SIZE, 0, new int[0]));
+		if (!BinlogCompression.isEnabled()) {
+			assertEquals(data.length, transferredBytes(chunks));
+		}
+		assertArrayEquals(data, Files.readAllBytes(apply(empty, chunks)));
+	}
+}
@@ -0,0 +1,117 @@
+package it.tdlight.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.MessageProducer;
+import it.tdlight.jni.TdApi;
+import it.tdlight.tdlibsession.td.middle.TdClusterManager;
+import it.tdlight.tdlibsession.td.middle.TdResultList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the latency and the allocations of the Vert.x calls converted from RxJava2 to Reactor,
+ * with the same calls made through {@link EventBusUtils} and {@link FileSystemUtils}.
+ * <p>
+ * Every call is awaited before the next one, so the time per operation is the latency of the call.
+ * The event bus is local, the allocations of all the threads are counted.
+ */
+@EnabledIfSystemProperty(named = AllocationMeter.BENCHMARKS_PROPERTY, matches = "true")
+public class ReactorAdaptersBenchmarkTest {
+
+	private static final int OPERATIONS = 10_000;
+	private static final String REQUEST_ADDRESS = "benchmark.request";
+	private static final String UPDATES_ADDRESS = "benchmark.updates";
+	private static final int BATCH_SIZE = 100;
+
+	private static Vertx vertx;
+	private static MessageProducer<TdResultList> updatesSender;
+	private static TdResultList updatesBatch;
+
+	@TempDir
+	static Path tempDir;
+
+	@BeforeAll
+	public static void setUp() {
+		vertx = Vertx.vertx();
+		// Registers the codecs
+		new TdClusterManager(null, new VertxOptions(), vertx);
+		vertx.eventBus().getDelegate().<String>consumer(REQUEST_ADDRESS, msg -> msg.reply("pong"));
+		vertx.eventBus().getDelegate().<TdResultList>consumer(UPDATES_ADDRESS, msg -> {});
+		updatesSender = vertx.eventBus().sender(UPDATES_ADDRESS);
+		var updates = new ArrayList<TdApi.Object>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			updates.add(new TdApi.UpdateOption("option" + i, new TdApi.OptionValueInteger(i)));
+		}
+		updatesBatch = new TdResultList(updates);
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		vertx.close();
+	}
+
+	private static void assertCheaper(AllocationMeter.Measurement adapter, AllocationMeter.Measurement rxJava) {
+		assertTrue(adapter.bytesPerOperation() < rxJava.bytesPerOperation(), adapter + ", " + rxJava);
+	}
+
+	@Test
+	public void eventBusRequest() {
+		var eventBus = vertx.eventBus();
+		var rxJava = AllocationMeter.measureAllThreads("Request, RxJava2 to Reactor", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				var reply = eventBus.<String>rxRequest(REQUEST_ADDRESS, "ping").as(MonoUtils::toMono).block();
+				assertEquals("pong", reply.body());
+			}
+		});
+		var adapter = AllocationMeter.measureAllThreads("Request, EventBusUtils", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				var reply = EventBusUtils.<String>request(eventBus, REQUEST_ADDRESS, "ping").block();
+				assertEquals("pong", reply.body());
+			}
+		});
+		assertCheaper(adapter, rxJava);
+	}
+
+	@Test
+	public void updatesBatchWrite() {
+		var rxJava = AllocationMeter.measureAllThreads("Updates batch write, RxJava2 to Reactor", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				updatesSender.rxWrite(updatesBatch).as(MonoUtils::toMono).block();
+			}
+		});
+		var adapter = AllocationMeter.measureAllThreads("Updates batch write, EventBusUtils", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				EventBusUtils.write(updatesSender, updatesBatch).block();
+			}
+		});
+		assertCheaper(adapter, rxJava);
+	}
+
+	@Test
+	public void fileSystemProps() throws IOException {
+		var path = Files.write(tempDir.resolve("binlog"), new byte[1024]).toString();
+		var fileSystem = vertx.fileSystem();
+		var rxJava = AllocationMeter.measureAllThreads("File props, RxJava2 to Reactor", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				assertEquals(1024, fileSystem.rxProps(path).as(MonoUtils::toMono).block().size());
+			}
+		});
+		var adapter = AllocationMeter.measureAllThreads("File props, FileSystemUtils", OPERATIONS, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				assertEquals(1024, FileSystemUtils.props(fileSystem, path).block().size());
+			}
+		});
+		assertCheaper(adapter, rxJava);
+	}
+}